@@ -0,0 +1,5849 @@
+package ed2.compresion;
+
+import javax.swing.*;
+import javax.swing.border.*;
+import javax.swing.table.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.prefs.Preferences;
+
+// ============================================================================
+// APLICACIÓN PRINCIPAL
+// ============================================================================
+public class AppCompresion {
+
+    // La ventana es un campo y no la superclase: las clases anidadas comparten
+    // a AppCompresion como anfitriona, y cargarla no debe arrastrar AWT/Swing
+    // cuando el núcleo se usa desde Cli.
+    private final JFrame frame = new JFrame();
+
+    // UI principal
+    private JTextField processPathField;
+    private JRadioButton compressRadio;
+    private JRadioButton encryptRadio;
+    private JRadioButton bothRadio;
+    private JRadioButton archiveRadio;
+    private JRadioButton dedupRadio;
+    private JPasswordField processPasswordField;
+    private JSpinner levelSpinner;
+    private JCheckBox incrementalCheck;
+
+    private JTextField recoverSourceField;
+    private JTextField recoverDestField;
+    private JPasswordField recoverPasswordField;
+
+    private JTable logTable;
+    private DefaultTableModel logTableModel;
+
+    private JProgressBar progressBar;
+    private JLabel statusLabel;
+    private JButton pauseButton;
+    private JButton cancelButton;
+
+    // trabajo en curso (solo desde el EDT); null si no hay ninguno
+    private JobControl currentJob;
+
+    private Preferences prefs;
+    private String lastDirectory;
+
+    // Gestor de archivos
+    private final FileManagerCore fileManager;
+
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(() -> {
+            try {
+                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+            } catch (Exception ignored) {}
+            new AppCompresion().frame.setVisible(true);
+        });
+    }
+
+    public AppCompresion() {
+        this.fileManager = new FileManagerCore();
+        // mismo nodo que cuando la clase estaba en el paquete sin nombre
+        this.prefs = Preferences.userRoot().node("<unnamed>");
+        this.lastDirectory = prefs.get("lastDirectory", System.getProperty("user.home"));
+
+        initUI();
+    }
+
+    private void initUI() {
+        frame.setTitle("Sistema de Gestión de Archivos Seguros");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(950, 750);
+        frame.setLocationRelativeTo(null);
+        frame.setLayout(new BorderLayout());
+
+        frame.setJMenuBar(createMenuBar());
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.setFont(new Font("Arial", Font.BOLD, 13));
+        tabs.addTab("Procesar", createProcessPanel());
+        tabs.addTab("Recuperar", createRecoverPanel());
+        tabs.addTab("Log", createLogPanel());
+
+        frame.add(tabs, BorderLayout.CENTER);
+
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusPanel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        progressBar.setStringPainted(true);
+
+        statusLabel = new JLabel("Listo");
+        statusLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+
+        pauseButton = new JButton("Pausar");
+        pauseButton.setVisible(false);
+        pauseButton.addActionListener(e -> togglePause());
+        cancelButton = new JButton("Cancelar");
+        cancelButton.setVisible(false);
+        cancelButton.addActionListener(e -> cancelJob());
+
+        JPanel jobPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        jobPanel.add(pauseButton);
+        jobPanel.add(cancelButton);
+        jobPanel.add(progressBar);
+
+        statusPanel.add(statusLabel, BorderLayout.WEST);
+        statusPanel.add(jobPanel, BorderLayout.EAST);
+
+        frame.add(statusPanel, BorderLayout.SOUTH);
+    }
+
+    private JMenuBar createMenuBar() {
+        JMenuBar bar = new JMenuBar();
+
+        JMenu fileMenu = new JMenu("Archivo");
+        JMenuItem clearLogItem = new JMenuItem("Limpiar log");
+        clearLogItem.addActionListener(e -> clearLog());
+        JMenuItem saveLogItem = new JMenuItem("Guardar log...");
+        saveLogItem.addActionListener(e -> saveLogToFile());
+        JMenuItem saveMetricsItem = new JMenuItem("Exportar métricas...");
+        saveMetricsItem.addActionListener(e -> saveMetricsToFile());
+        JMenuItem exitItem = new JMenuItem("Salir");
+        exitItem.addActionListener(e -> System.exit(0));
+
+        fileMenu.add(clearLogItem);
+        fileMenu.add(saveLogItem);
+        fileMenu.add(saveMetricsItem);
+        fileMenu.addSeparator();
+        fileMenu.add(exitItem);
+
+        JMenu helpMenu = new JMenu("Ayuda");
+        JMenuItem aboutItem = new JMenuItem("Acerca de");
+        aboutItem.addActionListener(e -> JOptionPane.showMessageDialog(
+                frame,
+                "Sistema de gestión de archivos seguros\n"
+                        + "Compresión LZ77 + Huffman y cifrado AES-GCM.\n"
+                        + "Proyecto de Aplicación.",
+                "Acerca de",
+                JOptionPane.INFORMATION_MESSAGE
+        ));
+        helpMenu.add(aboutItem);
+
+        bar.add(fileMenu);
+        bar.add(helpMenu);
+        return bar;
+    }
+
+    private JPanel createProcessPanel() {
+        JPanel panel = new JPanel(new BorderLayout(15, 15));
+        panel.setBorder(new EmptyBorder(25, 25, 25, 25));
+
+        JPanel topPanel = new JPanel(new GridBagLayout());
+        topPanel.setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(new Color(200, 200, 200)),
+                "Origen",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("Arial", Font.BOLD, 13))
+        );
+
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(5,5,5,5);
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.anchor = GridBagConstraints.WEST;
+
+        JLabel pathLabel = new JLabel("Archivo / carpeta:");
+        pathLabel.setFont(new Font("Arial", Font.BOLD, 13));
+        topPanel.add(pathLabel, gbc);
+
+        gbc.gridx = 1;
+        gbc.weightx = 1.0;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+
+        processPathField = new JTextField(35);
+        processPathField.setEditable(false);
+        processPathField.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        topPanel.add(processPathField, gbc);
+
+        gbc.gridx = 2;
+        gbc.weightx = 0;
+        gbc.fill = GridBagConstraints.NONE;
+
+        JButton fileBtn = new JButton("Archivo");
+        styleButton(fileBtn, new Color(33, 150, 243));
+        fileBtn.addActionListener(e -> chooseProcessFile());
+        topPanel.add(fileBtn, gbc);
+
+        gbc.gridx = 3;
+        JButton folderBtn = new JButton("Carpeta");
+        styleButton(folderBtn, new Color(255, 152, 0));
+        folderBtn.addActionListener(e -> chooseProcessFolder());
+        topPanel.add(folderBtn, gbc);
+
+        panel.add(topPanel, BorderLayout.NORTH);
+
+        JPanel centerPanel = new JPanel(new GridBagLayout());
+        centerPanel.setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(new Color(200, 200, 200)),
+                "Operación",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("Arial", Font.BOLD, 13))
+        );
+
+        gbc = new GridBagConstraints();
+        gbc.insets = new Insets(8,5,8,5);
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.anchor = GridBagConstraints.WEST;
+
+        compressRadio = new JRadioButton("Solo compresión (.cmp)");
+        encryptRadio = new JRadioButton("Solo encriptación (.enc)");
+        bothRadio = new JRadioButton("Compresión + Encriptación (.ec)", true);
+        archiveRadio = new JRadioButton("Todo en un solo archivo (.cma, cifrado si hay contraseña)");
+        dedupRadio = new JRadioButton("Deduplicado (.cdd + almacén de fragmentos, sin contraseña)");
+
+        ButtonGroup group = new ButtonGroup();
+        group.add(compressRadio);
+        group.add(encryptRadio);
+        group.add(bothRadio);
+        group.add(archiveRadio);
+        group.add(dedupRadio);
+
+        compressRadio.setFont(new Font("Arial", Font.PLAIN, 13));
+        encryptRadio.setFont(new Font("Arial", Font.PLAIN, 13));
+        bothRadio.setFont(new Font("Arial", Font.PLAIN, 13));
+        archiveRadio.setFont(new Font("Arial", Font.PLAIN, 13));
+        dedupRadio.setFont(new Font("Arial", Font.PLAIN, 13));
+
+        centerPanel.add(compressRadio, gbc);
+        gbc.gridy++;
+        centerPanel.add(encryptRadio, gbc);
+        gbc.gridy++;
+        centerPanel.add(bothRadio, gbc);
+        gbc.gridy++;
+        centerPanel.add(archiveRadio, gbc);
+        gbc.gridy++;
+        centerPanel.add(dedupRadio, gbc);
+
+        gbc.gridy++;
+        JLabel pwdLabel = new JLabel("Contraseña (para encriptación):");
+        pwdLabel.setFont(new Font("Arial", Font.BOLD, 13));
+        centerPanel.add(pwdLabel, gbc);
+
+        gbc.gridx = 1;
+        processPasswordField = new JPasswordField(18);
+        centerPanel.add(processPasswordField, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy++;
+        JLabel levelLabel = new JLabel("Nivel de compresión (1 rápido - 9 máximo):");
+        levelLabel.setFont(new Font("Arial", Font.BOLD, 13));
+        centerPanel.add(levelLabel, gbc);
+
+        gbc.gridx = 1;
+        int savedLevel = prefs.getInt("compressionLevel", LZ77Compressor.DEFAULT_LEVEL);
+        if (savedLevel < LZ77Compressor.MIN_LEVEL || savedLevel > LZ77Compressor.MAX_LEVEL) {
+            savedLevel = LZ77Compressor.DEFAULT_LEVEL;
+        }
+        levelSpinner = new JSpinner(new SpinnerNumberModel(
+                savedLevel, LZ77Compressor.MIN_LEVEL, LZ77Compressor.MAX_LEVEL, 1));
+        levelSpinner.addChangeListener(e -> prefs.putInt("compressionLevel", (Integer) levelSpinner.getValue()));
+        centerPanel.add(levelSpinner, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy++;
+        incrementalCheck = new JCheckBox("Incremental: en carpetas, omitir archivos sin cambios",
+                prefs.getBoolean("incremental", false));
+        incrementalCheck.setFont(new Font("Arial", Font.PLAIN, 13));
+        incrementalCheck.addActionListener(e -> prefs.putBoolean("incremental", incrementalCheck.isSelected()));
+        centerPanel.add(incrementalCheck, gbc);
+
+        panel.add(centerPanel, BorderLayout.CENTER);
+
+        JPanel bottomPanel = new JPanel();
+        JButton processBtn = new JButton("PROCESAR");
+        processBtn.setFont(new Font("Arial", Font.BOLD, 15));
+        processBtn.setPreferredSize(new Dimension(220, 45));
+        styleButton(processBtn, new Color(76, 175, 80));
+        processBtn.addActionListener(e -> onProcess());
+        bottomPanel.add(processBtn);
+
+        panel.add(bottomPanel, BorderLayout.SOUTH);
+        return panel;
+    }
+
+    private JPanel createRecoverPanel() {
+        JPanel panel = new JPanel(new BorderLayout(15, 15));
+        panel.setBorder(new EmptyBorder(25, 25, 25, 25));
+
+        JPanel topPanel = new JPanel(new GridBagLayout());
+        topPanel.setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(new Color(200, 200, 200)),
+                "Origen y destino",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("Arial", Font.BOLD, 13))
+        );
+
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(5,5,5,5);
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.anchor = GridBagConstraints.WEST;
+
+        JLabel srcLabel = new JLabel("Origen (.cmp/.enc/.ec/.cma/.cdd o carpeta):");
+        srcLabel.setFont(new Font("Arial", Font.BOLD, 13));
+        topPanel.add(srcLabel, gbc);
+
+        gbc.gridx = 1;
+        gbc.weightx = 1.0;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+
+        recoverSourceField = new JTextField(35);
+        recoverSourceField.setEditable(false);
+        recoverSourceField.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        topPanel.add(recoverSourceField, gbc);
+
+        gbc.gridx = 2;
+        gbc.weightx = 0;
+        gbc.fill = GridBagConstraints.NONE;
+
+        JButton browseSource = new JButton("Examinar");
+        styleButton(browseSource, new Color(33, 150, 243));
+        browseSource.addActionListener(e -> chooseRecoverSource());
+        topPanel.add(browseSource, gbc);
+
+        gbc.gridy++;
+        gbc.gridx = 0;
+
+        JLabel destLabel = new JLabel("Carpeta destino:");
+        destLabel.setFont(new Font("Arial", Font.BOLD, 13));
+        topPanel.add(destLabel, gbc);
+
+        gbc.gridx = 1;
+        gbc.weightx = 1.0;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+
+        recoverDestField = new JTextField(35);
+        recoverDestField.setEditable(false);
+        recoverDestField.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        topPanel.add(recoverDestField, gbc);
+
+        gbc.gridx = 2;
+        gbc.weightx = 0;
+        gbc.fill = GridBagConstraints.NONE;
+
+        JButton browseDest = new JButton("Examinar");
+        styleButton(browseDest, new Color(255, 152, 0));
+        browseDest.addActionListener(e -> chooseRecoverDest());
+        topPanel.add(browseDest, gbc);
+
+        panel.add(topPanel, BorderLayout.NORTH);
+
+        JPanel centerPanel = new JPanel(new GridBagLayout());
+        centerPanel.setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(new Color(200, 200, 200)),
+                "Datos adicionales",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("Arial", Font.BOLD, 13))
+        );
+
+        gbc = new GridBagConstraints();
+        gbc.insets = new Insets(8,5,8,5);
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.anchor = GridBagConstraints.WEST;
+
+        JLabel pwdLabel = new JLabel("Contraseña (si aplica):");
+        pwdLabel.setFont(new Font("Arial", Font.BOLD, 13));
+        centerPanel.add(pwdLabel, gbc);
+
+        gbc.gridx = 1;
+        recoverPasswordField = new JPasswordField(20);
+        centerPanel.add(recoverPasswordField, gbc);
+
+        panel.add(centerPanel, BorderLayout.CENTER);
+
+        JPanel bottomPanel = new JPanel();
+        JButton recoverBtn = new JButton("RECUPERAR");
+        recoverBtn.setFont(new Font("Arial", Font.BOLD, 15));
+        recoverBtn.setPreferredSize(new Dimension(220, 45));
+        styleButton(recoverBtn, new Color(244, 67, 54));
+        recoverBtn.addActionListener(e -> onRecover());
+        bottomPanel.add(recoverBtn);
+
+        panel.add(bottomPanel, BorderLayout.SOUTH);
+        return panel;
+    }
+
+    private JPanel createLogPanel() {
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(new EmptyBorder(15, 15, 15, 15));
+
+        String[] columns = {
+                "Fecha/Hora",
+                "Operación",
+                "Archivo original",
+                "Archivo resultante",
+                "Duración (s)",
+                "Tasa compresión (%)",
+                "Estado"
+        };
+        logTableModel = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+
+        logTable = new JTable(logTableModel);
+        logTable.setFillsViewportHeight(true);
+        logTable.setRowHeight(22);
+        logTable.getTableHeader().setReorderingAllowed(false);
+
+        JScrollPane scroll = new JScrollPane(logTable);
+        panel.add(scroll, BorderLayout.CENTER);
+
+        return panel;
+    }
+
+    private void styleButton(JButton button, Color color) {
+        button.setBackground(color);
+        button.setForeground(Color.WHITE);
+        button.setFocusPainted(false);
+        button.setFont(new Font("Arial", Font.BOLD, 12));
+    }
+
+    // ========================================================================
+    // ACCIONES DE UI
+    // ========================================================================
+
+    private void chooseProcessFile() {
+        JFileChooser chooser = new JFileChooser(lastDirectory);
+        if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+            File f = chooser.getSelectedFile();
+            processPathField.setText(f.getAbsolutePath());
+            lastDirectory = f.getParent();
+            prefs.put("lastDirectory", lastDirectory);
+        }
+    }
+
+    private void chooseProcessFolder() {
+        JFileChooser chooser = new JFileChooser(lastDirectory);
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+            File f = chooser.getSelectedFile();
+            processPathField.setText(f.getAbsolutePath());
+            lastDirectory = f.getAbsolutePath();
+            prefs.put("lastDirectory", lastDirectory);
+        }
+    }
+
+    private void chooseRecoverSource() {
+        JFileChooser chooser = new JFileChooser(lastDirectory);
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+            File f = chooser.getSelectedFile();
+            recoverSourceField.setText(f.getAbsolutePath());
+            lastDirectory = f.isDirectory() ? f.getAbsolutePath() : f.getParent();
+            prefs.put("lastDirectory", lastDirectory);
+        }
+    }
+
+    private void chooseRecoverDest() {
+        JFileChooser chooser = new JFileChooser(lastDirectory);
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+            File f = chooser.getSelectedFile();
+            recoverDestField.setText(f.getAbsolutePath());
+            lastDirectory = f.getAbsolutePath();
+            prefs.put("lastDirectory", lastDirectory);
+        }
+    }
+
+    private void setBusy(boolean busy, String message) {
+        progressBar.setVisible(busy);
+        progressBar.setIndeterminate(busy);
+        statusLabel.setText(message);
+    }
+
+    private JobControl startJob() {
+        currentJob = new JobControl();
+        pauseButton.setText("Pausar");
+        pauseButton.setVisible(true);
+        cancelButton.setEnabled(true);
+        cancelButton.setVisible(true);
+        return currentJob;
+    }
+
+    private void endJob() {
+        currentJob = null;
+        pauseButton.setVisible(false);
+        cancelButton.setVisible(false);
+    }
+
+    // La pausa llega entre archivos o entre bloques: lo que esté en curso
+    // termina su bloque y se detiene.
+    private void togglePause() {
+        if (currentJob == null) return;
+        if (currentJob.isPaused()) {
+            currentJob.resume();
+            pauseButton.setText("Pausar");
+        } else {
+            currentJob.pause();
+            pauseButton.setText("Reanudar");
+            statusLabel.setText("En pausa");
+        }
+    }
+
+    private void cancelJob() {
+        if (currentJob == null) return;
+        currentJob.cancel();
+        cancelButton.setEnabled(false);
+        pauseButton.setVisible(false);
+        statusLabel.setText("Cancelando...");
+    }
+
+    private void showCancelled(String message) {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+                frame,
+                message + " Lo terminado se conserva; en carpetas, una nueva pasada\n"
+                        + "con las mismas opciones retoma desde el último archivo completo.",
+                "Cancelado",
+                JOptionPane.INFORMATION_MESSAGE
+        ));
+    }
+
+    private void onProcess() {
+        if (currentJob != null) {
+            JOptionPane.showMessageDialog(frame, "Ya hay un trabajo en curso.");
+            return;
+        }
+        String pathStr = processPathField.getText();
+        if (pathStr.isEmpty()) {
+            JOptionPane.showMessageDialog(frame, "Seleccione un archivo o carpeta para procesar.");
+            return;
+        }
+        File source = new File(pathStr);
+        if (!source.exists()) {
+            JOptionPane.showMessageDialog(frame, "El archivo o carpeta no existe.");
+            return;
+        }
+
+        String op;
+        if (compressRadio.isSelected()) op = "compress";
+        else if (encryptRadio.isSelected()) op = "encrypt";
+        else if (archiveRadio.isSelected()) op = "archive";
+        else if (dedupRadio.isSelected()) op = "dedup";
+        else op = "both";
+
+        String password = null;
+        if (op.equals("archive")) {
+            // opcional: sin contraseña el .cma queda solo comprimido
+            password = new String(processPasswordField.getPassword());
+            if (password.isEmpty()) password = null;
+        } else if (!op.equals("compress") && !op.equals("dedup")) {
+            password = new String(processPasswordField.getPassword());
+            if (password.isEmpty()) {
+                JOptionPane.showMessageDialog(frame, "Debe ingresar una contraseña para encriptar.");
+                return;
+            }
+        }
+
+        final String operation = op;
+        final String pwd = password;
+        final int level = (Integer) levelSpinner.getValue();
+        final boolean incremental = incrementalCheck.isSelected();
+        final JobControl job = startJob();
+
+        SwingWorker<Void, Integer> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                setBusy(true, "Procesando...");
+                progressBar.setIndeterminate(false);
+                progressBar.setValue(0);
+                try {
+                    fileManager.withControl(job).processPath(
+                            source.toPath(),
+                            operation,
+                            pwd,
+                            level,
+                            incremental,
+                            (percent, msg) -> {
+                                setProgress(percent);
+                                publish(percent);
+                                SwingUtilities.invokeLater(() -> statusLabel.setText(msg));
+                            },
+                            entry -> SwingUtilities.invokeLater(() -> addLogEntry(entry))
+                    );
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+                            frame,
+                            "Procesamiento completado.",
+                            "Éxito",
+                            JOptionPane.INFORMATION_MESSAGE
+                    ));
+                } catch (InterruptedIOException ex) {
+                    showCancelled("Procesamiento cancelado.");
+                } catch (Exception ex) {
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+                            frame,
+                            "Error durante el procesamiento: " + ex.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE
+                    ));
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(java.util.List<Integer> chunks) {
+                if (!chunks.isEmpty()) {
+                    int v = chunks.get(chunks.size() - 1);
+                    progressBar.setValue(v);
+                }
+            }
+
+            @Override
+            protected void done() {
+                endJob();
+                setBusy(false, "Listo");
+                progressBar.setValue(0);
+            }
+        };
+        worker.execute();
+    }
+
+    private void onRecover() {
+        if (currentJob != null) {
+            JOptionPane.showMessageDialog(frame, "Ya hay un trabajo en curso.");
+            return;
+        }
+        String srcStr = recoverSourceField.getText();
+        String destStr = recoverDestField.getText();
+        if (srcStr.isEmpty()) {
+            JOptionPane.showMessageDialog(frame, "Seleccione un archivo o carpeta de origen.");
+            return;
+        }
+        if (destStr.isEmpty()) {
+            JOptionPane.showMessageDialog(frame, "Seleccione una carpeta de destino.");
+            return;
+        }
+
+        File src = new File(srcStr);
+        File destDir = new File(destStr);
+        if (!destDir.exists() || !destDir.isDirectory()) {
+            JOptionPane.showMessageDialog(frame, "La carpeta de destino no es válida.");
+            return;
+        }
+
+        String password = new String(recoverPasswordField.getPassword());
+        if (password.isEmpty()) {
+            // Permitimos vacío en caso de archivos solo comprimidos (.cmp)
+            password = null;
+        }
+
+        final String pwd = password;
+        final JobControl job = startJob();
+
+        SwingWorker<Void, Integer> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                setBusy(true, "Recuperando...");
+                progressBar.setIndeterminate(false);
+                progressBar.setValue(0);
+                try {
+                    fileManager.withControl(job).recoverPath(
+                            src.toPath(),
+                            destDir.toPath(),
+                            pwd,
+                            (percent, msg) -> {
+                                setProgress(percent);
+                                publish(percent);
+                                SwingUtilities.invokeLater(() -> statusLabel.setText(msg));
+                            },
+                            entry -> SwingUtilities.invokeLater(() -> addLogEntry(entry))
+                    );
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+                            frame,
+                            "Recuperación completada.",
+                            "Éxito",
+                            JOptionPane.INFORMATION_MESSAGE
+                    ));
+                } catch (InterruptedIOException ex) {
+                    showCancelled("Recuperación cancelada.");
+                } catch (Exception ex) {
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+                            frame,
+                            "Error durante la recuperación: " + ex.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE
+                    ));
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(java.util.List<Integer> chunks) {
+                if (!chunks.isEmpty()) {
+                    int v = chunks.get(chunks.size() - 1);
+                    progressBar.setValue(v);
+                }
+            }
+
+            @Override
+            protected void done() {
+                endJob();
+                setBusy(false, "Listo");
+                progressBar.setValue(0);
+            }
+        };
+        worker.execute();
+    }
+
+    private void clearLog() {
+        logTableModel.setRowCount(0);
+    }
+
+    private void saveLogToFile() {
+        JFileChooser chooser = new JFileChooser(lastDirectory);
+        chooser.setSelectedFile(new File("log_app_compresion.csv"));
+        if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+            File f = chooser.getSelectedFile();
+            try (PrintWriter pw = new PrintWriter(new FileWriter(f))) {
+                // Encabezado
+                for (int j = 0; j < logTableModel.getColumnCount(); j++) {
+                    pw.print(logTableModel.getColumnName(j));
+                    if (j < logTableModel.getColumnCount() - 1) pw.print(";");
+                }
+                pw.println();
+
+                // Filas
+                for (int i = 0; i < logTableModel.getRowCount(); i++) {
+                    for (int j = 0; j < logTableModel.getColumnCount(); j++) {
+                        Object val = logTableModel.getValueAt(i, j);
+                        String text = val == null ? "" : val.toString();
+                        // Evitar que un ; dentro del texto rompa el CSV
+                        text = text.replace(";", ",");
+                        pw.print(text);
+                        if (j < logTableModel.getColumnCount() - 1) pw.print(";");
+                    }
+                    pw.println();
+                }
+
+                JOptionPane.showMessageDialog(frame,
+                        "Log exportado correctamente como CSV.",
+                        "Exportación completada",
+                        JOptionPane.INFORMATION_MESSAGE);
+
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(frame, "Error al guardar log: " + ex.getMessage());
+            }
+        }
+    }
+
+    // Métricas acumuladas desde que se abrió la ventana: .json o, con cualquier
+    // otra extensión, texto de Prometheus.
+    private void saveMetricsToFile() {
+        JFileChooser chooser = new JFileChooser(lastDirectory);
+        chooser.setSelectedFile(new File("metricas_app_compresion.json"));
+        if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+            try {
+                fileManager.getMetrics().export(chooser.getSelectedFile().toPath());
+                JOptionPane.showMessageDialog(frame,
+                        "Métricas exportadas correctamente.",
+                        "Exportación completada",
+                        JOptionPane.INFORMATION_MESSAGE);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(frame, "Error al guardar métricas: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void addLogEntry(LogEntry entry) {
+        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        logTableModel.addRow(new Object[]{
+                entry.timestamp.format(fmt),
+                entry.operation,
+                entry.sourceName,
+                entry.destName,
+                String.format("%.2f", entry.durationSeconds),
+                entry.compressionRate,
+                entry.success ? "OK" : "ERROR"
+        });
+    }
+
+    // ========================================================================
+    // MODELO DE LOG Y CALLBACK
+    // ========================================================================
+
+    public interface ProgressCallback {
+        void onProgress(int percent, String message);
+    }
+
+    public interface LogCallback {
+        void onLog(LogEntry entry);
+    }
+
+    public static class LogEntry {
+        public final LocalDateTime timestamp;
+        public final String operation;
+        public final String sourceName;
+        public final String destName;
+        public final double durationSeconds;
+        public final String compressionRate;
+        public final boolean success;
+        // bytes leídos y escritos por el archivo; -1 en resúmenes y fallos
+        public final long inputBytes;
+        public final long outputBytes;
+
+        public LogEntry(String operation,
+                        String sourceName,
+                        String destName,
+                        double durationSeconds,
+                        String compressionRate,
+                        boolean success) {
+            this(operation, sourceName, destName, durationSeconds, compressionRate, success, -1, -1);
+        }
+
+        public LogEntry(String operation,
+                        String sourceName,
+                        String destName,
+                        double durationSeconds,
+                        String compressionRate,
+                        boolean success,
+                        long inputBytes,
+                        long outputBytes) {
+            this.timestamp = LocalDateTime.now();
+            this.operation = operation;
+            this.sourceName = sourceName;
+            this.destName = destName;
+            this.durationSeconds = durationSeconds;
+            this.compressionRate = compressionRate;
+            this.success = success;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+        }
+    }
+
+    // ========================================================================
+    // NÚCLEO DE PROCESAMIENTO DE ARCHIVOS
+    // ========================================================================
+
+    public static class FileManagerCore {
+
+        private static final int IO_BUFFER_SIZE = 64 * 1024;
+        static final long MMAP_THRESHOLD = 8L * 1024 * 1024;
+        static final long MMAP_SEGMENT = 256L * 1024 * 1024;
+
+        private final LZ77Compressor lz77;
+        private final HuffmanCompressor huffman = new HuffmanCompressor();
+        private final SimpleEncryptor encryptor;
+        private final BlockCompressor blocks;
+        private final java.util.concurrent.ForkJoinPool pool;
+        // archivos procesados a la vez al recorrer carpetas
+        private final int fileThreads;
+        // null: trabajos sin cancelación ni pausa (ver withControl)
+        private final JobControl control;
+        // acumula desde la creación; las copias de withControl suman en las mismas
+        private final Metrics metrics;
+
+        public FileManagerCore() {
+            this(BlockCompressor.DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+        }
+
+        public FileManagerCore(int blockSize) {
+            this(blockSize, Runtime.getRuntime().availableProcessors());
+        }
+
+        public FileManagerCore(int blockSize, int threads) {
+            this(blockSize, threads, LZ77Compressor.DEFAULT_LEVEL);
+        }
+
+        public FileManagerCore(int blockSize, int threads, int level) {
+            this(blockSize, threads, LZ77Compressor.forLevel(level));
+        }
+
+        // Con threads > 1 los bloques se comprimen/descomprimen en un ForkJoinPool
+        // propio, con hasta 2 * threads bloques en memoria a la vez. El nivel de
+        // lz77 se usa cuando processPath no indica otro; su ventana y longitud
+        // máxima se aplican a todos los niveles y quedan en el encabezado.
+        public FileManagerCore(int blockSize, int threads, LZ77Compressor lz77) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads debe ser >= 1");
+            }
+            this.lz77 = lz77;
+            this.fileThreads = threads;
+            this.pool = threads > 1 ? new java.util.concurrent.ForkJoinPool(threads) : null;
+            this.metrics = new Metrics();
+            this.blocks = new BlockCompressor(lz77, huffman, blockSize, pool, 2 * threads).withMetrics(metrics);
+            this.encryptor = new SimpleEncryptor(SimpleEncryptor.CIPHER_AES_GCM,
+                    SimpleEncryptor.DEFAULT_CHUNK_SIZE, pool, 2 * threads).withMetrics(metrics);
+            this.control = null;
+        }
+
+        private FileManagerCore(FileManagerCore base, JobControl control) {
+            this.lz77 = base.lz77;
+            this.fileThreads = base.fileThreads;
+            this.pool = base.pool;
+            this.blocks = base.blocks.withControl(control);
+            this.encryptor = base.encryptor.withControl(control);
+            this.control = control;
+            this.metrics = base.metrics;
+        }
+
+        // Misma configuración y pool, con los trabajos sujetos a control: se
+        // detienen o abortan entre archivos, bloques y fragmentos cifrados. Un
+        // trabajo cancelado termina con InterruptedIOException y no deja salidas
+        // a medias. El pool es del original: shutdown() se llama sobre él.
+        public FileManagerCore withControl(JobControl control) {
+            return new FileManagerCore(this, control);
+        }
+
+        private void checkpoint() throws InterruptedIOException {
+            if (control != null) control.checkpoint();
+        }
+
+        // Los archivos cortados por una cancelación quedan en el log como
+        // CANCELLED; el trabajo igual termina con la excepción.
+        private void throwIfCancelled() throws InterruptedIOException {
+            if (control != null) control.throwIfCancelled();
+        }
+
+        public void shutdown() {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+
+        public int getLevel() {
+            return lz77.getLevel();
+        }
+
+        // Métricas de todos los trabajos de este núcleo (ver Metrics.export).
+        public Metrics getMetrics() {
+            return metrics;
+        }
+
+        public void processPath(Path path,
+                                String operation,
+                                String password,
+                                ProgressCallback progress,
+                                LogCallback logger) throws IOException {
+            processPath(path, operation, password, lz77.getLevel(), progress, logger);
+        }
+
+        // level: 1 (rápido) a 9 (máxima compresión); no afecta a "encrypt".
+        // "archive" empaqueta todo en un único .cma (cifrado si hay contraseña).
+        // "dedup" escribe una receta .cdd y guarda en .ed2-chunks, junto a ella,
+        // solo los fragmentos que el almacén todavía no tiene (sin contraseña).
+        // La clave se deriva una sola vez para todo el lote.
+        public void processPath(Path path,
+                                String operation,
+                                String password,
+                                int level,
+                                ProgressCallback progress,
+                                LogCallback logger) throws IOException {
+            processPath(path, operation, password, level, false, progress, logger);
+        }
+
+        // incremental: en carpetas, los archivos sin cambios desde la pasada
+        // anterior (misma operación y nivel) conservan su salida y no se procesan.
+        // No aplica a "archive" ni a un archivo suelto.
+        public void processPath(Path path,
+                                String operation,
+                                String password,
+                                int level,
+                                boolean incremental,
+                                ProgressCallback progress,
+                                LogCallback logger) throws IOException {
+            try (SimpleEncryptor.Session session = newSession(password)) {
+                processWithSession(path, operation, session, level, incremental, progress, logger);
+            }
+        }
+
+        // Sesión abierta y cerrada por quien llama: la clave derivada se reutiliza
+        // entre llamadas. session == null procesa sin contraseña.
+        public SimpleEncryptor.Session newSession(String password) {
+            return password == null || password.isEmpty() ? null : encryptor.newSession(password);
+        }
+
+        public void processWithSession(Path path,
+                                       String operation,
+                                       SimpleEncryptor.Session session,
+                                       int level,
+                                       boolean incremental,
+                                       ProgressCallback progress,
+                                       LogCallback logger) throws IOException {
+            if (operation.equals("dedup") && session != null) {
+                // el almacén se comparte entre recetas y no se cifra
+                throw new IllegalArgumentException("La deduplicación no admite contraseña");
+            }
+            BlockCompressor blocks = blocksFor(level);
+            LogCallback log = metrics.recording(logger);
+            try (ProgressTracker tracker = new ProgressTracker(progress)) {
+                if (operation.equals("archive")) {
+                    archive(path, session, blocks, single(tracker), log);
+                } else if (operation.equals("dedup")) {
+                    dedup(path, blocks, single(tracker), log);
+                } else if (Files.isDirectory(path) && incremental) {
+                    processIncremental(path, operation, level, session, blocks, tracker, log);
+                } else if (Files.isDirectory(path)) {
+                    processDirectory(path, operation, level, session, blocks, tracker, log);
+                } else {
+                    processSingleFile(path, operation, session, blocks, null, single(tracker), log);
+                }
+                throwIfCancelled();
+            }
+        }
+
+        // Trabajo de una sola parte (un archivo, un .cma, una receta): el
+        // porcentaje global es el de esa parte.
+        private static ProgressCallback single(ProgressTracker tracker) {
+            ProgressCallback part = tracker.part(100);
+            tracker.seal();
+            return part;
+        }
+
+        private BlockCompressor blocksFor(int level) {
+            if (level == lz77.getLevel()) {
+                return blocks;
+            }
+            return blocks.withCompressor(
+                    LZ77Compressor.forLevel(level, lz77.getWindowSize(), lz77.getMaxMatch()));
+        }
+
+        // Una pasada que no termina (cancelada o cortada) deja un diario en la
+        // carpeta; la siguiente con la misma operación y nivel retoma desde ahí.
+        private void processDirectory(Path dir,
+                                      String operation,
+                                      int level,
+                                      SimpleEncryptor.Session session,
+                                      BlockCompressor blocks,
+                                      ProgressTracker tracker,
+                                      LogCallback logger) throws IOException {
+            long start = System.nanoTime();
+            Path journalFile = dir.resolve(ResumeJournal.FILE_NAME);
+            try (ResumeJournal journal = ResumeJournal.open(dir, journalFile, operation + " " + level)) {
+                processTree(dir, "Procesando", "ERROR_PROCESS",
+                        file -> outputFor(file, operation),
+                        FileManagerCore::isArchive,
+                        journal.wrap(file -> outputFor(file, operation),
+                                (file, p, l) -> processSingleFile(file, operation, session, blocks, null, p, l) >= 0),
+                        tracker, logger);
+                journal.finish();
+                journal.report(dir, start, logger);
+            }
+        }
+
+        // Temporales de writeVerified y writeVerifiedTree: ".ed2-tmp-<salida>-<n>".
+        // Ningún otro programa ni usuario nombra así un archivo, de modo que los que
+        // quedan de un proceso terminado a la fuerza se reconocen sin tocar otros.
+        static final String TEMP_PREFIX = ".ed2-tmp-";
+
+        // Archivos que la aplicación deja para sí misma (diario, manifiesto, sus
+        // temporales y el almacén de fragmentos): ningún recorrido desde root los
+        // toma como entrada, en ninguna carpeta.
+        static boolean isWorkFile(Path root, Path file) {
+            String name = file.getFileName().toString();
+            if (name.equals(ResumeJournal.FILE_NAME) || name.equals(IncrementalManifest.FILE_NAME)) {
+                return true;
+            }
+            for (Path part : root.relativize(file)) {
+                String dir = part.toString();
+                if (dir.equals(ChunkStore.DIRECTORY) || dir.startsWith(TEMP_PREFIX)) return true;
+            }
+            return false;
+        }
+
+        // Resultados de archive y dedup: se recuperan, pero no se vuelven a
+        // comprimir ni a cifrar al procesar la carpeta que los contiene.
+        private static boolean isArchive(Path file) {
+            String name = file.getFileName().toString();
+            return name.endsWith(SolidArchive.EXTENSION) || name.endsWith(DedupArchive.EXTENSION);
+        }
+
+        // Un archivo se omite si su tamaño, su mtime y el tamaño de su salida
+        // coinciden con el manifiesto; si solo cambió la mtime se compara el hash
+        // del contenido antes de reprocesarlo. El hash de los que se procesan se
+        // calcula al leerlos, sin una pasada extra. Los archivos que fallan no
+        // entran al manifiesto nuevo y se reintentan en la próxima pasada.
+        private void processIncremental(Path dir,
+                                        String operation,
+                                        int level,
+                                        SimpleEncryptor.Session session,
+                                        BlockCompressor blocks,
+                                        ProgressTracker tracker,
+                                        LogCallback logger) throws IOException {
+            long start = System.nanoTime();
+            Path manifestFile = dir.resolve(IncrementalManifest.FILE_NAME);
+            IncrementalManifest previous = null;
+            if (Files.exists(manifestFile)) {
+                try (InputStream in = Files.newInputStream(manifestFile)) {
+                    previous = IncrementalManifest.load(in);
+                } catch (IOException e) {
+                    // un manifiesto ilegible solo obliga a procesar todo
+                    logger.onLog(new LogEntry(
+                            "INCREMENTAL",
+                            IncrementalManifest.FILE_NAME,
+                            "ilegible, se procesa todo: " + reason(e),
+                            0.0,
+                            "-",
+                            true
+                    ));
+                }
+            }
+            if (previous != null && !previous.matches(operation, level)) {
+                previous = null;
+            }
+            IncrementalManifest last = previous;
+            IncrementalManifest next = new IncrementalManifest(operation, level);
+            // salidas de la pasada anterior: el recorrido no las toma como fuentes
+            Set<Path> previousOutputs = new HashSet<>();
+            if (last != null) {
+                for (String rel : last.paths()) {
+                    previousOutputs.add(outputFor(dir.resolve(rel), operation));
+                }
+            }
+            java.util.concurrent.atomic.AtomicLong skipped = new java.util.concurrent.atomic.AtomicLong();
+
+            try {
+                processTree(dir, "Procesando", "ERROR_PROCESS",
+                        file -> outputFor(file, operation),
+                        file -> previousOutputs.contains(file) || isArchive(file),
+                        (file, p, l) -> {
+                            String rel = dir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                            Path out = outputFor(file, operation);
+                            long size;
+                            long modified;
+                            try {
+                                java.nio.file.attribute.BasicFileAttributes attrs = Files.readAttributes(file,
+                                        java.nio.file.attribute.BasicFileAttributes.class);
+                                size = attrs.size();
+                                modified = attrs.lastModifiedTime().toMillis();
+                                IncrementalManifest.Entry old = last == null ? null : last.get(rel);
+                                if (old != null && old.size == size && Files.isRegularFile(out)
+                                        && Files.size(out) == old.outputSize) {
+                                    if (old.modified == modified && last.trustsModified(old)) {
+                                        next.put(rel, old);
+                                        skipped.incrementAndGet();
+                                        return;
+                                    }
+                                    byte[] hash = IncrementalManifest.hash(file);
+                                    if (old.sameContent(hash)) {
+                                        next.put(rel, new IncrementalManifest.Entry(size, modified, hash, old.outputSize));
+                                        skipped.incrementAndGet();
+                                        return;
+                                    }
+                                }
+                            } catch (IOException e) {
+                                // sin datos confiables se procesa; processSingleFile informa el error
+                                size = -1;
+                                modified = -1;
+                            }
+                            java.security.MessageDigest digest = IncrementalManifest.newDigest();
+                            long outputSize = processSingleFile(file, operation, session, blocks, digest, p, l);
+                            // sin tamaño de entrada queda fuera del manifiesto: se reprocesa la próxima vez
+                            if (outputSize >= 0 && size >= 0) {
+                                next.put(rel, new IncrementalManifest.Entry(size, modified,
+                                        IncrementalManifest.digestOf(digest), outputSize));
+                            }
+                        },
+                        tracker, logger);
+            } catch (InterruptedIOException e) {
+                // Pasada cortada: se guarda lo terminado y, para lo que no llegó a
+                // visitarse, la entrada anterior (si su mtime era confiable: el
+                // manifiesto nuevo tiene otra hora de guardado). La próxima pasada
+                // las compara con el disco y retoma sin reprocesar lo hecho.
+                if (last != null) {
+                    for (String rel : last.paths()) {
+                        IncrementalManifest.Entry old = last.get(rel);
+                        if (next.get(rel) == null && last.trustsModified(old)) next.put(rel, old);
+                    }
+                }
+                saveManifest(manifestFile, next);
+                throw e;
+            }
+
+            saveManifest(manifestFile, next);
+            double durationSeconds = (System.nanoTime() - start) / 1e9;
+            logger.onLog(new LogEntry(
+                    "INCREMENTAL",
+                    dir.getFileName().toString(),
+                    skipped.get() + " sin cambios",
+                    durationSeconds,
+                    "-",
+                    true
+            ));
+        }
+
+        private static void saveManifest(Path manifestFile, IncrementalManifest manifest) throws IOException {
+            writeVerified(manifestFile, tmp -> {
+                try (OutputStream os = openOutput(tmp)) {
+                    return manifest.save(os);
+                }
+            });
+        }
+
+        private void archive(Path source,
+                             SimpleEncryptor.Session session,
+                             BlockCompressor blocks,
+                             ProgressCallback progress,
+                             LogCallback logger) {
+            Path abs = source.toAbsolutePath();
+            String name = abs.getFileName().toString();
+            if (!Files.isDirectory(abs)) {
+                int idx = name.lastIndexOf('.');
+                if (idx != -1) name = name.substring(0, idx);
+            }
+            Path parent = abs.getParent();
+            if (parent == null) parent = Paths.get(".");
+            Path out = parent.resolve(name + SolidArchive.EXTENSION);
+
+            long start = System.nanoTime();
+            try {
+                progress.onProgress(2, "Recorriendo " + abs.getFileName() + "...");
+                java.util.List<SolidArchive.Entry> entries = SolidArchive.scan(abs);
+                progress.onProgress(5, "Empaquetando " + entries.size() + " entradas...");
+                // writeVerified devuelve lo escrito en disco; lo leído sale por el arreglo
+                long[] read = new long[1];
+                long finalSize = writeVerified(out, tmp -> {
+                    try (ChannelOutputStream sink = openOutput(tmp)) {
+                        // sin contraseña os es sink: cerrarlo dos veces no hace nada
+                        try (OutputStream os = session == null ? sink : encryptor.encryptingStream(sink, session)) {
+                            read[0] = new SolidArchive(blocks).write(abs, entries, os, scaled(progress, 5, 95));
+                        }
+                        return sink.getCount();
+                    }
+                });
+                long originalSize = read[0];
+
+                double durationSeconds = (System.nanoTime() - start) / 1e9;
+                String rate = originalSize > 0
+                        ? String.format("%.2f", 100.0 * (1.0 - (finalSize / (double) originalSize)))
+                        : "-";
+
+                logger.onLog(new LogEntry(
+                        session == null ? "ARCHIVE" : "ARCHIVE+ENCRYPT",
+                        abs.getFileName().toString(),
+                        out.getFileName().toString(),
+                        durationSeconds,
+                        rate,
+                        true,
+                        originalSize,
+                        finalSize
+                ));
+                progress.onProgress(100, "Archivo creado: " + out.getFileName());
+            } catch (Exception ex) {
+                logger.onLog(new LogEntry(
+                        failure(ex, "ERROR_PROCESS"),
+                        abs.getFileName().toString(),
+                        reason(ex),
+                        0.0,
+                        "-",
+                        false
+                ));
+            }
+        }
+
+        // Cada pasada deja una receta con fecha y hora; todas comparten el almacén
+        // de la carpeta, así un respaldo casi igual al anterior ocupa poco.
+        private void dedup(Path source,
+                           BlockCompressor blocks,
+                           ProgressCallback progress,
+                           LogCallback logger) {
+            Path abs = source.toAbsolutePath();
+            String name = abs.getFileName().toString();
+            if (!Files.isDirectory(abs)) {
+                int idx = name.lastIndexOf('.');
+                if (idx != -1) name = name.substring(0, idx);
+            }
+            Path parent = abs.getParent();
+            if (parent == null) parent = Paths.get(".");
+            // DedupArchive.restoredName quita la fecha al recuperar
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            Path out = parent.resolve(name + "-" + stamp + DedupArchive.EXTENSION);
+
+            long start = System.nanoTime();
+            try (ChunkStore store = ChunkStore.open(parent.resolve(ChunkStore.DIRECTORY), blocks, false)) {
+                progress.onProgress(2, "Recorriendo " + abs.getFileName() + "...");
+                java.util.List<SolidArchive.Entry> entries = SolidArchive.scan(abs);
+                progress.onProgress(5, "Deduplicando " + entries.size() + " entradas...");
+                // writeVerified devuelve el tamaño de la receta; lo leído sale por el arreglo
+                long[] read = new long[1];
+                long recipeSize = writeVerified(out, tmp -> {
+                    try (ChannelOutputStream os = openOutput(tmp)) {
+                        read[0] = new DedupArchive(blocks).write(abs, entries, os, store, scaled(progress, 5, 95));
+                        return os.getCount();
+                    }
+                });
+                long originalSize = read[0];
+                // lo que esta pasada agregó al disco: fragmentos nuevos y la receta
+                long finalSize = store.getStoredBytes() + recipeSize;
+
+                double durationSeconds = (System.nanoTime() - start) / 1e9;
+                String rate = originalSize > 0
+                        ? String.format("%.2f", 100.0 * (1.0 - (finalSize / (double) originalSize)))
+                        : "-";
+
+                logger.onLog(new LogEntry(
+                        "DEDUP",
+                        abs.getFileName().toString(),
+                        out.getFileName().toString(),
+                        durationSeconds,
+                        rate,
+                        true,
+                        originalSize,
+                        finalSize
+                ));
+                progress.onProgress(100, "Receta creada: " + out.getFileName() + " ("
+                        + store.getAddedChunks() + " fragmentos nuevos)");
+            } catch (Exception ex) {
+                logger.onLog(new LogEntry(
+                        failure(ex, "ERROR_PROCESS"),
+                        abs.getFileName().toString(),
+                        reason(ex),
+                        0.0,
+                        "-",
+                        false
+                ));
+            }
+        }
+
+        // digest (opcional) recibe el contenido tal como se leyó; devuelve los bytes
+        // escritos en la salida, o -1 si falló.
+        private long processSingleFile(Path file,
+                                          String operation,
+                                          SimpleEncryptor.Session session,
+                                          BlockCompressor blocks,
+                                          java.security.MessageDigest digest,
+                                          ProgressCallback progress,
+                                          LogCallback logger) {
+            String fileName = file.getFileName().toString();
+            String baseName = fileName;
+            int idx = fileName.lastIndexOf('.');
+            if (idx != -1) baseName = fileName.substring(0, idx);
+
+            Path parent = file.getParent();
+            if (parent == null) parent = Paths.get(".");
+
+            long start = System.nanoTime();
+
+            try {
+                long originalSize = Files.size(file);
+                long finalSize;
+
+                if (operation.equals("compress")) {
+                    progress.onProgress(10, "Comprimiendo (LZ77 + Huffman)...");
+                    Path out = parent.resolve(baseName + ".cmp");
+                    finalSize = writeVerified(out, tmp -> {
+                        try (InputStream in = digesting(openInput(file, originalSize), digest);
+                             OutputStream os = openOutput(tmp)) {
+                            return blocks.compress(in, os, originalSize, scaled(progress, 10, 90));
+                        }
+                    });
+
+                    double durationSeconds = (System.nanoTime() - start) / 1e9;
+                    String rate = originalSize > 0
+                            ? String.format("%.2f", 100.0 * (1.0 - (finalSize / (double) originalSize)))
+                            : "-";
+
+                    logger.onLog(new LogEntry(
+                            "COMPRESS",
+                            file.getFileName().toString(),
+                            out.getFileName().toString(),
+                            durationSeconds,
+                            rate,
+                            true,
+                            originalSize,
+                            finalSize
+                    ));
+                } else if (operation.equals("encrypt")) {
+                    if (session == null) {
+                        throw new IllegalArgumentException("Contraseña requerida para encriptar.");
+                    }
+                    progress.onProgress(20, "Encriptando archivo...");
+                    Path out = parent.resolve(baseName + ".enc");
+                    // lo escrito en disco: el texto cifrado más el encabezado y las etiquetas
+                    finalSize = writeVerified(out, tmp -> {
+                        try (ChannelOutputStream sink = openOutput(tmp)) {
+                            try (InputStream in = digesting(openInput(file, originalSize), digest);
+                                 OutputStream os = encryptor.encryptingStream(sink, session)) {
+                                copy(in, os, originalSize, scaled(progress, 20, 90), "Cifrado");
+                            }
+                            return sink.getCount();
+                        }
+                    });
+
+                    double durationSeconds = (System.nanoTime() - start) / 1e9;
+
+                    logger.onLog(new LogEntry(
+                            "ENCRYPT",
+                            file.getFileName().toString(),
+                            out.getFileName().toString(),
+                            durationSeconds,
+                            "-",  // no aplica tasa de compresión
+                            true,
+                            originalSize,
+                            finalSize
+                    ));
+                } else { // both
+                    if (session == null) {
+                        throw new IllegalArgumentException("Contraseña requerida para encriptar.");
+                    }
+                    progress.onProgress(10, "Comprimiendo y encriptando...");
+                    Path out = parent.resolve(baseName + ".ec");
+                    // lo escrito en disco: el comprimido más el encabezado y las etiquetas del cifrado
+                    finalSize = writeVerified(out, tmp -> {
+                        try (ChannelOutputStream sink = openOutput(tmp)) {
+                            try (InputStream in = digesting(openInput(file, originalSize), digest);
+                                 OutputStream os = encryptor.encryptingStream(sink, session)) {
+                                blocks.compress(in, os, originalSize, scaled(progress, 10, 90));
+                            }
+                            return sink.getCount();
+                        }
+                    });
+
+                    double durationSeconds = (System.nanoTime() - start) / 1e9;
+                    String rate = originalSize > 0
+                            ? String.format("%.2f", 100.0 * (1.0 - (finalSize / (double) originalSize)))
+                            : "-";
+
+                    logger.onLog(new LogEntry(
+                            "COMPRESS+ENCRYPT",
+                            file.getFileName().toString(),
+                            out.getFileName().toString(),
+                            durationSeconds,
+                            rate,
+                            true,
+                            originalSize,
+                            finalSize
+                    ));
+                }
+
+                progress.onProgress(100, "Archivo procesado: " + fileName);
+                return finalSize;
+            } catch (Exception ex) {
+                logger.onLog(new LogEntry(
+                        failure(ex, "ERROR_PROCESS"),
+                        file.getFileName().toString(),
+                        reason(ex),
+                        0.0,
+                        "-",
+                        false
+                ));
+                return -1;
+            }
+        }
+
+        private static InputStream digesting(InputStream in, java.security.MessageDigest digest) {
+            return digest == null ? in : new java.security.DigestInputStream(in, digest);
+        }
+
+        // Operación del LogEntry de un archivo que no terminó. Un fallo (contraseña
+        // incorrecta, datos dañados, disco lleno) es un resultado más del trabajo:
+        // queda en el log con reason(ex), sin traza en la consola.
+        private static String failure(Exception ex, String operation) {
+            return ex instanceof InterruptedIOException ? "CANCELLED" : operation;
+        }
+
+        private static String reason(Exception ex) {
+            String message = ex.getMessage();
+            return message == null || message.isEmpty() ? ex.getClass().getSimpleName() : message;
+        }
+
+        public void recoverPath(Path src,
+                                Path destDir,
+                                String password,
+                                ProgressCallback progress,
+                                LogCallback logger) throws IOException {
+            if (!Files.exists(destDir)) {
+                Files.createDirectories(destDir);
+            }
+            LogCallback log = metrics.recording(logger);
+            try (SimpleEncryptor.Session session = newSession(password);
+                 ProgressTracker tracker = new ProgressTracker(progress)) {
+                if (Files.isDirectory(src)) {
+                    recoverTree(src, destDir, session, tracker, log);
+                } else {
+                    recoverSingleFile(src, destDir, session, single(tracker), log);
+                }
+                throwIfCancelled();
+            }
+        }
+
+        // Como processDirectory, una pasada que no termina deja un diario (en el
+        // destino, porque el origen puede ser de solo lectura) y la siguiente
+        // desde el mismo origen retoma desde ahí.
+        private void recoverTree(Path src,
+                                 Path destDir,
+                                 SimpleEncryptor.Session session,
+                                 ProgressTracker tracker,
+                                 LogCallback logger) throws IOException {
+            long start = System.nanoTime();
+            Path journalFile = destDir.resolve(ResumeJournal.FILE_NAME);
+            String job = "recover " + src.toAbsolutePath().normalize();
+            try (ResumeJournal journal = ResumeJournal.open(src, journalFile, job)) {
+                processTree(src, "Recuperando", "ERROR_RECOVER",
+                        file -> recoveredFor(file, destDir),
+                        file -> false,
+                        journal.wrap(file -> recoveredFor(file, destDir),
+                                (file, p, l) -> recoverSingleFile(file, destDir, session, p, l)),
+                        tracker, logger);
+                journal.finish();
+                journal.report(src, start, logger);
+            }
+        }
+
+        // Devuelve false si falló o si el archivo no es recuperable.
+        private boolean recoverSingleFile(Path file,
+                                          Path destDir,
+                                          SimpleEncryptor.Session session,
+                                          ProgressCallback progress,
+                                          LogCallback logger) {
+            String fileName = file.getFileName().toString();
+            long start = System.nanoTime();
+
+            try {
+                long compressedSize = Files.size(file);
+
+                if (fileName.endsWith(".cmp")) {
+                    progress.onProgress(20, "Descomprimiendo...");
+                    String base = fileName.substring(0, fileName.length() - 4);
+                    Path out = destDir.resolve(base);
+                    long originalSize = writeVerified(out, tmp -> {
+                        try (InputStream in = openInput(file, compressedSize)) {
+                            return decompressTo(in, tmp, compressedSize, scaled(progress, 20, 90));
+                        }
+                    });
+
+                    double durationSeconds = (System.nanoTime() - start) / 1e9;
+                    String rate = originalSize > 0
+                            ? String.format("%.2f", 100.0 * (1.0 - (compressedSize / (double) originalSize)))
+                            : "-";
+
+                    logger.onLog(new LogEntry(
+                            "DECOMPRESS",
+                            file.getFileName().toString(),
+                            out.getFileName().toString(),
+                            durationSeconds,
+                            rate,
+                            true,
+                            compressedSize,
+                            originalSize
+                    ));
+                } else if (fileName.endsWith(".enc")) {
+                    if (session == null) {
+                        throw new IllegalArgumentException("Contraseña requerida para desencriptar.");
+                    }
+                    progress.onProgress(20, "Desencriptando archivo...");
+                    String base = fileName.substring(0, fileName.length() - 4);
+                    Path out = destDir.resolve(base);
+                    long originalSize = writeVerified(out, tmp -> {
+                        try (InputStream in = encryptor.decryptingStream(openInput(file, compressedSize), session);
+                             OutputStream os = openOutput(tmp)) {
+                            return copy(in, os, compressedSize, scaled(progress, 20, 90), "Descifrado");
+                        }
+                    });
+
+                    double durationSeconds = (System.nanoTime() - start) / 1e9;
+
+                    logger.onLog(new LogEntry(
+                            "DECRYPT",
+                            file.getFileName().toString(),
+                            out.getFileName().toString(),
+                            durationSeconds,
+                            "-",
+                            true,
+                            compressedSize,
+                            originalSize
+                    ));
+                } else if (fileName.endsWith(".ec")) {
+                    if (session == null) {
+                        throw new IllegalArgumentException("Contraseña requerida para desencriptar.");
+                    }
+                    progress.onProgress(20, "Desencriptando y descomprimiendo...");
+                    String base = fileName.substring(0, fileName.length() - 3);
+                    Path out = destDir.resolve(base);
+                    long originalSize = writeVerified(out, tmp -> {
+                        try (InputStream in = new BufferedInputStream(
+                                encryptor.decryptingStream(openInput(file, compressedSize), session), IO_BUFFER_SIZE)) {
+                            long n = decompressTo(in, tmp, compressedSize, scaled(progress, 20, 90));
+                            expectEnd(in);
+                            return n;
+                        }
+                    });
+
+                    // ec ~ tamaño comprimido + cifrado
+                    double durationSeconds = (System.nanoTime() - start) / 1e9;
+                    String rate = originalSize > 0
+                            ? String.format("%.2f", 100.0 * (1.0 - (compressedSize / (double) originalSize)))
+                            : "-";
+
+                    logger.onLog(new LogEntry(
+                            "DECRYPT+DECOMPRESS",
+                            file.getFileName().toString(),
+                            out.getFileName().toString(),
+                            durationSeconds,
+                            rate,
+                            true,
+                            compressedSize,
+                            originalSize
+                    ));
+                } else if (fileName.endsWith(SolidArchive.EXTENSION)) {
+                    progress.onProgress(10, "Extrayendo archivo...");
+                    String base = fileName.substring(0, fileName.length() - SolidArchive.EXTENSION.length());
+                    Path out = destDir.resolve(base);
+                    long originalSize = writeVerifiedTree(out, tmp -> {
+                        try (InputStream raw = openInput(file, compressedSize);
+                             InputStream in = SimpleEncryptor.isEncrypted(raw) ? decrypting(raw, session) : raw) {
+                            long n = new SolidArchive(blocks).extract(in, tmp, scaled(progress, 10, 90));
+                            if (in != raw) expectEnd(in);
+                            return n;
+                        }
+                    });
+
+                    double durationSeconds = (System.nanoTime() - start) / 1e9;
+                    String rate = originalSize > 0
+                            ? String.format("%.2f", 100.0 * (1.0 - (compressedSize / (double) originalSize)))
+                            : "-";
+
+                    logger.onLog(new LogEntry(
+                            "EXTRACT",
+                            file.getFileName().toString(),
+                            out.getFileName().toString(),
+                            durationSeconds,
+                            rate,
+                            true,
+                            compressedSize,
+                            originalSize
+                    ));
+                } else if (fileName.endsWith(DedupArchive.EXTENSION)) {
+                    progress.onProgress(10, "Restaurando desde el almacén...");
+                    Path out = destDir.resolve(DedupArchive.restoredName(fileName));
+                    Path storeDir = file.toAbsolutePath().getParent().resolve(ChunkStore.DIRECTORY);
+                    long originalSize;
+                    try (ChunkStore store = ChunkStore.open(storeDir, blocks, true)) {
+                        originalSize = writeVerifiedTree(out, tmp -> {
+                            try (InputStream in = openInput(file, compressedSize)) {
+                                return new DedupArchive(blocks).extract(in, tmp, store, scaled(progress, 10, 90));
+                            }
+                        });
+                    }
+
+                    double durationSeconds = (System.nanoTime() - start) / 1e9;
+                    String rate = originalSize > 0
+                            ? String.format("%.2f", 100.0 * (1.0 - (compressedSize / (double) originalSize)))
+                            : "-";
+
+                    logger.onLog(new LogEntry(
+                            "EXTRACT",
+                            file.getFileName().toString(),
+                            out.getFileName().toString(),
+                            durationSeconds,
+                            rate,
+                            true,
+                            compressedSize,
+                            originalSize
+                    ));
+                } else {
+                    logger.onLog(new LogEntry(
+                            "SKIP",
+                            file.getFileName().toString(),
+                            "",
+                            0.0,
+                            "-",
+                            false
+                    ));
+                    return false;
+                }
+
+                progress.onProgress(100, "Archivo recuperado: " + fileName);
+                return true;
+            } catch (Exception ex) {
+                logger.onLog(new LogEntry(
+                        failure(ex, "ERROR_RECOVER"),
+                        file.getFileName().toString(),
+                        reason(ex),
+                        0.0,
+                        "-",
+                        false
+                ));
+                return false;
+            }
+        }
+
+        interface FileTask {
+            void run(Path file, ProgressCallback progress, LogCallback logger);
+        }
+
+        private static final class WalkItem {
+            final long seq;
+            final Path file;
+            final ProgressTracker.Part part;
+
+            WalkItem(long seq, Path file, ProgressTracker.Part part) {
+                this.seq = seq;
+                this.file = file;
+                this.part = part;
+            }
+        }
+
+        private static final WalkItem END_OF_WALK = new WalkItem(-1, null, null);
+
+        // peso fijo de cada archivo en el progreso: abrirlo, crear la salida, etc.
+        private static final long FILE_OVERHEAD = 4096;
+
+        // Recorre el árbol en streaming: el hilo que llama alimenta una cola acotada
+        // desde Files.walkFileTree y fileThreads trabajadores toman el siguiente
+        // archivo libre. Los LogEntry se entregan en el orden del recorrido. En el
+        // progreso cada archivo pesa su tamaño, y un segundo recorrido (solo
+        // metadatos) estima el total mientras la cola todavía no llegó al final. Si
+        // el recorrido falla o el hilo que llama es interrumpido se deja de encolar,
+        // los trabajadores descartan lo pendiente y se espera a los que estaban en
+        // curso antes de volver. En pausa, ni el recorrido ni los trabajadores toman
+        // otro archivo. Una entrada cuya salida ya tiene otra entrada del recorrido,
+        // o una carpeta que no se puede leer, queda como failedOperation en el log.
+        private void processTree(Path root,
+                                 String verb,
+                                 String failedOperation,
+                                 java.util.function.Function<Path, Path> outputOf,
+                                 java.util.function.Predicate<Path> ignore,
+                                 FileTask task,
+                                 ProgressTracker tracker,
+                                 LogCallback logger) throws IOException {
+            java.util.concurrent.BlockingQueue<WalkItem> queue =
+                    new java.util.concurrent.ArrayBlockingQueue<>(2 * fileThreads);
+            java.util.concurrent.atomic.AtomicBoolean cancelled = new java.util.concurrent.atomic.AtomicBoolean();
+            java.util.concurrent.atomic.AtomicBoolean walked = new java.util.concurrent.atomic.AtomicBoolean();
+            OrderedLog ordered = new OrderedLog(logger);
+            Thread sizing = new Thread(() -> estimateTree(root, tracker, walked), "ed2-sizing");
+            sizing.setDaemon(true);
+            sizing.start();
+
+            java.util.concurrent.ExecutorService workers =
+                    java.util.concurrent.Executors.newFixedThreadPool(fileThreads);
+            try {
+                for (int w = 0; w < fileThreads; w++) {
+                    workers.execute(() -> {
+                        while (true) {
+                            WalkItem item;
+                            try {
+                                item = queue.take();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                            if (item == END_OF_WALK) {
+                                queue.offer(END_OF_WALK); // para el siguiente trabajador
+                                return;
+                            }
+                            java.util.List<LogEntry> entries = new ArrayList<>(1);
+                            try {
+                                if (!cancelled.get()) {
+                                    checkpoint(); // en pausa, entre archivos
+                                    tracker.message(verb + " " + item.file.getFileName());
+                                    task.run(item.file, item.part, entries::add);
+                                }
+                            } catch (InterruptedIOException ex) {
+                                cancelled.set(true);
+                            } catch (RuntimeException ex) {
+                                entries.add(new LogEntry(
+                                        failure(ex, failedOperation),
+                                        item.file.getFileName().toString(),
+                                        reason(ex),
+                                        0.0,
+                                        "-",
+                                        false));
+                            } finally {
+                                item.part.finish();
+                                ordered.complete(item.seq, entries);
+                            }
+                        }
+                    });
+                }
+
+                // salidas de este trabajo y la entrada de cada una: no se vuelven a
+                // procesar si el recorrido las encuentra, y dos entradas con la misma
+                // salida (x.txt y x.log) no pueden escribirla a la vez
+                Map<Path, Path> outputs = new HashMap<>();
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    private long seq;
+
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir,
+                                                             java.nio.file.attribute.BasicFileAttributes attrs)
+                            throws IOException {
+                        checkpoint();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, java.nio.file.attribute.BasicFileAttributes attrs)
+                            throws IOException {
+                        checkpoint();
+                        if (attrs.isSymbolicLink()) {
+                            try {
+                                // un enlace cuenta como su destino, igual que con Files.isRegularFile
+                                attrs = Files.readAttributes(file, java.nio.file.attribute.BasicFileAttributes.class);
+                            } catch (IOException e) {
+                                return FileVisitResult.CONTINUE; // enlace roto
+                            }
+                        }
+                        if (!attrs.isRegularFile() || isWorkFile(root, file)) return FileVisitResult.CONTINUE;
+                        if (outputs.containsKey(file) || ignore.test(file)) return FileVisitResult.CONTINUE;
+                        Path out = outputOf.apply(file);
+                        // un archivo que sería su propia salida ya es resultado de esta operación
+                        if (file.equals(out)) return FileVisitResult.CONTINUE;
+                        if (out != null) {
+                            Path first = outputs.putIfAbsent(out, file);
+                            if (first != null) {
+                                fail(file, out.getFileName() + " ya es la salida de " + first.getFileName());
+                                return FileVisitResult.CONTINUE;
+                            }
+                        }
+                        try {
+                            queue.put(new WalkItem(seq++, file, tracker.part(attrs.size() + FILE_OVERHEAD)));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException(verb + " cancelado");
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    // Una carpeta (o un archivo) que no se puede leer queda en el log
+                    // y el resto del árbol se procesa; solo la raíz ilegible es un error.
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                        if (file.equals(root)) throw e;
+                        fail(file, reason(e));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    private void fail(Path file, String reason) {
+                        ordered.complete(seq++, java.util.List.of(new LogEntry(
+                                failedOperation,
+                                file.getFileName().toString(),
+                                reason,
+                                0.0,
+                                "-",
+                                false)));
+                    }
+                });
+                walked.set(true);
+                tracker.seal();
+                queue.put(END_OF_WALK);
+
+                workers.shutdown();
+                while (!workers.awaitTermination(1, java.util.concurrent.TimeUnit.SECONDS)) {
+                    // esperar a que terminen los archivos en curso
+                }
+                throwIfCancelled();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(verb + " cancelado");
+            } finally {
+                walked.set(true);
+                if (!workers.isTerminated()) {
+                    cancelled.set(true);
+                    queue.clear();
+                    queue.offer(END_OF_WALK);
+                    workers.shutdown();
+                    // Nada sigue escribiendo en el log, el diario o el manifiesto
+                    // después de volver. Con el trabajo cancelado los archivos en
+                    // curso abortan en el próximo bloque y borran su temporal; si
+                    // no, terminan y quedan registrados.
+                    awaitQuietly(workers);
+                }
+            }
+        }
+
+        private static void awaitQuietly(java.util.concurrent.ExecutorService workers) {
+            try {
+                while (!workers.awaitTermination(1, java.util.concurrent.TimeUnit.SECONDS)) {
+                    // sigue esperando
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Suma los tamaños del árbol para el total del progreso hasta que el
+        // recorrido principal termine (entonces el total ya es exacto).
+        private static void estimateTree(Path root, ProgressTracker tracker,
+                                         java.util.concurrent.atomic.AtomicBoolean walked) {
+            long[] total = new long[1];
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, java.nio.file.attribute.BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            total[0] += attrs.size() + FILE_OVERHEAD;
+                            tracker.estimate(total[0]);
+                        }
+                        return walked.get() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return walked.get() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                // solo era una estimación
+            }
+        }
+
+        // Reentrega los LogEntry de cada archivo en el orden del recorrido.
+        private static final class OrderedLog {
+            private final LogCallback target;
+            private final Map<Long, java.util.List<LogEntry>> ready = new HashMap<>();
+            private long next;
+
+            OrderedLog(LogCallback target) {
+                this.target = target;
+            }
+
+            synchronized void complete(long seq, java.util.List<LogEntry> entries) {
+                ready.put(seq, entries);
+                java.util.List<LogEntry> batch;
+                while ((batch = ready.remove(next)) != null) {
+                    for (LogEntry e : batch) {
+                        target.onLog(e);
+                    }
+                    next++;
+                }
+            }
+        }
+
+        interface ResultTask {
+            boolean run(Path file, ProgressCallback progress, LogCallback logger);
+        }
+
+        private static Path outputFor(Path file, String operation) {
+            String fileName = file.getFileName().toString();
+            String baseName = fileName;
+            int idx = fileName.lastIndexOf('.');
+            if (idx != -1) baseName = fileName.substring(0, idx);
+
+            Path parent = file.getParent();
+            if (parent == null) parent = Paths.get(".");
+
+            String ext = operation.equals("compress") ? ".cmp"
+                    : operation.equals("encrypt") ? ".enc" : ".ec";
+            return parent.resolve(baseName + ext);
+        }
+
+        private static Path recoveredFor(Path file, Path destDir) {
+            String fileName = file.getFileName().toString();
+            if (fileName.endsWith(".cmp") || fileName.endsWith(".enc")) {
+                return destDir.resolve(fileName.substring(0, fileName.length() - 4));
+            }
+            if (fileName.endsWith(".ec")) {
+                return destDir.resolve(fileName.substring(0, fileName.length() - 3));
+            }
+            if (fileName.endsWith(SolidArchive.EXTENSION)) {
+                return destDir.resolve(fileName.substring(0, fileName.length() - SolidArchive.EXTENSION.length()));
+            }
+            if (fileName.endsWith(DedupArchive.EXTENSION)) {
+                return destDir.resolve(DedupArchive.restoredName(fileName));
+            }
+            return null;
+        }
+
+        // ====================================================================
+        // Verificación
+        // ====================================================================
+
+        // Comprueba cada archivo sin escribir nada: CRC de las tramas (o
+        // decodificación, en formatos sin CRC), autenticación de lo cifrado y
+        // SHA-256 de los fragmentos de un .cdd. Un archivo dañado se informa como
+        // ERROR_VERIFY con el motivo en destName.
+        public void verifyPath(Path src,
+                               String password,
+                               ProgressCallback progress,
+                               LogCallback logger) throws IOException {
+            LogCallback log = metrics.recording(logger);
+            try (SimpleEncryptor.Session session = newSession(password);
+                 ProgressTracker tracker = new ProgressTracker(progress)) {
+                if (Files.isDirectory(src)) {
+                    // en carpetas solo cuenta lo que recoverPath sabría recuperar
+                    processTree(src, "Verificando", "ERROR_VERIFY",
+                            file -> null,
+                            file -> recoveredFor(file, file.getParent()) == null,
+                            (file, p, l) -> verifySingleFile(file, session, p, l),
+                            tracker, log);
+                } else {
+                    verifySingleFile(src, session, single(tracker), log);
+                }
+                throwIfCancelled();
+            }
+        }
+
+        private void verifySingleFile(Path file,
+                                      SimpleEncryptor.Session session,
+                                      ProgressCallback progress,
+                                      LogCallback logger) {
+            String fileName = file.getFileName().toString();
+            long start = System.nanoTime();
+
+            try {
+                long size = Files.size(file);
+                long originalSize;
+                progress.onProgress(10, "Verificando " + fileName + "...");
+                if (fileName.endsWith(".cmp")) {
+                    try (InputStream in = openInput(file, size)) {
+                        originalSize = checkCompressed(in);
+                    }
+                } else if (fileName.endsWith(".ec")) {
+                    try (InputStream in = decrypting(openAuthenticated(file, size), session)) {
+                        originalSize = checkCompressed(in);
+                        expectEnd(in);
+                    }
+                } else if (fileName.endsWith(".enc")) {
+                    try (InputStream in = decrypting(openAuthenticated(file, size), session)) {
+                        originalSize = in.transferTo(OutputStream.nullOutputStream());
+                    }
+                } else if (fileName.endsWith(SolidArchive.EXTENSION)) {
+                    try (InputStream raw = openInput(file, size);
+                         InputStream in = SimpleEncryptor.isEncrypted(raw) ? decrypting(raw, session) : raw) {
+                        originalSize = new SolidArchive(blocks).verify(in);
+                        if (in != raw) expectEnd(in);
+                    }
+                } else if (fileName.endsWith(DedupArchive.EXTENSION)) {
+                    Path storeDir = file.toAbsolutePath().getParent().resolve(ChunkStore.DIRECTORY);
+                    try (ChunkStore store = ChunkStore.open(storeDir, blocks, true);
+                         InputStream in = openInput(file, size)) {
+                        originalSize = new DedupArchive(blocks).verify(in, store, scaled(progress, 10, 90));
+                    }
+                } else {
+                    logger.onLog(new LogEntry("SKIP", fileName, "", 0.0, "-", false));
+                    return;
+                }
+
+                double durationSeconds = (System.nanoTime() - start) / 1e9;
+                String rate = originalSize > 0
+                        ? String.format("%.2f", 100.0 * (1.0 - (size / (double) originalSize)))
+                        : "-";
+
+                logger.onLog(new LogEntry("VERIFY", fileName, "", durationSeconds, rate, true, size, originalSize));
+                progress.onProgress(100, "Archivo íntegro: " + fileName);
+            } catch (Exception ex) {
+                // un archivo dañado es un resultado esperado, no un fallo del programa
+                logger.onLog(new LogEntry(
+                        ex instanceof InterruptedIOException ? "CANCELLED" : "ERROR_VERIFY",
+                        fileName,
+                        reason(ex),
+                        (System.nanoTime() - start) / 1e9,
+                        "-",
+                        false
+                ));
+            }
+        }
+
+        // Igual que decompressTo, descartando la salida.
+        private long checkCompressed(InputStream in) throws IOException {
+            in.mark(1);
+            int first = in.read();
+            in.reset();
+            if (BlockCompressor.isBlockStream(first)) {
+                return blocks.check(in);
+            }
+            return lz77.decompressSerialized(huffman.decompress(in.readAllBytes())).length;
+        }
+
+        // El formato XOR anterior no tiene nada que autenticar.
+        private static InputStream openAuthenticated(Path file, long size) throws IOException {
+            InputStream in = openInput(file, size);
+            if (!SimpleEncryptor.isEncrypted(in)) {
+                in.close();
+                throw new IOException("Cifrado XOR anterior: no se puede verificar");
+            }
+            return in;
+        }
+
+        // ====================================================================
+        // Acceso aleatorio
+        // ====================================================================
+
+        // Copia a out el tramo [offset, offset + length) del original de un .cmp,
+        // .ec o .enc sin recuperar el archivo entero: solo se leen (y descifran)
+        // los bloques que lo cubren. Devuelve los bytes escritos.
+        public long extractRange(Path file, long offset, long length, OutputStream out,
+                                 String password) throws IOException {
+            try (SimpleEncryptor.Session session = newSession(password);
+                 BlockCompressor.SeekableInput src = openSeekable(file, session)) {
+                if (!file.getFileName().toString().endsWith(".enc")) {
+                    return blocks.readRange(src, 0, offset, length, out);
+                }
+                // .enc: cifrado sin comprimir, el tramo se copia tal cual
+                if (offset < 0 || length < 0 || offset > src.size() - length) {
+                    throw new IllegalArgumentException("Tramo fuera del contenido: " + offset + "+" + length
+                            + " de " + src.size() + " bytes");
+                }
+                byte[] buffer = new byte[16 * IO_BUFFER_SIZE];
+                for (long done = 0; done < length; ) {
+                    int n = (int) Math.min(buffer.length, length - done);
+                    src.readFully(offset + done, buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    done += n;
+                }
+                out.flush();
+                return length;
+            }
+        }
+
+        // Mismo tramo, de un archivo dentro de un .cma.
+        public long extractRange(Path archive, String entryPath, long offset, long length,
+                                 OutputStream out, String password) throws IOException {
+            try (SimpleEncryptor.Session session = newSession(password);
+                 BlockCompressor.SeekableInput src = openSeekable(archive, session)) {
+                return new SolidArchive(blocks).open(src).read(entryPath, offset, length, out);
+            }
+        }
+
+        // Entradas de un .cma o de una receta .cdd (esta no usa contraseña).
+        public java.util.List<SolidArchive.Entry> listArchive(Path archive, String password) throws IOException {
+            if (archive.getFileName().toString().endsWith(DedupArchive.EXTENSION)) {
+                try (InputStream in = openInput(archive, Files.size(archive))) {
+                    return new DedupArchive(blocks).entries(in);
+                }
+            }
+            try (SimpleEncryptor.Session session = newSession(password);
+                 BlockCompressor.SeekableInput src = openSeekable(archive, session)) {
+                return new SolidArchive(blocks).open(src).entries();
+            }
+        }
+
+        // Extrae un solo archivo de un .cma en target (vía temporal, como recoverPath).
+        public long extractEntry(Path archive, String entryPath, Path target, String password) throws IOException {
+            try (SimpleEncryptor.Session session = newSession(password);
+                 BlockCompressor.SeekableInput src = openSeekable(archive, session)) {
+                SolidArchive.Catalog catalog = new SolidArchive(blocks).open(src);
+                SolidArchive.Entry entry = catalog.entry(entryPath);
+                long written = writeVerified(target, tmp -> {
+                    try (ChannelOutputStream os = openOutput(tmp)) {
+                        return catalog.read(entryPath, 0, entry.size, os);
+                    }
+                });
+                Files.setLastModifiedTime(target, java.nio.file.attribute.FileTime.fromMillis(entry.modified));
+                return written;
+            }
+        }
+
+        // El archivo tal cual o, si está cifrado, descifrado por fragmentos a pedido.
+        private BlockCompressor.SeekableInput openSeekable(Path file, SimpleEncryptor.Session session) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                byte[] head = new byte[4];
+                if (channel.size() >= head.length) {
+                    BlockCompressor.readAt(channel, 0, head, 0, head.length);
+                }
+                if (java.nio.ByteBuffer.wrap(head).getInt() == SimpleEncryptor.MAGIC) {
+                    if (session == null) {
+                        throw new IllegalArgumentException("Contraseña requerida para desencriptar.");
+                    }
+                    return encryptor.openSeekable(channel, session);
+                }
+                String name = file.getFileName().toString();
+                if (name.endsWith(".enc") || name.endsWith(".ec")) {
+                    throw new IOException("Cifrado anterior sin acceso aleatorio: recupere el archivo completo");
+                }
+                return BlockCompressor.seekable(channel);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        // Descomprime un .cmp (por bloques o legado) leído de 'in'; devuelve el tamaño original.
+        private long decompressTo(InputStream in, Path out, long compressedSize,
+                                  ProgressCallback progress) throws IOException {
+            in.mark(1);
+            int first = in.read();
+            in.reset();
+            try (ChannelOutputStream os = openOutput(out)) {
+                if (BlockCompressor.isBlockStream(first)) {
+                    blocks.decompress(in, os, compressedSize, progress);
+                } else {
+                    // formato legado: un único bloque Huffman en memoria
+                    byte[] tokenBytes = huffman.decompress(in.readAllBytes());
+                    os.write(lz77.decompressSerialized(tokenBytes));
+                }
+                return os.getCount();
+            }
+        }
+
+        // Las entradas grandes se leen mapeadas en memoria: los bloques se copian una
+        // sola vez desde la caché de páginas, sin pasar por buffers intermedios.
+        private static InputStream openInput(Path file, long size) throws IOException {
+            if (size >= MMAP_THRESHOLD) {
+                return new MappedInputStream(FileChannel.open(file, StandardOpenOption.READ), size);
+            }
+            return new BufferedInputStream(Files.newInputStream(file), IO_BUFFER_SIZE);
+        }
+
+        private static ChannelOutputStream openOutput(Path file) throws IOException {
+            return new ChannelOutputStream(FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        }
+
+        interface PathWriter {
+            long write(Path target) throws IOException;
+        }
+
+        // Toda salida se escribe en un temporal junto al destino y solo se renombra
+        // (atómicamente si el sistema de archivos lo permite) al terminar bien: un
+        // archivo alterado, un error, una cancelación o un proceso terminado a la
+        // fuerza nunca dejan una salida a medias con el nombre final.
+        static long writeVerified(Path out, PathWriter writer) throws IOException {
+            Path tmp = createSibling(out, false);
+            try {
+                long written = writer.write(tmp);
+                try {
+                    Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return written;
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        // Igual que writeVerified para una carpeta: se extrae en ".ed2-tmp-<destino>-<n>"
+        // y solo al terminar bien se renombra (o se mezcla si el destino ya existe).
+        private static long writeVerifiedTree(Path out, PathWriter writer) throws IOException {
+            Path tmp = createSibling(out, true);
+            try {
+                long written = writer.write(tmp);
+                if (!Files.exists(out)) {
+                    try {
+                        Files.move(tmp, out, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(tmp, out);
+                    }
+                } else {
+                    java.util.List<Path> paths = new ArrayList<>();
+                    try (java.util.stream.Stream<Path> stream = Files.walk(tmp)) {
+                        stream.forEach(paths::add);
+                    }
+                    for (Path p : paths) {
+                        Path target = out.resolve(tmp.relativize(p).toString());
+                        if (Files.isDirectory(p)) {
+                            Files.createDirectories(target);
+                        } else {
+                            Files.move(p, target, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    }
+                }
+                return written;
+            } finally {
+                deleteTree(tmp);
+            }
+        }
+
+        // Temporal junto a out con un nombre único: dos escrituras del mismo destino
+        // no comparten temporal. Se crea como cualquier archivo (CREATE_NEW), no con
+        // Files.createTempFile, para que tome los permisos de la umask y no 0600/0700,
+        // que el renombrado conservaría en la salida.
+        private static Path createSibling(Path out, boolean directory) throws IOException {
+            Path dir = out.toAbsolutePath().getParent();
+            while (true) {
+                String unique = Long.toUnsignedString(java.util.concurrent.ThreadLocalRandom.current().nextLong());
+                Path tmp = dir.resolve(TEMP_PREFIX + out.getFileName() + "-" + unique);
+                try {
+                    return directory ? Files.createDirectory(tmp) : Files.createFile(tmp);
+                } catch (FileAlreadyExistsException e) {
+                    // otro trabajo eligió el mismo número; se prueba con otro
+                }
+            }
+        }
+
+        private static void deleteTree(Path root) throws IOException {
+            if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) return;
+            try (java.util.stream.Stream<Path> stream = Files.walk(root)) {
+                java.util.List<Path> paths = new ArrayList<>();
+                stream.forEach(paths::add);
+                Collections.reverse(paths);
+                for (Path p : paths) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+
+        // El contenedor termina antes que el texto cifrado solo si sobra algo; leer
+        // hasta el final obliga además a autenticar el fragmento final.
+        private static void expectEnd(InputStream in) throws IOException {
+            if (in.read() >= 0) {
+                throw new IOException("Datos de más tras el contenido cifrado");
+            }
+        }
+
+        private InputStream decrypting(InputStream in, SimpleEncryptor.Session session) throws IOException {
+            if (session == null) {
+                throw new IllegalArgumentException("Contraseña requerida para desencriptar.");
+            }
+            return new BufferedInputStream(encryptor.decryptingStream(in, session), IO_BUFFER_SIZE);
+        }
+
+        // Lectura y escritura cuentan como fases: cifrar o descifrar solo no pasa
+        // por BlockCompressor.
+        private long copy(InputStream in, OutputStream out, long total,
+                          ProgressCallback progress, String message) throws IOException {
+            byte[] buffer = new byte[16 * IO_BUFFER_SIZE];
+            long done = 0;
+            int n;
+            while (true) {
+                long t = System.nanoTime();
+                n = in.read(buffer);
+                t = metrics.time(Metrics.Phase.READ, t);
+                if (n <= 0) break;
+                out.write(buffer, 0, n);
+                metrics.time(Metrics.Phase.WRITE, t);
+                done += n;
+                if (total > 0) {
+                    int pct = (int) Math.min(100, done * 100 / total);
+                    progress.onProgress(pct, message + ": " + pct + "%");
+                }
+            }
+            return done;
+        }
+
+        // Lee el archivo por ventanas de segmentSize bytes: mapear todo de una vez
+        // no es posible por encima de 2 GB (un MappedByteBuffer se indexa con int).
+        static final class MappedInputStream extends InputStream {
+            private final FileChannel channel;
+            private final long size;
+            private final long segmentSize;
+            private java.nio.MappedByteBuffer segment;
+            private long segmentStart;
+            private long position;
+            private long mark;
+
+            MappedInputStream(FileChannel channel, long size) {
+                this(channel, size, MMAP_SEGMENT);
+            }
+
+            MappedInputStream(FileChannel channel, long size, long segmentSize) {
+                if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Segmento inválido: " + segmentSize);
+                }
+                this.channel = channel;
+                this.size = size;
+                this.segmentSize = segmentSize;
+            }
+
+            private boolean ensureMapped() throws IOException {
+                if (position >= size) return false;
+                if (segment == null || position < segmentStart || position >= segmentStart + segment.limit()) {
+                    segmentStart = position;
+                    long length = Math.min(segmentSize, size - position);
+                    segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, length);
+                }
+                segment.position((int) (position - segmentStart));
+                return true;
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (!ensureMapped()) return -1;
+                position++;
+                return segment.get() & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                if (!ensureMapped()) return -1;
+                int n = Math.min(len, segment.remaining());
+                segment.get(b, off, n);
+                position += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(0, Math.min(n, size - position));
+                position += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, size - position);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return true;
+            }
+
+            @Override
+            public synchronized void mark(int readLimit) {
+                mark = position;
+            }
+
+            @Override
+            public synchronized void reset() {
+                position = mark;
+            }
+
+            @Override
+            public void close() throws IOException {
+                segment = null;
+                channel.close();
+            }
+        }
+
+        // Salida por FileChannel con un buffer directo; lleva la cuenta de bytes
+        // escritos para no volver a consultar el tamaño al sistema de archivos.
+        private static final class ChannelOutputStream extends OutputStream {
+            private final FileChannel channel;
+            private final java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+            private long count;
+
+            ChannelOutputStream(FileChannel channel) {
+                this.channel = channel;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                if (!buffer.hasRemaining()) drain();
+                buffer.put((byte) b);
+                count++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                count += len;
+                while (len > 0) {
+                    if (!buffer.hasRemaining()) drain();
+                    int n = Math.min(len, buffer.remaining());
+                    buffer.put(b, off, n);
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            private void drain() throws IOException {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+
+            @Override
+            public void flush() throws IOException {
+                drain();
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    drain();
+                } finally {
+                    channel.close();
+                }
+            }
+
+            long getCount() {
+                return count;
+            }
+        }
+
+        // Reubica el 0..100 de una fase dentro del rango [from, to] de la barra.
+        private static ProgressCallback scaled(ProgressCallback progress, int from, int to) {
+            return (percent, message) -> progress.onProgress(from + (to - from) * percent / 100, message);
+        }
+    }
+
+    // ========================================================================
+    // LZ77 SIMPLE
+    // ========================================================================
+
+    public static class LZ77Compressor {
+
+        // Vista de compatibilidad de un token; el pipeline trabaja con TokenBuffer.
+        public static class Token {
+            public final int offset;
+            public final int length;
+            public final byte next;
+
+            public Token(int offset, int length, byte next) {
+                this.offset = offset;
+                this.length = length;
+                this.next = next;
+            }
+        }
+
+        // Tokens en columnas paralelas (struct-of-arrays): sin un objeto por token.
+        public static class TokenBuffer {
+            private static final int MIN_CHUNK = 1024;
+
+            private int[] offsets;
+            private short[] lengths;
+            private byte[] nexts;
+            private int size;
+
+            public TokenBuffer() {
+                this(MIN_CHUNK);
+            }
+
+            public TokenBuffer(int initialCapacity) {
+                int cap = Math.max(MIN_CHUNK, initialCapacity);
+                offsets = new int[cap];
+                lengths = new short[cap];
+                nexts = new byte[cap];
+            }
+
+            public static TokenBuffer of(java.util.List<Token> tokens) {
+                TokenBuffer buf = new TokenBuffer(tokens.size());
+                for (Token t : tokens) {
+                    buf.add(t.offset, t.length, t.next);
+                }
+                return buf;
+            }
+
+            public void add(int offset, int length, byte next) {
+                if (size == offsets.length) {
+                    grow();
+                }
+                offsets[size] = offset;
+                lengths[size] = (short) length;
+                nexts[size] = next;
+                size++;
+            }
+
+            public void addLiteral(byte next) {
+                add(0, 0, next);
+            }
+
+            private void grow() {
+                int cap = offsets.length + Math.max(MIN_CHUNK, offsets.length >> 1);
+                offsets = Arrays.copyOf(offsets, cap);
+                lengths = Arrays.copyOf(lengths, cap);
+                nexts = Arrays.copyOf(nexts, cap);
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public int offset(int i) {
+                return offsets[i];
+            }
+
+            public int length(int i) {
+                return lengths[i] & 0xFFFF;
+            }
+
+            public byte next(int i) {
+                return nexts[i];
+            }
+
+            public void clear() {
+                size = 0;
+            }
+
+            public Token get(int i) {
+                if (i < 0 || i >= size) {
+                    throw new IndexOutOfBoundsException("Token " + i + " fuera de rango (" + size + ")");
+                }
+                return new Token(offset(i), length(i), nexts[i]);
+            }
+
+            public java.util.List<Token> asList() {
+                return new AbstractList<Token>() {
+                    @Override
+                    public Token get(int index) {
+                        return TokenBuffer.this.get(index);
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        }
+
+        // Ventana y longitud máxima originales: las usan la búsqueda exhaustiva y
+        // el constructor con cadena explícita.
+        public static final int LEGACY_WINDOW_SIZE = 4096;
+        public static final int LEGACY_MAX_MATCH = 32;
+        private static final int MIN_MATCH = 3;
+
+        // La ventana es potencia de 2 y no supera la distancia máxima del formato
+        // DEFLATE extendido; la longitud máxima es la de DEFLATE (258).
+        public static final int MIN_WINDOW_SIZE = 1 << 10;
+        public static final int MAX_WINDOW_SIZE = 1 << 22;
+        public static final int DEFAULT_WINDOW_SIZE = 1 << 20;
+        public static final int MAX_MATCH = 258;
+        public static final int DEFAULT_MAX_MATCH = MAX_MATCH;
+
+        // Cadenas hash sobre prefijos de 3 bytes
+        private static final int HASH_BITS = 15;
+        private static final int HASH_SIZE = 1 << HASH_BITS;
+        public static final int DEFAULT_MAX_CHAIN = 256;
+
+        // Niveles 1-9, al estilo de zlib: 1-3 búsqueda voraz con cadenas cortas,
+        // 4-8 evaluación perezosa (se mira i+1 antes de aceptar la coincidencia
+        // en i) y 9 análisis óptimo por costo estimado en bits.
+        public static final int MIN_LEVEL = 1;
+        public static final int MAX_LEVEL = 9;
+        public static final int DEFAULT_LEVEL = 6;
+
+        private static final int GREEDY = 0;
+        private static final int LAZY = 1;
+        private static final int OPTIMAL = 2;
+
+        // {estrategia, maxChain, niceLength, lazyLimit} por nivel; ninguno de los
+        // tres límites baja al subir de nivel. niceLength se recorta a maxMatch y
+        // el lazyLimit de 9 es el del análisis perezoso que fija los precios.
+        private static final int[][] LEVELS = {
+                {GREEDY, 4, 8, 0},
+                {GREEDY, 8, 16, 0},
+                {GREEDY, 32, 32, 0},
+                {LAZY, 32, 32, 16},
+                {LAZY, 64, 128, 32},
+                {LAZY, 128, 128, 32},
+                {LAZY, 256, 258, 64},
+                {LAZY, 1024, 258, 128},
+                {OPTIMAL, 1024, 258, 258},
+        };
+
+        // Con maxChain >= LEGACY_WINDOW_SIZE se recorren todos los candidatos de
+        // la ventana y los tokens son idénticos a los de la búsqueda exhaustiva.
+        private final int maxChain;
+        private final int strategy;
+        // una coincidencia de esta longitud corta la búsqueda en la cadena
+        private final int niceLength;
+        // la evaluación perezosa solo se intenta bajo esta longitud
+        private final int lazyLimit;
+        private final int level;
+        private final int windowSize;
+        private final int maxMatch;
+        // null: sin cancelación (ver withControl)
+        private final JobControl control;
+
+        public LZ77Compressor() {
+            this(DEFAULT_LEVEL, LEVELS[DEFAULT_LEVEL - 1], DEFAULT_WINDOW_SIZE, DEFAULT_MAX_MATCH);
+        }
+
+        // Búsqueda voraz completa con la cadena indicada (sin corte por niceLength),
+        // con la ventana y longitud máxima originales.
+        public LZ77Compressor(int maxChain) {
+            this(0, GREEDY, maxChain, Integer.MAX_VALUE, 0, LEGACY_WINDOW_SIZE, LEGACY_MAX_MATCH);
+            if (maxChain < 1) {
+                throw new IllegalArgumentException("maxChain debe ser >= 1");
+            }
+        }
+
+        public static LZ77Compressor forLevel(int level) {
+            return forLevel(level, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_MATCH);
+        }
+
+        public static LZ77Compressor forLevel(int level, int windowSize, int maxMatch) {
+            return new LZ77Compressor(checkLevel(level), LEVELS[level - 1], windowSize, maxMatch);
+        }
+
+        private LZ77Compressor(int level, int[] params, int windowSize, int maxMatch) {
+            this(level, params[0], params[1], Math.min(params[2], maxMatch), params[3], windowSize, maxMatch);
+        }
+
+        private LZ77Compressor(int level, int strategy, int maxChain, int niceLength, int lazyLimit,
+                               int windowSize, int maxMatch) {
+            this(level, strategy, maxChain, niceLength, lazyLimit, windowSize, maxMatch, null);
+        }
+
+        private LZ77Compressor(int level, int strategy, int maxChain, int niceLength, int lazyLimit,
+                               int windowSize, int maxMatch, JobControl control) {
+            if (windowSize < MIN_WINDOW_SIZE || windowSize > MAX_WINDOW_SIZE
+                    || Integer.bitCount(windowSize) != 1) {
+                throw new IllegalArgumentException("Ventana inválida (potencia de 2 entre "
+                        + MIN_WINDOW_SIZE + " y " + MAX_WINDOW_SIZE + "): " + windowSize);
+            }
+            if (maxMatch < MIN_MATCH || maxMatch > MAX_MATCH) {
+                throw new IllegalArgumentException("Longitud máxima fuera de rango (3-258): " + maxMatch);
+            }
+            this.level = level;
+            this.strategy = strategy;
+            this.maxChain = maxChain;
+            this.niceLength = niceLength;
+            this.lazyLimit = lazyLimit;
+            this.windowSize = windowSize;
+            this.maxMatch = maxMatch;
+            this.control = control;
+        }
+
+        // Mismo nivel con otra ventana y longitud máxima.
+        public LZ77Compressor withWindow(int windowSize, int maxMatch) {
+            int nice = level == 0 ? niceLength : Math.min(LEVELS[level - 1][2], maxMatch);
+            return new LZ77Compressor(level, strategy, maxChain, nice, lazyLimit, windowSize, maxMatch,
+                    control);
+        }
+
+        // Misma configuración sujeta a control: compress pasa por checkpoint en
+        // cada punto porcentual de la entrada (y corta con CancellationException),
+        // así un bloque grande en un nivel alto no demora la pausa ni la cancelación.
+        public LZ77Compressor withControl(JobControl control) {
+            return new LZ77Compressor(level, strategy, maxChain, niceLength, lazyLimit, windowSize, maxMatch,
+                    control);
+        }
+
+        public static int checkLevel(int level) {
+            if (level < MIN_LEVEL || level > MAX_LEVEL) {
+                throw new IllegalArgumentException("Nivel de compresión fuera de rango (1-9): " + level);
+            }
+            return level;
+        }
+
+        public int getMaxChain() {
+            return maxChain;
+        }
+
+        // 0 si se creó con una cadena explícita
+        public int getLevel() {
+            return level;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public int getMaxMatch() {
+            return maxMatch;
+        }
+
+        // en un nivel, nunca más que maxMatch; sin corte con una cadena explícita
+        public int getNiceLength() {
+            return niceLength;
+        }
+
+        public int getLazyLimit() {
+            return lazyLimit;
+        }
+
+        // Punto de control al cruzar cada punto porcentual (a lo sumo 101 veces
+        // por llamada): avisa el progreso y consulta la cancelación. Devuelve la
+        // posición del próximo; sin progreso ni control no hay ninguno.
+        private int firstStep(ProgressCallback progress) {
+            return progress == null && control == null ? Integer.MAX_VALUE : 0;
+        }
+
+        private int step(ProgressCallback progress, int i, int n) {
+            if (control != null) {
+                try {
+                    control.checkpoint();
+                } catch (InterruptedIOException e) {
+                    throw new java.util.concurrent.CancellationException(e.getMessage());
+                }
+            }
+            int pct = (int) ((long) i * 100 / n);
+            if (progress != null) {
+                progress.onProgress(pct, "LZ77: " + pct + "%");
+            }
+            return (int) (((pct + 1L) * n + 99) / 100);
+        }
+
+        private static int hash3(byte[] data, int p) {
+            int v = ((data[p] & 0xFF) << 16) | ((data[p + 1] & 0xFF) << 8) | (data[p + 2] & 0xFF);
+            return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+        }
+
+        public TokenBuffer compress(byte[] data, ProgressCallback progress) {
+            return compress(data, data.length, progress);
+        }
+
+        // Comprime solo los primeros 'length' bytes de data (bloques de un buffer reutilizado).
+        public TokenBuffer compress(byte[] data, int length, ProgressCallback progress) {
+            MatchFinder finder = newFinder(data, length, level == 0);
+            TokenBuffer tokens;
+            if (strategy == OPTIMAL) {
+                tokens = compressOptimal(data, length, finder, progress);
+            } else if (strategy == LAZY) {
+                tokens = compressLazy(data, length, finder, progress);
+            } else {
+                tokens = compressGreedy(data, length, finder, progress);
+            }
+
+            if (progress != null) {
+                progress.onProgress(100, "LZ77 completado");
+            }
+
+            return tokens;
+        }
+
+        private TokenBuffer compressGreedy(byte[] data, int n, MatchFinder finder, ProgressCallback progress) {
+            TokenBuffer tokens = new TokenBuffer(n / 4);
+            int nextReport = firstStep(progress);
+            int i = 0;
+
+            while (i < n) {
+                int bestLength = finder.longest(i);
+                if (bestLength >= MIN_MATCH && i + bestLength < n) {
+                    tokens.add(finder.matchOffset, bestLength, data[i + bestLength]);
+                    i += bestLength + 1;
+                } else {
+                    tokens.addLiteral(data[i]);
+                    i++;
+                }
+                finder.insertUpTo(i);
+
+                if (i >= nextReport) {
+                    nextReport = step(progress, i, n);
+                }
+            }
+            return tokens;
+        }
+
+        // Evaluación perezosa: si en i+1 hay una coincidencia más larga, se emite
+        // data[i] como literal y se continúa desde i+1.
+        private TokenBuffer compressLazy(byte[] data, int n, MatchFinder finder, ProgressCallback progress) {
+            TokenBuffer tokens = new TokenBuffer(n / 4);
+            int nextReport = firstStep(progress);
+            int i = 0;
+            int length = -1; // coincidencia ya calculada para i (-1: ninguna)
+            int offset = 0;
+
+            while (i < n) {
+                if (length < 0) {
+                    length = finder.longest(i);
+                    offset = finder.matchOffset;
+                }
+                if (length >= MIN_MATCH && i + length < n) {
+                    if (length < lazyLimit) {
+                        finder.insertUpTo(i + 1);
+                        int next = finder.longest(i + 1);
+                        if (next > length && i + 1 + next < n) {
+                            tokens.addLiteral(data[i]);
+                            i++;
+                            length = next;
+                            offset = finder.matchOffset;
+                            continue;
+                        }
+                    }
+                    tokens.add(offset, length, data[i + length]);
+                    i += length + 1;
+                } else {
+                    tokens.addLiteral(data[i]);
+                    i++;
+                }
+                length = -1;
+                finder.insertUpTo(i);
+
+                if (i >= nextReport) {
+                    nextReport = step(progress, i, n);
+                }
+            }
+            return tokens;
+        }
+
+        // Análisis óptimo: programación dinámica sobre segmentos de OPT_SEGMENT
+        // posiciones, minimizando el costo en bits. Los precios salen de las
+        // tablas Huffman que produciría un primer análisis perezoso del bloque.
+        private static final int OPT_SEGMENT = 1 << 16;
+        // una coincidencia de al menos esta longitud se acepta sin evaluar las
+        // posiciones que cubre: separado de niceLength, que en 9 es 258 para que
+        // la búsqueda encuentre las más largas, pero evaluar el interior de cada
+        // una recorrería la cadena completa en casi todas las posiciones
+        private static final int OPT_SKIP_LENGTH = 32;
+
+        private TokenBuffer compressOptimal(byte[] data, int n, MatchFinder finder, ProgressCallback progress) {
+            DeflateTokenCoder.Prices prices = new DeflateTokenCoder.Prices(
+                    compressLazy(data, n, newFinder(data, n, false), null));
+            TokenBuffer tokens = new TokenBuffer(n / 4);
+            int nextReport = firstStep(progress);
+            int[] literalPrice = new int[256];
+            for (int b = 0; b < 256; b++) {
+                literalPrice[b] = prices.literal(b);
+            }
+            int segment = Math.min(n, OPT_SEGMENT);
+            int[] cost = new int[segment + 1];
+            int[] fromLength = new int[segment + 1];
+            int[] fromOffset = new int[segment + 1];
+            int[] path = new int[segment + 1];
+            int[] tierLengths = new int[maxMatch + 1];
+            int[] tierOffsets = new int[maxMatch + 1];
+
+            for (int s = 0; s < n; s += OPT_SEGMENT) {
+                int e = Math.min(n, s + OPT_SEGMENT);
+                int size = e - s;
+                Arrays.fill(cost, 1, size + 1, Integer.MAX_VALUE);
+                cost[0] = 0;
+                int skipUntil = s; // una coincidencia >= OPT_SKIP_LENGTH se acepta sin evaluar el interior
+
+                for (int p = s; p < e; p++) {
+                    int k = p - s;
+                    if (p < skipUntil || cost[k] == Integer.MAX_VALUE) continue;
+                    int base = cost[k];
+                    relax(cost, fromLength, fromOffset, k + 1, base + literalPrice[data[p] & 0xFF], 0, 0);
+
+                    finder.insertUpTo(p);
+                    int tiers = finder.collect(p, tierLengths, tierOffsets);
+                    int shorter = MIN_MATCH - 1;
+                    for (int t = 0; t < tiers; t++) {
+                        int off = tierOffsets[t];
+                        int distancePrice = prices.distance(off);
+                        int longest = Math.min(tierLengths[t], e - 1 - p); // deja lugar al literal siguiente
+                        for (int len = shorter + 1; len <= longest; len++) {
+                            int price = base + prices.length(len) + distancePrice
+                                    + literalPrice[data[p + len] & 0xFF];
+                            relax(cost, fromLength, fromOffset, k + len + 1, price, len, off);
+                        }
+                        shorter = Math.max(shorter, longest);
+                    }
+                    if (tiers > 0 && tierLengths[tiers - 1] >= Math.min(niceLength, OPT_SKIP_LENGTH)
+                            && shorter == tierLengths[tiers - 1]) {
+                        skipUntil = p + shorter + 1;
+                    }
+                }
+
+                // reconstrucción del camino de menor costo
+                int steps = 0;
+                for (int k = size; k > 0; k -= fromLength[k] + 1) {
+                    path[steps++] = k;
+                }
+                while (steps > 0) {
+                    int k = path[--steps];
+                    int len = fromLength[k];
+                    if (len == 0) {
+                        tokens.addLiteral(data[s + k - 1]);
+                    } else {
+                        tokens.add(fromOffset[k], len, data[s + k - 1]);
+                    }
+                }
+
+                if (e >= nextReport) {
+                    nextReport = step(progress, e, n);
+                }
+            }
+            return tokens;
+        }
+
+        private static void relax(int[] cost, int[] fromLength, int[] fromOffset,
+                                  int k, int price, int length, int offset) {
+            if (price < cost[k]) {
+                cost[k] = price;
+                fromLength[k] = length;
+                fromOffset[k] = offset;
+            }
+        }
+
+        // La tabla de cadenas es un anillo de tamaño potencia de 2 indexado por
+        // posición: se reserva la ventana, o menos si el bloque es más chico.
+        private MatchFinder newFinder(byte[] data, int n, boolean preferFarthest) {
+            int ring = Math.min(windowSize, Math.max(MIN_WINDOW_SIZE, Integer.highestOneBit(Math.max(1, n - 1)) << 1));
+            return new MatchFinder(data, n, ring, maxMatch, maxChain, niceLength, preferFarthest);
+        }
+
+        // Cadenas hash de un bloque sobre una ventana deslizante; cada llamada a
+        // compress crea la suya, así el compresor se puede compartir entre hilos.
+        private static final class MatchFinder {
+            private final byte[] data;
+            private final int n;
+            private final int window;
+            private final int windowMask;
+            private final int maxMatch;
+            private final int maxChain;
+            private final int niceLength;
+            // empates: el más lejano (igual que la búsqueda exhaustiva) o el más
+            // cercano, que cuesta menos bits de distancia
+            private final boolean preferFarthest;
+            private final int[] head = new int[HASH_SIZE];
+            private final int[] prev;
+            private int inserted; // siguiente posición a insertar en las cadenas
+            int matchOffset;      // offset de la última coincidencia de longest()
+
+            MatchFinder(byte[] data, int n, int window, int maxMatch, int maxChain, int niceLength,
+                        boolean preferFarthest) {
+                this.data = data;
+                this.n = n;
+                this.window = window;
+                this.windowMask = window - 1;
+                this.prev = new int[window];
+                this.maxMatch = maxMatch;
+                this.maxChain = maxChain;
+                this.niceLength = niceLength;
+                this.preferFarthest = preferFarthest;
+                Arrays.fill(head, -1);
+            }
+
+            // Inserta las posiciones < limit (las dos últimas no tienen hash de 3 bytes).
+            void insertUpTo(int limit) {
+                limit = Math.min(limit, n - 2);
+                while (inserted < limit) {
+                    int h = hash3(data, inserted);
+                    prev[inserted & windowMask] = head[h];
+                    head[h] = inserted;
+                    inserted++;
+                }
+            }
+
+            // Coincidencia más larga en i (0 si no llega a MIN_MATCH); el offset queda en matchOffset.
+            int longest(int i) {
+                int bestLength = 0;
+                int bestOffset = 0;
+                int maxLen = Math.min(maxMatch, n - i);
+
+                if (maxLen >= MIN_MATCH) {
+                    int minPos = i - window;
+                    int cand = head[hash3(data, i)];
+                    int chain = maxChain;
+                    while (cand >= 0 && cand >= minPos && chain-- > 0) {
+                        // descarte rápido: el candidato debe igualar al menos bestLength
+                        if (bestLength == 0 || data[cand + bestLength - 1] == data[i + bestLength - 1]) {
+                            int len = 0;
+                            while (len < maxLen && data[cand + len] == data[i + len]) {
+                                len++;
+                            }
+                            if (len >= MIN_MATCH && (len > bestLength || (preferFarthest && len == bestLength))) {
+                                bestLength = len;
+                                bestOffset = i - cand;
+                                if (len >= niceLength) break;
+                            }
+                        }
+                        int next = prev[cand & windowMask];
+                        if (next >= cand) break;
+                        cand = next;
+                    }
+                }
+                matchOffset = bestOffset;
+                return bestLength;
+            }
+
+            // Coincidencias en i de longitud creciente; para cada longitud, el
+            // candidato más cercano (el más barato de codificar). Devuelve la cantidad.
+            int collect(int i, int[] lengths, int[] offsets) {
+                int maxLen = Math.min(maxMatch, n - i);
+                if (maxLen < MIN_MATCH) return 0;
+                int count = 0;
+                int bestLength = MIN_MATCH - 1;
+                int minPos = i - window;
+                int cand = head[hash3(data, i)];
+                int chain = maxChain;
+                while (cand >= 0 && cand >= minPos && chain-- > 0) {
+                    if (data[cand + bestLength] == data[i + bestLength]) {
+                        int len = 0;
+                        while (len < maxLen && data[cand + len] == data[i + len]) {
+                            len++;
+                        }
+                        if (len > bestLength) {
+                            lengths[count] = len;
+                            offsets[count] = i - cand;
+                            count++;
+                            bestLength = len;
+                            if (len >= maxLen || len >= niceLength) break;
+                        }
+                    }
+                    int next = prev[cand & windowMask];
+                    if (next >= cand) break;
+                    cand = next;
+                }
+                return count;
+            }
+        }
+
+        // Búsqueda exhaustiva original; se conserva como referencia para pruebas y benchmarks.
+        public TokenBuffer compressBruteForce(byte[] data, ProgressCallback progress) {
+            int n = data.length;
+            TokenBuffer tokens = new TokenBuffer(n / 4);
+            int nextReport = firstStep(progress);
+            int i = 0;
+
+            while (i < n) {
+                int bestLength = 0;
+                int bestOffset = 0;
+
+                int startWindow = Math.max(0, i - LEGACY_WINDOW_SIZE);
+
+                int maxLen = Math.min(LEGACY_MAX_MATCH, n - i);
+
+                for (int j = startWindow; j < i; j++) {
+                    int len = 0;
+                    while (len < maxLen && data[j + len] == data[i + len]) {
+                        len++;
+                    }
+                    if (len > bestLength) {
+                        bestLength = len;
+                        bestOffset = i - j;
+                    }
+                }
+
+                if (bestLength >= 3 && i + bestLength < n) {
+                    byte next = data[i + bestLength];
+                    tokens.add(bestOffset, bestLength, next);
+                    i += bestLength + 1;
+                } else {
+                    tokens.addLiteral(data[i]);
+                    i++;
+                }
+
+                if (i >= nextReport) {
+                    nextReport = step(progress, i, n);
+                }
+            }
+
+            if (progress != null) {
+                progress.onProgress(100, "LZ77 completado");
+            }
+
+            return tokens;
+        }
+
+        public byte[] decompress(TokenBuffer tokens) {
+            int count = tokens.size();
+            long total = 0;
+            for (int t = 0; t < count; t++) {
+                total += tokens.length(t) + 1;
+            }
+            byte[] out = new byte[checkedSize(total)];
+            decompress(tokens, out, 0);
+            return out;
+        }
+
+        // Descomprime en un arreglo ya reservado; devuelve la cantidad de bytes escritos.
+        public int decompress(TokenBuffer tokens, byte[] dest, int destPos) {
+            int pos = destPos;
+            int count = tokens.size();
+            for (int t = 0; t < count; t++) {
+                int length = tokens.length(t);
+                if (length > 0) {
+                    copyMatch(dest, destPos, pos, tokens.offset(t), length);
+                    pos += length;
+                }
+                dest[pos++] = tokens.next(t);
+            }
+            return pos - destPos;
+        }
+
+        // Decodifica directamente el formato serializado sin materializar un TokenBuffer.
+        public byte[] decompressSerialized(byte[] tokenBytes) throws IOException {
+            int count = readTokenCount(tokenBytes);
+            long total = 0;
+            for (int i = 0, p = 4; i < count; i++, p += 5) {
+                total += (((tokenBytes[p + 2] & 0xFF) << 8) | (tokenBytes[p + 3] & 0xFF)) + 1;
+            }
+            byte[] out = new byte[checkedSize(total)];
+            int pos = 0;
+            for (int i = 0, p = 4; i < count; i++, p += 5) {
+                int length = ((tokenBytes[p + 2] & 0xFF) << 8) | (tokenBytes[p + 3] & 0xFF);
+                if (length > 0) {
+                    int offset = ((tokenBytes[p] & 0xFF) << 8) | (tokenBytes[p + 1] & 0xFF);
+                    copyMatch(out, 0, pos, offset, length);
+                    pos += length;
+                }
+                out[pos++] = tokenBytes[p + 4];
+            }
+            return out;
+        }
+
+        static void copyMatch(byte[] out, int base, int pos, int offset, int length) {
+            int src = pos - offset;
+            if (offset <= 0 || src < base) {
+                throw new IllegalArgumentException("Offset LZ77 inválido: " + offset + " en posición " + (pos - base));
+            }
+            if (offset >= length) {
+                System.arraycopy(out, src, out, pos, length);
+            } else {
+                // solapamiento: la copia debe ir byte a byte para repetir el patrón
+                for (int k = 0; k < length; k++) {
+                    out[pos + k] = out[src + k];
+                }
+            }
+        }
+
+        private static int checkedSize(long total) {
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Salida LZ77 demasiado grande: " + total + " bytes");
+            }
+            return (int) total;
+        }
+
+        public byte[] decompress(java.util.List<Token> tokens) {
+            return decompress(TokenBuffer.of(tokens));
+        }
+
+        // Formato: int cantidad + por token (short offset, short length, byte next), big-endian.
+        // Registros de 5 bytes: offset y longitud deben caber en 16 bits.
+        public byte[] serializeTokens(TokenBuffer tokens) {
+            int count = tokens.size();
+            byte[] out = new byte[4 + count * 5];
+            int p = 0;
+            out[p++] = (byte) (count >>> 24);
+            out[p++] = (byte) (count >>> 16);
+            out[p++] = (byte) (count >>> 8);
+            out[p++] = (byte) count;
+            for (int i = 0; i < count; i++) {
+                int offset = tokens.offset(i);
+                int length = tokens.length(i);
+                if (offset > 0xFFFF) {
+                    throw new IllegalArgumentException("Offset " + offset
+                            + " no representable en registros de 5 bytes; use DeflateTokenCoder");
+                }
+                out[p++] = (byte) (offset >>> 8);
+                out[p++] = (byte) offset;
+                out[p++] = (byte) (length >>> 8);
+                out[p++] = (byte) length;
+                out[p++] = tokens.next(i);
+            }
+            return out;
+        }
+
+        public byte[] serializeTokens(java.util.List<Token> tokens) {
+            return serializeTokens(TokenBuffer.of(tokens));
+        }
+
+        public TokenBuffer deserializeTokens(byte[] data) throws IOException {
+            int count = readTokenCount(data);
+            TokenBuffer tokens = new TokenBuffer(count);
+            int p = 4;
+            for (int i = 0; i < count; i++) {
+                int offset = ((data[p] & 0xFF) << 8) | (data[p + 1] & 0xFF);
+                int length = ((data[p + 2] & 0xFF) << 8) | (data[p + 3] & 0xFF);
+                tokens.add(offset, length, data[p + 4]);
+                p += 5;
+            }
+            return tokens;
+        }
+
+        private static int readTokenCount(byte[] data) throws IOException {
+            if (data.length < 4) {
+                throw new EOFException("Flujo de tokens truncado");
+            }
+            int count = ((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16)
+                    | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+            if (count < 0 || (long) count * 5 > data.length - 4) {
+                throw new EOFException("Flujo de tokens truncado");
+            }
+            return count;
+        }
+    }
+
+    // ========================================================================
+    // HUFFMAN
+    // ========================================================================
+
+    public static class HuffmanCompressor {
+
+        private static class Node implements Comparable<Node> {
+            int value;
+            int freq;
+            Node left;
+            Node right;
+
+            Node(int value, int freq) {
+                this.value = value;
+                this.freq = freq;
+            }
+
+            Node(Node left, Node right) {
+                this.value = 0;
+                this.freq = left.freq + right.freq;
+                this.left = left;
+                this.right = right;
+            }
+
+            boolean isLeaf() {
+                return left == null && right == null;
+            }
+
+            @Override
+            public int compareTo(Node o) {
+                return Integer.compare(this.freq, o.freq);
+            }
+        }
+
+        // Formato legado: int longitud + int símbolos + (byte valor, int frecuencia)*.
+        // Como la longitud es positiva, su primer byte nunca tiene el bit alto activo;
+        // los formatos nuevos empiezan con un byte de versión con ese bit activo.
+        public static final int FORMAT_CANONICAL = 0x81;
+
+        public static final int MAX_CODE_LENGTH = 15;
+        // Con menos símbolos que este umbral se guardan pares (símbolo, longitud);
+        // a partir de él, una tabla de 256 nibbles.
+        private static final int SPARSE_LIMIT = 64;
+
+        public byte[] compress(byte[] data) throws IOException {
+            if (data.length == 0) return data;
+
+            int[] freq = new int[256];
+            for (byte b : data) {
+                freq[b & 0xFF]++;
+            }
+
+            int[] lengths = codeLengths(freq);
+            int[] codes = canonicalCodes(lengths);
+
+            int symbols = 0;
+            long payloadBits = 0;
+            for (int i = 0; i < 256; i++) {
+                if (lengths[i] > 0) {
+                    symbols++;
+                    payloadBits += (long) freq[i] * lengths[i];
+                }
+            }
+            int headerSize = 1 + 4 + 1 + (symbols < SPARSE_LIMIT ? 2 * symbols : 128);
+            long totalSize = headerSize + (payloadBits + 7) / 8;
+            if (totalSize > Integer.MAX_VALUE - 8) {
+                throw new IOException("Salida Huffman demasiado grande: " + totalSize + " bytes");
+            }
+
+            byte[] out = new byte[(int) totalSize];
+            int p = 0;
+            out[p++] = (byte) FORMAT_CANONICAL;
+            p = writeInt(out, p, data.length);
+            out[p++] = (byte) (symbols - 1);
+            if (symbols < SPARSE_LIMIT) {
+                for (int i = 0; i < 256; i++) {
+                    if (lengths[i] > 0) {
+                        out[p++] = (byte) i;
+                        out[p++] = (byte) lengths[i];
+                    }
+                }
+            } else {
+                for (int i = 0; i < 256; i += 2) {
+                    out[p++] = (byte) ((lengths[i] << 4) | lengths[i + 1]);
+                }
+            }
+
+            // datos: acumulador de 64 bits, se vuelcan bytes completos
+            long acc = 0;
+            int accBits = 0;
+            for (byte b : data) {
+                int sym = b & 0xFF;
+                acc = (acc << lengths[sym]) | codes[sym];
+                accBits += lengths[sym];
+                if (accBits >= 48) {
+                    while (accBits >= 8) {
+                        accBits -= 8;
+                        out[p++] = (byte) (acc >>> accBits);
+                    }
+                }
+            }
+            while (accBits >= 8) {
+                accBits -= 8;
+                out[p++] = (byte) (acc >>> accBits);
+            }
+            if (accBits > 0) {
+                out[p++] = (byte) (acc << (8 - accBits));
+            }
+            return out;
+        }
+
+        // Longitudes de código limitadas a MAX_CODE_LENGTH para un alfabeto de
+        // freq.length símbolos. Si el árbol excede el límite se aplanan las
+        // frecuencias y se reconstruye.
+        static int[] codeLengths(int[] freq) {
+            int[] f = freq.clone();
+            int used = 0;
+            int only = 0;
+            for (int i = 0; i < f.length; i++) {
+                if (f[i] > 0) {
+                    used++;
+                    only = i;
+                }
+            }
+            int[] lengths = new int[f.length];
+            if (used == 0) {
+                return lengths;
+            }
+            if (used == 1) {
+                // un solo símbolo: se completa el código con un segundo símbolo de longitud 1
+                lengths[only] = 1;
+                lengths[only == 0 ? 1 : 0] = 1;
+                return lengths;
+            }
+            while (true) {
+                Arrays.fill(lengths, 0);
+                int max = assignDepths(buildTree(f), 0, lengths);
+                if (max <= MAX_CODE_LENGTH) {
+                    return lengths;
+                }
+                for (int i = 0; i < f.length; i++) {
+                    if (f[i] > 0) {
+                        f[i] = (f[i] >>> 1) | 1;
+                    }
+                }
+            }
+        }
+
+        private static int assignDepths(Node node, int depth, int[] lengths) {
+            if (node.isLeaf()) {
+                lengths[node.value] = depth;
+                return depth;
+            }
+            return Math.max(assignDepths(node.left, depth + 1, lengths),
+                    assignDepths(node.right, depth + 1, lengths));
+        }
+
+        // Códigos canónicos: por longitud creciente y, a igual longitud, por símbolo.
+        static int[] canonicalCodes(int[] lengths) {
+            int[] blCount = new int[MAX_CODE_LENGTH + 1];
+            for (int len : lengths) {
+                if (len > 0) blCount[len]++;
+            }
+            int[] nextCode = new int[MAX_CODE_LENGTH + 2];
+            int code = 0;
+            for (int len = 1; len <= MAX_CODE_LENGTH; len++) {
+                code = (code + blCount[len - 1]) << 1;
+                nextCode[len] = code;
+            }
+            int[] codes = new int[lengths.length];
+            for (int i = 0; i < lengths.length; i++) {
+                if (lengths[i] > 0) {
+                    codes[i] = nextCode[lengths[i]]++;
+                }
+            }
+            return codes;
+        }
+
+        private static int writeInt(byte[] b, int p, int v) {
+            b[p] = (byte) (v >>> 24);
+            b[p + 1] = (byte) (v >>> 16);
+            b[p + 2] = (byte) (v >>> 8);
+            b[p + 3] = (byte) v;
+            return p + 4;
+        }
+
+        // El árbol se reconstruye igual en compresión y descompresión: mismo orden de inserción.
+        private static Node buildTree(int[] freq) {
+            PriorityQueue<Node> pq = new PriorityQueue<>();
+            for (int i = 0; i < freq.length; i++) {
+                if (freq[i] > 0) {
+                    pq.add(new Node(i, freq[i]));
+                }
+            }
+
+            if (pq.size() == 1) {
+                // caso especial: solo un símbolo
+                pq.add(new Node(0, 0));
+            }
+
+            while (pq.size() > 1) {
+                Node a = pq.poll();
+                Node b = pq.poll();
+                pq.add(new Node(a, b));
+            }
+
+            return pq.poll();
+        }
+
+        public byte[] decompress(byte[] compressed) throws IOException {
+            if (compressed.length == 0) return compressed;
+
+            int version = compressed[0] & 0xFF;
+            if (version == FORMAT_CANONICAL) {
+                return decompressCanonical(compressed);
+            }
+            if ((version & 0x80) != 0) {
+                throw new IOException("Versión de formato Huffman no soportada: " + version);
+            }
+            return decompressLegacy(compressed);
+        }
+
+        private byte[] decompressCanonical(byte[] compressed) throws IOException {
+            if (compressed.length < 6) {
+                throw new EOFException("Encabezado Huffman truncado");
+            }
+            int originalLength = readInt(compressed, 1);
+            int symbols = (compressed[5] & 0xFF) + 1;
+            int p = 6;
+            int[] lengths = new int[256];
+            if (symbols < SPARSE_LIMIT) {
+                if (compressed.length < p + 2 * symbols) {
+                    throw new EOFException("Encabezado Huffman truncado");
+                }
+                for (int i = 0; i < symbols; i++) {
+                    lengths[compressed[p] & 0xFF] = compressed[p + 1];
+                    p += 2;
+                }
+            } else {
+                if (compressed.length < p + 128) {
+                    throw new EOFException("Encabezado Huffman truncado");
+                }
+                for (int i = 0; i < 256; i += 2) {
+                    lengths[i] = (compressed[p] >>> 4) & 0xF;
+                    lengths[i + 1] = compressed[p] & 0xF;
+                    p++;
+                }
+            }
+            if (originalLength < 0 || !isCompleteCode(lengths)) {
+                throw new IOException("Encabezado Huffman inválido");
+            }
+
+            DecodeTable table = DecodeTable.fromLengths(lengths, canonicalCodes(lengths));
+            byte[] out = new byte[originalLength];
+            table.decode(compressed, p, out);
+            return out;
+        }
+
+        // Desigualdad de Kraft con igualdad: el código es prefijo y completo.
+        static boolean isCompleteCode(int[] lengths) {
+            long kraft = 0;
+            for (int len : lengths) {
+                if (len < 0 || len > MAX_CODE_LENGTH) return false;
+                if (len > 0) kraft += 1L << (MAX_CODE_LENGTH - len);
+            }
+            return kraft == 1L << MAX_CODE_LENGTH;
+        }
+
+        private byte[] decompressLegacy(byte[] compressed) throws IOException {
+            if (compressed.length < 8) {
+                throw new EOFException("Encabezado Huffman truncado");
+            }
+            int originalLength = readInt(compressed, 0);
+            int symbols = readInt(compressed, 4);
+            if (originalLength < 0 || symbols < 1 || symbols > 256
+                    || compressed.length < 8 + 5 * symbols) {
+                throw new IOException("Encabezado Huffman inválido");
+            }
+
+            int[] freq = new int[256];
+            int p = 8;
+            for (int i = 0; i < symbols; i++) {
+                int val = compressed[p] & 0xFF;
+                freq[val] = readInt(compressed, p + 1);
+                p += 5;
+            }
+
+            DecodeTable table = DecodeTable.fromTree(buildTree(freq));
+            byte[] out = new byte[originalLength];
+            table.decode(compressed, p, out);
+            return out;
+        }
+
+        private static int readInt(byte[] b, int p) {
+            return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16)
+                    | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+        }
+
+        // Decodificador por tablas multinivel: una tabla primaria de TABLE_BITS bits
+        // y subtablas para los códigos más largos. Cada entrada es:
+        //   hoja:     (bits consumidos << 16) | símbolo
+        //   subtabla: 0x80000000 | (bits de la subtabla << 24) | inicio
+        static final class DecodeTable {
+            private static final int TABLE_BITS = 11;
+            private static final int SUBTABLE_FLAG = 0x80000000;
+
+            private final int rootBits;
+            private final int maxLen;
+            private int[] entries = new int[1 << TABLE_BITS];
+            private int used;
+
+            // Hojas ordenadas por código alineado a la izquierda
+            private final int[] symbols;
+            private final long[] codes;
+            private final int[] lengths;
+
+            private DecodeTable(int[] symbols, long[] codes, int[] lengths, int count) {
+                this.symbols = symbols;
+                this.codes = codes;
+                this.lengths = lengths;
+                sortByCode(count);
+                int longest = 0;
+                for (int i = 0; i < count; i++) {
+                    longest = Math.max(longest, lengths[i]);
+                }
+                this.maxLen = longest;
+                int root = build(0, count, 0);
+                this.rootBits = (root >>> 24) & 0xF;
+                this.entries = Arrays.copyOf(entries, used);
+            }
+
+            static DecodeTable fromLengths(int[] lengths, int[] canonical) {
+                int[] symbols = new int[lengths.length];
+                long[] codes = new long[lengths.length];
+                int[] lens = new int[lengths.length];
+                int count = 0;
+                for (int i = 0; i < lengths.length; i++) {
+                    if (lengths[i] > 0) {
+                        symbols[count] = i;
+                        codes[count] = canonical[i];
+                        lens[count] = lengths[i];
+                        count++;
+                    }
+                }
+                return new DecodeTable(symbols, codes, lens, count);
+            }
+
+            static DecodeTable fromTree(Node root) {
+                int[] symbols = new int[512];
+                long[] codes = new long[512];
+                int[] lengths = new int[512];
+                int count = collectLeaves(root, 0L, 0, symbols, codes, lengths, 0);
+                return new DecodeTable(symbols, codes, lengths, count);
+            }
+
+            private static int collectLeaves(Node node, long code, int len,
+                                             int[] symbols, long[] codes, int[] lengths, int count) {
+                if (node.isLeaf()) {
+                    if (len > 57) {
+                        throw new IllegalStateException("Código Huffman demasiado largo: " + len);
+                    }
+                    symbols[count] = node.value;
+                    codes[count] = code;
+                    lengths[count] = Math.max(len, 1);
+                    return count + 1;
+                }
+                count = collectLeaves(node.left, code << 1, len + 1, symbols, codes, lengths, count);
+                return collectLeaves(node.right, (code << 1) | 1, len + 1, symbols, codes, lengths, count);
+            }
+
+            private long aligned(int i) {
+                return codes[i] << (64 - lengths[i]);
+            }
+
+            private void sortByCode(int count) {
+                // pocas hojas (<= 286): inserción basta
+                for (int i = 1; i < count; i++) {
+                    int s = symbols[i];
+                    long c = codes[i];
+                    int l = lengths[i];
+                    long key = c << (64 - l);
+                    int j = i - 1;
+                    while (j >= 0 && Long.compareUnsigned(aligned(j), key) > 0) {
+                        symbols[j + 1] = symbols[j];
+                        codes[j + 1] = codes[j];
+                        lengths[j + 1] = lengths[j];
+                        j--;
+                    }
+                    symbols[j + 1] = s;
+                    codes[j + 1] = c;
+                    lengths[j + 1] = l;
+                }
+            }
+
+            // Construye la tabla para las hojas [from, to) que comparten los primeros
+            // 'depth' bits y devuelve la entrada que apunta a ella.
+            private int build(int from, int to, int depth) {
+                int maxLen = 0;
+                for (int i = from; i < to; i++) {
+                    maxLen = Math.max(maxLen, lengths[i]);
+                }
+                int bits = Math.min(TABLE_BITS, maxLen - depth);
+                int start = allocate(1 << bits);
+
+                int i = from;
+                while (i < to) {
+                    int rest = lengths[i] - depth;
+                    if (rest <= bits) {
+                        int idx = (int) (codes[i] & ((1L << rest) - 1)) << (bits - rest);
+                        int entry = (rest << 16) | symbols[i];
+                        Arrays.fill(entries, start + idx, start + idx + (1 << (bits - rest)), entry);
+                        i++;
+                    } else {
+                        int idx = prefix(i, depth, bits);
+                        int j = i + 1;
+                        while (j < to && lengths[j] - depth > bits && prefix(j, depth, bits) == idx) {
+                            j++;
+                        }
+                        // build() puede reubicar 'entries': primero se obtiene la entrada
+                        int sub = build(i, j, depth + bits);
+                        entries[start + idx] = sub;
+                        i = j;
+                    }
+                }
+                return SUBTABLE_FLAG | (bits << 24) | start;
+            }
+
+            private int prefix(int i, int depth, int bits) {
+                return (int) ((codes[i] >>> (lengths[i] - depth - bits)) & ((1L << bits) - 1));
+            }
+
+            private int allocate(int size) {
+                if (used + size > entries.length) {
+                    entries = Arrays.copyOf(entries, Math.max(entries.length * 2, used + size));
+                }
+                int start = used;
+                used += size;
+                return start;
+            }
+
+            // Lee el flujo de bits (MSB primero) desde src[pos] con un buffer de 64 bits.
+            void decode(byte[] src, int pos, byte[] out) throws EOFException {
+                int[] table = entries;
+                int rootBits = this.rootBits;
+                int rootMask = (1 << rootBits) - 1;
+                int maxLen = this.maxLen;
+                int end = src.length;
+                long bitBuf = 0;
+                int bitCount = 0;
+                int outPos = 0;
+                int outLen = out.length;
+
+                while (outPos < outLen) {
+                    while (bitCount <= 56 && pos < end) {
+                        bitBuf = (bitBuf << 8) | (src[pos++] & 0xFF);
+                        bitCount += 8;
+                    }
+
+                    // camino rápido: quedan bits para el código más largo, sin comprobaciones
+                    while (bitCount >= maxLen && outPos < outLen) {
+                        int bits = rootBits;
+                        int entry = table[(int) (bitBuf >>> (bitCount - rootBits)) & rootMask];
+                        while (entry < 0) {
+                            bitCount -= bits;
+                            bits = (entry >>> 24) & 0xF;
+                            entry = table[(entry & 0xFFFFFF)
+                                    + ((int) (bitBuf >>> (bitCount - bits)) & ((1 << bits) - 1))];
+                        }
+                        bitCount -= (entry >>> 16) & 0xF;
+                        out[outPos++] = (byte) entry;
+                    }
+
+                    if (outPos < outLen && pos >= end) {
+                        // cola del flujo: puede faltar relleno, se valida cada paso
+                        int bits = rootBits;
+                        int entry = table[peek(bitBuf, bitCount, bits)];
+                        while (entry < 0) {
+                            bitCount -= bits;
+                            if (bitCount < 0) {
+                                throw new EOFException("Datos Huffman truncados");
+                            }
+                            bits = (entry >>> 24) & 0xF;
+                            entry = table[(entry & 0xFFFFFF) + peek(bitBuf, bitCount, bits)];
+                        }
+                        bitCount -= (entry >>> 16) & 0xF;
+                        if (bitCount < 0) {
+                            throw new EOFException("Datos Huffman truncados");
+                        }
+                        out[outPos++] = (byte) entry;
+                    }
+                }
+            }
+
+            private static int peek(long bitBuf, int bitCount, int bits) {
+                int mask = (1 << bits) - 1;
+                if (bitCount >= bits) {
+                    return (int) (bitBuf >>> (bitCount - bits)) & mask;
+                }
+                // al final del flujo se completa con ceros
+                return (int) (bitBuf << (bits - bitCount)) & mask;
+            }
+
+            // Decodifica un símbolo de cualquier alfabeto desde un BitReader.
+            int decodeSymbol(BitReader in) throws EOFException {
+                in.refill();
+                int bits = rootBits;
+                int entry = entries[in.peek(bits)];
+                while (entry < 0) {
+                    in.consume(bits);
+                    bits = (entry >>> 24) & 0xF;
+                    entry = entries[(entry & 0xFFFFFF) + in.peek(bits)];
+                }
+                in.consume((entry >>> 16) & 0xF);
+                return entry & 0xFFFF;
+            }
+        }
+
+        // Escritor de bits MSB primero sobre un arreglo que crece a demanda.
+        static final class BitWriter {
+            private byte[] buf;
+            private int pos;
+            private long acc;
+            private int accBits;
+
+            BitWriter(int initialCapacity) {
+                buf = new byte[Math.max(16, initialCapacity)];
+            }
+
+            // n <= 32
+            void write(int value, int n) {
+                acc = (acc << n) | (value & ((1L << n) - 1));
+                accBits += n;
+                if (accBits >= 32) {
+                    if (pos + 8 > buf.length) {
+                        buf = Arrays.copyOf(buf, buf.length + (buf.length >> 1) + 8);
+                    }
+                    while (accBits >= 8) {
+                        accBits -= 8;
+                        buf[pos++] = (byte) (acc >>> accBits);
+                    }
+                }
+            }
+
+            void writeByte(int value) {
+                write(value & 0xFF, 8);
+            }
+
+            // Completa el último byte con ceros y devuelve el contenido.
+            byte[] finish() {
+                if (pos + 8 > buf.length) {
+                    buf = Arrays.copyOf(buf, pos + 8);
+                }
+                while (accBits >= 8) {
+                    accBits -= 8;
+                    buf[pos++] = (byte) (acc >>> accBits);
+                }
+                if (accBits > 0) {
+                    buf[pos++] = (byte) (acc << (8 - accBits));
+                    accBits = 0;
+                }
+                return Arrays.copyOf(buf, pos);
+            }
+        }
+
+        // Lector de bits MSB primero con buffer de 64 bits; al final del arreglo
+        // se leen ceros y consume() detecta el desborde.
+        static final class BitReader {
+            private final byte[] src;
+            private final int end;
+            private int pos;
+            private long bitBuf;
+            private int bitCount;
+
+            BitReader(byte[] src, int pos, int end) {
+                this.src = src;
+                this.pos = pos;
+                this.end = end;
+            }
+
+            void refill() {
+                while (bitCount <= 56 && pos < end) {
+                    bitBuf = (bitBuf << 8) | (src[pos++] & 0xFF);
+                    bitCount += 8;
+                }
+            }
+
+            int peek(int bits) {
+                return DecodeTable.peek(bitBuf, bitCount, bits);
+            }
+
+            void consume(int bits) throws EOFException {
+                bitCount -= bits;
+                if (bitCount < 0) {
+                    throw new EOFException("Flujo de bits truncado");
+                }
+            }
+
+            // n <= 24
+            int read(int n) throws EOFException {
+                if (n == 0) return 0;
+                if (bitCount < n) refill();
+                int v = peek(n);
+                consume(n);
+                return v;
+            }
+
+            int readByte() throws EOFException {
+                return read(8);
+            }
+        }
+    }
+
+    // ========================================================================
+    // CODIFICACIÓN DE TOKENS (ESTILO DEFLATE)
+    // ========================================================================
+
+    // Reemplaza los registros fijos de 5 bytes por códigos de longitud variable:
+    // un alfabeto de literales/longitudes (0-255 literales, 256 fin de bloque,
+    // 257-285 longitudes) y otro de distancias, cada uno con su propia tabla
+    // Huffman canónica. Longitudes y distancias usan código base + bits extra
+    // como en DEFLATE; las distancias siguen el mismo esquema más allá de 32 KB.
+    // Carga (flujo de bits MSB primero):
+    //   5 bits símbolos lit/long - 257, 6 bits símbolos de distancia,
+    //   las dos tablas de longitudes de código, símbolos y END_OF_BLOCK.
+    // Cada tabla va densa (4 bits por símbolo) o, si ocupa menos, dispersa
+    // (cantidad + pares símbolo/longitud), igual que en HuffmanCompressor.
+    public static class DeflateTokenCoder {
+
+        public static final int END_OF_BLOCK = 256;
+        public static final int MIN_MATCH = 3;
+        public static final int MAX_MATCH = 258;
+        static final int LITLEN_SYMBOLS = 286;
+        static final int DIST_SYMBOLS = 44;
+
+        private static final int[] LENGTH_BASE = {
+                3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+                35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+        private static final int[] LENGTH_EXTRA = {
+                0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+                3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+        private static final int[] LENGTH_CODE = new int[MAX_MATCH + 1];
+        private static final int[] DIST_BASE = new int[DIST_SYMBOLS];
+        private static final int[] DIST_EXTRA = new int[DIST_SYMBOLS];
+
+        static {
+            // 258 queda en el último código (sin bits extra), como en DEFLATE
+            for (int c = 0; c < LENGTH_BASE.length; c++) {
+                int top = Math.min(MAX_MATCH, LENGTH_BASE[c] + (1 << LENGTH_EXTRA[c]) - 1);
+                for (int len = LENGTH_BASE[c]; len <= top; len++) {
+                    LENGTH_CODE[len] = c;
+                }
+            }
+            for (int c = 0; c < DIST_SYMBOLS; c++) {
+                DIST_EXTRA[c] = c < 4 ? 0 : (c >> 1) - 1;
+                DIST_BASE[c] = c < 4 ? c + 1 : ((2 + (c & 1)) << DIST_EXTRA[c]) + 1;
+            }
+        }
+
+        // Distancia máxima representable (4 MB con DIST_SYMBOLS = 44)
+        public static final int MAX_DISTANCE =
+                DIST_BASE[DIST_SYMBOLS - 1] + (1 << DIST_EXTRA[DIST_SYMBOLS - 1]) - 1;
+
+        static int distanceCode(int distance) {
+            int v = distance - 1;
+            if (v < 4) return v;
+            int high = 31 - Integer.numberOfLeadingZeros(v);
+            return 2 * high + ((v >>> (high - 1)) & 1);
+        }
+
+        public byte[] encode(LZ77Compressor.TokenBuffer tokens) {
+            int count = tokens.size();
+            int[] litFreq = new int[LITLEN_SYMBOLS];
+            int[] distFreq = new int[DIST_SYMBOLS];
+            countSymbols(tokens, litFreq, distFreq);
+
+            int[] litLengths = HuffmanCompressor.codeLengths(litFreq);
+            int[] distLengths = HuffmanCompressor.codeLengths(distFreq);
+            int[] litCodes = HuffmanCompressor.canonicalCodes(litLengths);
+            int[] distCodes = HuffmanCompressor.canonicalCodes(distLengths);
+            int numLit = LITLEN_SYMBOLS;
+            while (numLit > 257 && litLengths[numLit - 1] == 0) numLit--;
+            int numDist = DIST_SYMBOLS;
+            while (numDist > 0 && distLengths[numDist - 1] == 0) numDist--;
+
+            HuffmanCompressor.BitWriter out = new HuffmanCompressor.BitWriter(count * 2 + 256);
+            out.write(numLit - 257, 5);
+            out.write(numDist, 6);
+            writeLengths(out, litLengths, numLit, 9);
+            writeLengths(out, distLengths, numDist, 6);
+
+            for (int t = 0; t < count; t++) {
+                int length = tokens.length(t);
+                if (length > 0) {
+                    int lc = LENGTH_CODE[length];
+                    out.write(litCodes[257 + lc], litLengths[257 + lc]);
+                    out.write(length - LENGTH_BASE[lc], LENGTH_EXTRA[lc]);
+                    int offset = tokens.offset(t);
+                    int dc = distanceCode(offset);
+                    out.write(distCodes[dc], distLengths[dc]);
+                    out.write(offset - DIST_BASE[dc], DIST_EXTRA[dc]);
+                }
+                int lit = tokens.next(t) & 0xFF;
+                out.write(litCodes[lit], litLengths[lit]);
+            }
+            out.write(litCodes[END_OF_BLOCK], litLengths[END_OF_BLOCK]);
+            return out.finish();
+        }
+
+        private static void countSymbols(LZ77Compressor.TokenBuffer tokens, int[] litFreq, int[] distFreq) {
+            int count = tokens.size();
+            for (int t = 0; t < count; t++) {
+                int length = tokens.length(t);
+                if (length > 0) {
+                    int offset = tokens.offset(t);
+                    if (length < MIN_MATCH || length > MAX_MATCH || offset < 1 || offset > MAX_DISTANCE) {
+                        throw new IllegalArgumentException("Token fuera de rango: offset " + offset
+                                + ", longitud " + length);
+                    }
+                    litFreq[257 + LENGTH_CODE[length]]++;
+                    distFreq[distanceCode(offset)]++;
+                }
+                litFreq[tokens.next(t) & 0xFF]++;
+            }
+            litFreq[END_OF_BLOCK]++;
+        }
+
+        // Costo en bits de cada símbolo según las tablas que produciría un análisis
+        // previo; todos los símbolos reciben frecuencia >= 1 para tener precio.
+        static final class Prices {
+            private final int[] litLen;
+            private final int[] dist;
+
+            Prices(LZ77Compressor.TokenBuffer tokens) {
+                int[] litFreq = new int[LITLEN_SYMBOLS];
+                int[] distFreq = new int[DIST_SYMBOLS];
+                countSymbols(tokens, litFreq, distFreq);
+                for (int i = 0; i < LITLEN_SYMBOLS; i++) litFreq[i]++;
+                for (int i = 0; i < DIST_SYMBOLS; i++) distFreq[i]++;
+                litLen = HuffmanCompressor.codeLengths(litFreq);
+                dist = HuffmanCompressor.codeLengths(distFreq);
+            }
+
+            int literal(int b) {
+                return litLen[b];
+            }
+
+            int length(int length) {
+                int code = LENGTH_CODE[length];
+                return litLen[257 + code] + LENGTH_EXTRA[code];
+            }
+
+            int distance(int distance) {
+                int code = distanceCode(distance);
+                return dist[code] + DIST_EXTRA[code];
+            }
+        }
+
+        // 1 bit de modo; denso: n longitudes de 4 bits; disperso: cantidad y pares
+        // (símbolo de symbolBits bits, longitud de 4 bits).
+        private static void writeLengths(HuffmanCompressor.BitWriter out, int[] lengths, int n, int symbolBits) {
+            int used = 0;
+            for (int i = 0; i < n; i++) {
+                if (lengths[i] > 0) used++;
+            }
+            if (symbolBits + used * (symbolBits + 4) < n * 4) {
+                out.write(1, 1);
+                out.write(used, symbolBits);
+                for (int i = 0; i < n; i++) {
+                    if (lengths[i] > 0) {
+                        out.write(i, symbolBits);
+                        out.write(lengths[i], 4);
+                    }
+                }
+            } else {
+                out.write(0, 1);
+                for (int i = 0; i < n; i++) {
+                    out.write(lengths[i], 4);
+                }
+            }
+        }
+
+        private static void readLengths(HuffmanCompressor.BitReader in, int[] lengths, int n, int symbolBits)
+                throws IOException {
+            if (in.read(1) == 0) {
+                for (int i = 0; i < n; i++) {
+                    lengths[i] = in.read(4);
+                }
+                return;
+            }
+            int used = in.read(symbolBits);
+            for (int k = 0; k < used; k++) {
+                int sym = in.read(symbolBits);
+                if (sym >= n) {
+                    throw new IOException("Encabezado de tokens inválido");
+                }
+                lengths[sym] = in.read(4);
+            }
+        }
+
+        public byte[] decode(byte[] payload, int from, int rawLength) throws IOException {
+            return decode(payload, from, rawLength, MAX_DISTANCE);
+        }
+
+        // Decodifica payload[from..] directamente a los bytes originales, sin tokens
+        // intermedios; rechaza distancias mayores que maxDistance (la ventana declarada).
+        public byte[] decode(byte[] payload, int from, int rawLength, int maxDistance) throws IOException {
+            HuffmanCompressor.BitReader in = new HuffmanCompressor.BitReader(payload, from, payload.length);
+            int numLit = in.read(5) + 257;
+            int numDist = in.read(6);
+            if (numLit > LITLEN_SYMBOLS || numDist > DIST_SYMBOLS) {
+                throw new IOException("Encabezado de tokens inválido");
+            }
+            int[] litLengths = new int[LITLEN_SYMBOLS];
+            int[] distLengths = new int[DIST_SYMBOLS];
+            readLengths(in, litLengths, numLit, 9);
+            readLengths(in, distLengths, numDist, 6);
+            boolean hasDist = false;
+            for (int len : distLengths) {
+                hasDist |= len > 0;
+            }
+            if (!HuffmanCompressor.isCompleteCode(litLengths)
+                    || (hasDist && !HuffmanCompressor.isCompleteCode(distLengths))) {
+                throw new IOException("Encabezado de tokens inválido");
+            }
+            HuffmanCompressor.DecodeTable lit = HuffmanCompressor.DecodeTable.fromLengths(
+                    litLengths, HuffmanCompressor.canonicalCodes(litLengths));
+            HuffmanCompressor.DecodeTable dist = hasDist
+                    ? HuffmanCompressor.DecodeTable.fromLengths(distLengths, HuffmanCompressor.canonicalCodes(distLengths))
+                    : null;
+
+            byte[] out = new byte[rawLength];
+            int pos = 0;
+            while (true) {
+                int sym = lit.decodeSymbol(in);
+                if (sym < END_OF_BLOCK) {
+                    if (pos == rawLength) {
+                        throw new IOException("El bloque excede su tamaño declarado: " + rawLength);
+                    }
+                    out[pos++] = (byte) sym;
+                } else if (sym == END_OF_BLOCK) {
+                    break;
+                } else {
+                    int lc = sym - 257;
+                    if (lc >= LENGTH_BASE.length || dist == null) {
+                        throw new IOException("Símbolo de longitud inválido: " + sym);
+                    }
+                    int length = LENGTH_BASE[lc] + in.read(LENGTH_EXTRA[lc]);
+                    int dc = dist.decodeSymbol(in);
+                    int distance = DIST_BASE[dc] + in.read(DIST_EXTRA[dc]);
+                    if (distance > pos || distance > maxDistance || length > rawLength - pos) {
+                        throw new IOException("Referencia inválida: distancia " + distance
+                                + ", longitud " + length + " en posición " + pos);
+                    }
+                    LZ77Compressor.copyMatch(out, 0, pos, distance, length);
+                    pos += length;
+                }
+            }
+            if (pos != rawLength) {
+                throw new IOException("Tamaño de bloque inesperado: " + pos + " != " + rawLength);
+            }
+            return out;
+        }
+    }
+
+    // ========================================================================
+    // COMPRESIÓN POR BLOQUES (STREAMING)
+    // ========================================================================
+
+    // Formato: byte de versión + int tamaño de bloque (+ parámetros LZ77 en v3),
+    // luego tramas (int tamaño original, int tamaño comprimido, datos) y un int 0
+    // final. Cada trama tiene sus propias tablas y se decodifica sola, así la
+    // memoria depende del tamaño de bloque y no del archivo.
+    //   FORMAT_BLOCKS (v1):    datos = Huffman(tokens LZ77 de 5 bytes)
+    //   FORMAT_BLOCKS_V2 (v2): datos = byte de códec + carga del códec
+    //   FORMAT_BLOCKS_V3 (v3): como v2, con int ventana y short longitud máxima
+    //                          en el encabezado
+    //   FORMAT_CONTAINER (v4): contenedor autodescriptivo, ver CONTAINER_HEADER_SIZE
+    public static class BlockCompressor {
+
+        public static final int FORMAT_BLOCKS = 0xC1;
+        public static final int FORMAT_BLOCKS_V2 = 0xC2;
+        public static final int FORMAT_BLOCKS_V3 = 0xC3;
+        public static final int FORMAT_CONTAINER = 0xC4;
+
+        // Encabezado v4 (30 bytes): 0xC4 'E' 'D' '2', versión del contenedor,
+        // flags, máscara de códecs que puede usar el flujo (bit = id de códec),
+        // long tamaño original (-1 si no se conoce), int tamaño de bloque, int
+        // ventana, short longitud máxima e int CRC32C de lo anterior. Cada trama
+        // agrega un int CRC32C de (tamaño original, tamaño comprimido, datos), así
+        // una trama dañada se detecta antes de decodificarla.
+        // Con FLAG_INDEX, tras el int 0 final va el índice de bloques: por trama
+        // (long posición en el original, long posición de la trama desde el inicio
+        // del contenedor), y al cierre int "ED2I", int tramas, long tamaño original
+        // e int CRC32C del índice. Como termina en tamaño fijo, se ubica leyendo
+        // desde el final sin recorrer las tramas.
+        public static final int CONTAINER_VERSION = 1;
+        public static final int CONTAINER_HEADER_SIZE = 30;
+        private static final byte[] CONTAINER_MAGIC = {(byte) FORMAT_CONTAINER, 'E', 'D', '2'};
+        private static final int FLAG_CRC32C = 0x01;
+        private static final int FLAG_INDEX = 0x02;
+        private static final int INDEX_MAGIC = 0x45443249; // "ED2I"
+        private static final int INDEX_ENTRY_SIZE = 16;
+        private static final int INDEX_TRAILER_SIZE = 20;
+
+        // Códecs de trama en v2/v3
+        public static final int CODEC_STORED = 0x00;
+        public static final int CODEC_TOKENS_HUFFMAN = 0x01;
+        public static final int CODEC_DEFLATE = 0x02;
+        public static final int CODEC_HUFFMAN = 0x03;
+
+        // Sondeo de compresibilidad: LZ77 si las repeticiones encontradas cubren
+        // al menos 1/PROBE_MIN_REPEAT del bloque; Huffman solo si la entropía de
+        // orden 0 de la muestra queda bajo PROBE_MAX_ENTROPY bits/byte.
+        private static final int PROBE_MIN_REPEAT = 32;
+        private static final double PROBE_MAX_ENTROPY = 7.8;
+        private static final int PROBE_HASH_BITS = 14;
+        // en datos de baja entropía abundan coincidencias cortas al azar, pero
+        // también son lo único que repite un texto como la salida de seq: si el
+        // umbral solo se alcanza con coincidencias de menos de PROBE_LONG_MATCH
+        // bytes se prueban los dos códecs y se queda el más chico
+        private static final int PROBE_LONG_MATCH = 8;
+        private static final int PROBE_MAX_STEP = 8;
+        static final int REPEATS_NONE = 0;
+        static final int REPEATS_SHORT = 1;
+        static final int REPEATS_LONG = 2;
+
+        public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+        public static final int MIN_BLOCK_SIZE = 64 * 1024;
+        public static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+        private final LZ77Compressor lz77;
+        private final HuffmanCompressor huffman;
+        private final DeflateTokenCoder tokenCoder = new DeflateTokenCoder();
+        private final int blockSize;
+        // Sin executor los bloques se procesan en el hilo que llama.
+        private final java.util.concurrent.ExecutorService executor;
+        private final int maxInFlight;
+        // null: sin cancelación ni pausa
+        private final JobControl control;
+        // null: sin medir
+        private final Metrics metrics;
+
+        public BlockCompressor(LZ77Compressor lz77, HuffmanCompressor huffman, int blockSize) {
+            this(lz77, huffman, blockSize, null, 1);
+        }
+
+        // maxInFlight acota los bloques en curso (y con ello la memoria): lectura,
+        // compresión y escritura avanzan a la vez pero la salida respeta el orden.
+        public BlockCompressor(LZ77Compressor lz77, HuffmanCompressor huffman, int blockSize,
+                               java.util.concurrent.ExecutorService executor, int maxInFlight) {
+            this(lz77, huffman, blockSize, executor, maxInFlight, null, null);
+        }
+
+        private BlockCompressor(LZ77Compressor lz77, HuffmanCompressor huffman, int blockSize,
+                                java.util.concurrent.ExecutorService executor, int maxInFlight,
+                                JobControl control, Metrics metrics) {
+            if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+                throw new IllegalArgumentException("Tamaño de bloque fuera de rango: " + blockSize);
+            }
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight debe ser >= 1");
+            }
+            this.lz77 = lz77;
+            this.huffman = huffman;
+            this.blockSize = blockSize;
+            this.executor = executor;
+            this.maxInFlight = executor == null ? 1 : maxInFlight;
+            this.control = control;
+            this.metrics = metrics;
+        }
+
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        // Misma configuración y executor con otro compresor LZ77 (otro nivel).
+        public BlockCompressor withCompressor(LZ77Compressor compressor) {
+            return new BlockCompressor(control == null ? compressor : compressor.withControl(control),
+                    huffman, blockSize, executor, maxInFlight, control, metrics);
+        }
+
+        // Misma configuración sujeta a control: el hilo que lee se detiene o
+        // aborta entre bloques, los bloques todavía en cola no llegan a LZ77 ni a
+        // Huffman si el trabajo ya se canceló, y LZ77 corta dentro del bloque.
+        public BlockCompressor withControl(JobControl control) {
+            return new BlockCompressor(lz77.withControl(control), huffman, blockSize, executor, maxInFlight,
+                    control, metrics);
+        }
+
+        // Misma configuración midiendo en metrics: lectura y escritura de tramas,
+        // LZ77 y Huffman por separado al comprimir, la decodificación entera al
+        // descomprimir, y por bloque sus bytes, tokens y asignaciones.
+        public BlockCompressor withMetrics(Metrics metrics) {
+            return new BlockCompressor(lz77, huffman, blockSize, executor, maxInFlight, control, metrics);
+        }
+
+        private void checkpoint() throws InterruptedIOException {
+            if (control != null) control.checkpoint();
+        }
+
+        private long now() {
+            return metrics == null ? 0 : System.nanoTime();
+        }
+
+        private long time(Metrics.Phase phase, long start) {
+            return metrics == null ? 0 : metrics.time(phase, start);
+        }
+
+        private long allocated() {
+            return metrics == null ? -1 : Metrics.allocatedBytes();
+        }
+
+        // Códecs que este lector decodifica; un flujo que anuncie otro se rechaza
+        // al leer el encabezado.
+        private static final int SUPPORTED_CODECS = (1 << CODEC_STORED) | (1 << CODEC_TOKENS_HUFFMAN)
+                | (1 << CODEC_DEFLATE) | (1 << CODEC_HUFFMAN);
+        private static final int WRITTEN_CODECS = (1 << CODEC_STORED) | (1 << CODEC_DEFLATE) | (1 << CODEC_HUFFMAN);
+
+        public static boolean isBlockStream(int firstByte) {
+            return firstByte == FORMAT_BLOCKS || firstByte == FORMAT_BLOCKS_V2 || firstByte == FORMAT_BLOCKS_V3
+                    || firstByte == FORMAT_CONTAINER;
+        }
+
+        private static final class Frame {
+            final int rawLength;
+            final byte[] data;
+
+            Frame(int rawLength, byte[] data) {
+                this.rawLength = rawLength;
+                this.data = data;
+            }
+        }
+
+        // Devuelve la cantidad de bytes escritos en out. totalSize (o -1 si no se
+        // conoce) queda en el encabezado: si la entrada no lo cumple se aborta.
+        public long compress(InputStream in, OutputStream out, long totalSize,
+                             ProgressCallback progress) throws IOException {
+            DataOutputStream dos = new DataOutputStream(out);
+            java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(CONTAINER_HEADER_SIZE)
+                    .put(CONTAINER_MAGIC)
+                    .put((byte) CONTAINER_VERSION)
+                    .put((byte) (FLAG_CRC32C | FLAG_INDEX))
+                    .putShort((short) WRITTEN_CODECS)
+                    .putLong(totalSize < 0 ? -1 : totalSize)
+                    .putInt(blockSize)
+                    .putInt(lz77.getWindowSize())
+                    .putShort((short) lz77.getMaxMatch());
+            header.putInt(crc32c(header.array(), 0, header.position()));
+            dos.write(header.array());
+            long written = CONTAINER_HEADER_SIZE;
+
+            // cola de reordenamiento: futuros en orden de lectura
+            ArrayDeque<java.util.concurrent.Future<Frame>> pending = new ArrayDeque<>();
+            BlockIndex index = new BlockIndex();
+            long read = 0;
+            try {
+                while (true) {
+                    checkpoint();
+                    long t = now();
+                    byte[] block = in.readNBytes(blockSize);
+                    time(Metrics.Phase.READ, t);
+                    if (block.length == 0) break;
+                    pending.add(submit(() -> new Frame(block.length, compressBlock(block, block.length))));
+                    while (pending.size() >= maxInFlight) {
+                        Frame frame = await(pending.poll());
+                        index.add(read, written);
+                        written += writeFrame(dos, frame);
+                        read += frame.rawLength;
+                        report(progress, read, totalSize, "Comprimiendo bloques");
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    Frame frame = await(pending.poll());
+                    index.add(read, written);
+                    written += writeFrame(dos, frame);
+                    read += frame.rawLength;
+                    report(progress, read, totalSize, "Comprimiendo bloques");
+                }
+            } finally {
+                cancelAll(pending);
+            }
+            if (totalSize >= 0 && read != totalSize) {
+                throw new IOException("La entrada cambió durante la compresión: " + read + " != " + totalSize + " bytes");
+            }
+            dos.writeInt(0);
+            index.rawSize = read;
+            byte[] encoded = index.encode();
+            dos.write(encoded);
+            dos.flush();
+            return written + 4 + encoded.length;
+        }
+
+        private long writeFrame(DataOutputStream dos, Frame frame) throws IOException {
+            int crc = frameCrc(frame.rawLength, frame.data);
+            long t = now();
+            dos.writeInt(frame.rawLength);
+            dos.writeInt(frame.data.length);
+            dos.writeInt(crc);
+            dos.write(frame.data);
+            time(Metrics.Phase.WRITE, t);
+            return 12 + frame.data.length;
+        }
+
+        static int frameCrc(int rawLength, byte[] data) {
+            java.util.zip.CRC32C crc = new java.util.zip.CRC32C();
+            byte[] lengths = java.nio.ByteBuffer.allocate(8).putInt(rawLength).putInt(data.length).array();
+            crc.update(lengths);
+            crc.update(data);
+            return (int) crc.getValue();
+        }
+
+        static int crc32c(byte[] data, int off, int len) {
+            java.util.zip.CRC32C crc = new java.util.zip.CRC32C();
+            crc.update(data, off, len);
+            return (int) crc.getValue();
+        }
+
+        // Trama v2/v3: byte de códec + carga. Un sondeo rápido decide si vale la
+        // pena LZ77 + Huffman, solo Huffman o guardar el bloque tal cual; si el
+        // resultado no es más chico que el original también se guarda sin comprimir.
+        public byte[] compressBlock(byte[] block, int len) throws IOException {
+            if (control != null) control.throwIfCancelled();
+            long start = now();
+            long allocated = allocated();
+            byte[] payload = null;
+            LZ77Compressor.TokenBuffer tokens = null;
+            int codec = CODEC_STORED;
+            int repeats = probeRepeats(block, len);
+            if (repeats != REPEATS_NONE) {
+                try {
+                    tokens = lz77.compress(block, len, null);
+                } catch (java.util.concurrent.CancellationException e) {
+                    throw new InterruptedIOException(e.getMessage());
+                }
+                long t = time(Metrics.Phase.LZ77, start);
+                payload = tokenCoder.encode(tokens);
+                time(Metrics.Phase.HUFFMAN, t);
+                codec = CODEC_DEFLATE;
+            }
+            if (repeats == REPEATS_SHORT
+                    || (repeats == REPEATS_NONE && sampleEntropy(block, len) < PROBE_MAX_ENTROPY)) {
+                long t = now();
+                byte[] plain = huffman.compress(len == block.length ? block : Arrays.copyOf(block, len));
+                time(Metrics.Phase.HUFFMAN, t);
+                if (payload == null || plain.length < payload.length) {
+                    payload = plain;
+                    tokens = null;
+                    codec = CODEC_HUFFMAN;
+                }
+            }
+            byte[] frame = payload == null || payload.length >= len
+                    ? frame(CODEC_STORED, block, len)
+                    : frame(codec, payload, payload.length);
+            if (metrics != null) metrics.compressed(len, frame.length, start, allocated, tokens);
+            return frame;
+        }
+
+        private static byte[] frame(int codec, byte[] payload, int len) {
+            byte[] frame = new byte[len + 1];
+            frame[0] = (byte) codec;
+            System.arraycopy(payload, 0, frame, 1, len);
+            return frame;
+        }
+
+        // Busca repeticiones con una tabla hash de una entrada sobre 4 bytes; tras
+        // cada fallo seguido el paso crece (hasta PROBE_MAX_STEP), así los datos
+        // sin repeticiones se recorren rápido, y cualquier coincidencia lo vuelve
+        // a 1. Corta apenas las coincidencias largas alcanzan el umbral; si solo
+        // lo alcanzan sumando las cortas el resultado es REPEATS_SHORT.
+        static int probeRepeats(byte[] block, int len) {
+            long target = Math.max(16, len / PROBE_MIN_REPEAT);
+            int[] table = new int[1 << PROBE_HASH_BITS];
+            long matched = 0;
+            long matchedLong = 0;
+            int misses = 0;
+            int p = 0;
+            while (p + 4 <= len) {
+                int v = ((block[p] & 0xFF) << 24) | ((block[p + 1] & 0xFF) << 16)
+                        | ((block[p + 2] & 0xFF) << 8) | (block[p + 3] & 0xFF);
+                int h = (v * 0x9E3779B1) >>> (32 - PROBE_HASH_BITS);
+                int cand = table[h] - 1; // 0 = vacío
+                table[h] = p + 1;
+                if (cand >= 0 && block[cand] == block[p] && block[cand + 1] == block[p + 1]
+                        && block[cand + 2] == block[p + 2] && block[cand + 3] == block[p + 3]) {
+                    int m = 4;
+                    while (p + m < len && block[cand + m] == block[p + m]) {
+                        m++;
+                    }
+                    matched += m;
+                    if (m >= PROBE_LONG_MATCH) {
+                        matchedLong += m;
+                        if (matchedLong >= target) return REPEATS_LONG;
+                    }
+                    p += m;
+                    misses = 0;
+                } else {
+                    p += Math.min(PROBE_MAX_STEP, 1 + (misses++ >> 5));
+                }
+            }
+            return matched >= target ? REPEATS_SHORT : REPEATS_NONE;
+        }
+
+        // Entropía de orden 0 (bits/byte) sobre tramos de 64 bytes cada 512.
+        static double sampleEntropy(byte[] block, int len) {
+            int[] freq = new int[256];
+            int total = 0;
+            for (int start = 0; start < len; start += 512) {
+                int end = Math.min(len, start + 64);
+                for (int i = start; i < end; i++) {
+                    freq[block[i] & 0xFF]++;
+                }
+                total += end - start;
+            }
+            if (total == 0) return 0;
+            double bits = 0;
+            for (int f : freq) {
+                if (f > 0) {
+                    double q = f / (double) total;
+                    bits -= q * Math.log(q);
+                }
+            }
+            return bits / Math.log(2);
+        }
+
+        // Parámetros de un flujo por bloques, de cualquier versión.
+        private static final class StreamHeader {
+            int version;
+            int blockSize;
+            int window = DeflateTokenCoder.MAX_DISTANCE;
+            long originalSize = -1;
+            boolean checksums;
+            boolean indexed;
+            int length;
+
+            static StreamHeader read(DataInputStream dis) throws IOException {
+                StreamHeader h = new StreamHeader();
+                h.version = dis.readUnsignedByte();
+                if (!isBlockStream(h.version)) {
+                    throw new IOException("No es un flujo por bloques: " + h.version);
+                }
+                if (h.version == FORMAT_CONTAINER) {
+                    byte[] header = new byte[CONTAINER_HEADER_SIZE];
+                    header[0] = (byte) FORMAT_CONTAINER;
+                    dis.readFully(header, 1, CONTAINER_HEADER_SIZE - 1);
+                    java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(header);
+                    byte[] magic = new byte[CONTAINER_MAGIC.length];
+                    buf.get(magic);
+                    if (!Arrays.equals(magic, CONTAINER_MAGIC)) {
+                        throw new IOException("Firma de contenedor inválida");
+                    }
+                    if (buf.getInt(CONTAINER_HEADER_SIZE - 4) != crc32c(header, 0, CONTAINER_HEADER_SIZE - 4)) {
+                        throw new IOException("Encabezado del contenedor dañado (CRC32C)");
+                    }
+                    int containerVersion = buf.get() & 0xFF;
+                    int flags = buf.get() & 0xFF;
+                    int codecs = buf.getShort() & 0xFFFF;
+                    if (containerVersion > CONTAINER_VERSION) {
+                        throw new IOException("Versión de contenedor más nueva que la soportada: " + containerVersion);
+                    }
+                    if ((codecs & ~SUPPORTED_CODECS) != 0) {
+                        throw new IOException("Códecs no soportados en el contenedor: 0x"
+                                + Integer.toHexString(codecs & ~SUPPORTED_CODECS));
+                    }
+                    h.checksums = (flags & FLAG_CRC32C) != 0;
+                    h.indexed = (flags & FLAG_INDEX) != 0;
+                    h.originalSize = buf.getLong();
+                    h.blockSize = buf.getInt();
+                    h.window = buf.getInt();
+                    h.checkLz77(buf.getShort() & 0xFFFF);
+                    h.length = CONTAINER_HEADER_SIZE;
+                } else {
+                    h.blockSize = dis.readInt();
+                    h.length = 5;
+                    if (h.version == FORMAT_BLOCKS_V3) {
+                        h.window = dis.readInt();
+                        h.checkLz77(dis.readUnsignedShort());
+                        h.length += 6;
+                    }
+                }
+                if (h.blockSize < MIN_BLOCK_SIZE || h.blockSize > MAX_BLOCK_SIZE) {
+                    throw new IOException("Tamaño de bloque inválido: " + h.blockSize);
+                }
+                return h;
+            }
+
+            private void checkLz77(int maxMatch) throws IOException {
+                if (window < 1 || window > DeflateTokenCoder.MAX_DISTANCE
+                        || maxMatch < DeflateTokenCoder.MIN_MATCH || maxMatch > DeflateTokenCoder.MAX_MATCH) {
+                    throw new IOException("Parámetros LZ77 inválidos: ventana " + window + ", longitud " + maxMatch);
+                }
+            }
+
+            // token serializado: 5 bytes por byte de entrada en el peor caso, más encabezados
+            long maxFrame() {
+                return 5L * blockSize + 1024;
+            }
+        }
+
+        // Devuelve la cantidad de bytes originales escritos en out.
+        public long decompress(InputStream in, OutputStream out, long totalSize,
+                               ProgressCallback progress) throws IOException {
+            return decompress(in, out, totalSize, progress, null);
+        }
+
+        // Con damaged != null una trama v4 cuyo CRC no coincide se reemplaza por
+        // ceros del mismo tamaño y se informa su posición en el original; sin él
+        // cualquier daño aborta. Los flujos v1-v3 no tienen CRC: solo abortan.
+        public long decompress(InputStream in, OutputStream out, long totalSize,
+                               ProgressCallback progress,
+                               java.util.function.LongConsumer damaged) throws IOException {
+            DataInputStream dis = new DataInputStream(in);
+            StreamHeader header = StreamHeader.read(dis);
+            int version = header.version;
+            int maxDistance = header.window;
+            long consumed = header.length;
+
+            ArrayDeque<java.util.concurrent.Future<Frame>> pending = new ArrayDeque<>();
+            BlockIndex seen = new BlockIndex();
+            long written = 0;
+            long offset = 0;
+            try {
+                while (true) {
+                    checkpoint();
+                    long t = now();
+                    int rawLength = dis.readInt();
+                    if (rawLength == 0) break;
+                    int frameLength = dis.readInt();
+                    if (rawLength < 0 || rawLength > header.blockSize || frameLength <= 0
+                            || frameLength > header.maxFrame()) {
+                        throw new IOException("Trama inválida en el byte " + consumed);
+                    }
+                    int crc = header.checksums ? dis.readInt() : 0;
+                    byte[] frame = new byte[frameLength];
+                    dis.readFully(frame);
+                    time(Metrics.Phase.READ, t);
+                    if (header.checksums && crc != frameCrc(rawLength, frame)) {
+                        if (damaged == null) {
+                            throw new IOException("Trama dañada en el byte " + consumed + " (CRC32C)");
+                        }
+                        damaged.accept(offset);
+                        pending.add(submit(() -> new Frame(rawLength, new byte[rawLength])));
+                    } else {
+                        pending.add(submit(() -> new Frame(rawLength, decodeFrame(version, frame, rawLength, maxDistance))));
+                    }
+                    seen.add(offset, consumed);
+                    consumed += (header.checksums ? 12 : 8) + frameLength;
+                    offset += rawLength;
+                    while (pending.size() >= maxInFlight) {
+                        written += writeOriginal(out, await(pending.poll()));
+                        report(progress, consumed, totalSize, "Descomprimiendo bloques");
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    written += writeOriginal(out, await(pending.poll()));
+                    report(progress, consumed, totalSize, "Descomprimiendo bloques");
+                }
+            } finally {
+                cancelAll(pending);
+            }
+            if (header.originalSize >= 0 && written != header.originalSize) {
+                throw new IOException("Tamaño original inesperado: " + written + " != " + header.originalSize);
+            }
+            if (header.indexed) {
+                seen.rawSize = offset;
+                try {
+                    checkIndex(dis, seen);
+                } catch (IOException e) {
+                    // el contenido ya se rescató; el índice solo sirve para el acceso aleatorio
+                    if (damaged == null) throw e;
+                }
+            }
+            out.flush();
+            return written;
+        }
+
+        private byte[] decodeFrame(int version, byte[] frame, int rawLength, int maxDistance) throws IOException {
+            if (version != FORMAT_BLOCKS) {
+                return decompressBlock(frame, rawLength, maxDistance);
+            }
+            if (control != null) control.throwIfCancelled();
+            long start = now();
+            long allocated = allocated();
+            byte[] data = decompressTokenFrame(frame, 0, rawLength);
+            decoded(frame.length, data.length, start, allocated);
+            return data;
+        }
+
+        private void decoded(int encoded, int raw, long start, long allocated) {
+            if (metrics == null) return;
+            metrics.time(Metrics.Phase.DECODE, start);
+            metrics.decoded(raw, encoded, start, allocated);
+        }
+
+        // Lee el índice que sigue al int 0 final y exige que describa las tramas recorridas.
+        private static void checkIndex(DataInputStream dis, BlockIndex seen) throws IOException {
+            byte[] encoded = new byte[seen.size() * INDEX_ENTRY_SIZE + INDEX_TRAILER_SIZE];
+            dis.readFully(encoded);
+            if (!BlockIndex.decode(encoded).sameAs(seen)) {
+                throw new IOException("El índice de bloques no coincide con las tramas");
+            }
+        }
+
+        // Validación barata de un contenedor v4: recorre encabezado y tramas
+        // comprobando los CRC sin decodificar nada. Devuelve el tamaño original.
+        public static long verify(InputStream in) throws IOException {
+            DataInputStream dis = new DataInputStream(in);
+            StreamHeader header = StreamHeader.read(dis);
+            if (!header.checksums) {
+                throw new IOException("El flujo no tiene sumas de verificación (versión " + header.version + ")");
+            }
+            long consumed = header.length;
+            long original = 0;
+            BlockIndex seen = new BlockIndex();
+            byte[] frame = new byte[0];
+            while (true) {
+                int rawLength = dis.readInt();
+                if (rawLength == 0) break;
+                int frameLength = dis.readInt();
+                if (rawLength < 0 || rawLength > header.blockSize || frameLength <= 0
+                        || frameLength > header.maxFrame()) {
+                    throw new IOException("Trama inválida en el byte " + consumed);
+                }
+                int crc = dis.readInt();
+                if (frame.length != frameLength) {
+                    frame = new byte[frameLength];
+                }
+                dis.readFully(frame);
+                if (crc != frameCrc(rawLength, frame)) {
+                    throw new IOException("Trama dañada en el byte " + consumed + " (CRC32C)");
+                }
+                seen.add(original, consumed);
+                consumed += 12 + frameLength;
+                original += rawLength;
+            }
+            if (header.originalSize >= 0 && original != header.originalSize) {
+                throw new IOException("Tamaño original inesperado: " + original + " != " + header.originalSize);
+            }
+            if (header.indexed) {
+                seen.rawSize = original;
+                checkIndex(dis, seen);
+            }
+            return original;
+        }
+
+        // verify si el flujo tiene CRC; si no (v1-v3), se decodifica descartando la
+        // salida. in debe soportar mark/reset.
+        public long check(InputStream in) throws IOException {
+            in.mark(CONTAINER_HEADER_SIZE);
+            StreamHeader header = StreamHeader.read(new DataInputStream(in));
+            in.reset();
+            return header.checksums ? verify(in) : decompress(in, OutputStream.nullOutputStream(), 0, null);
+        }
+
+        // Índice de bloques de un contenedor v4 (ver FLAG_INDEX): dónde empieza
+        // cada trama en el original y dentro del contenedor.
+        private static final class BlockIndex {
+            private long[] rawOffsets = new long[16];
+            private long[] frameOffsets = new long[16];
+            private int count;
+            long rawSize;
+
+            void add(long rawOffset, long frameOffset) {
+                if (count == rawOffsets.length) {
+                    rawOffsets = Arrays.copyOf(rawOffsets, count * 2);
+                    frameOffsets = Arrays.copyOf(frameOffsets, count * 2);
+                }
+                rawOffsets[count] = rawOffset;
+                frameOffsets[count] = frameOffset;
+                count++;
+            }
+
+            int size() {
+                return count;
+            }
+
+            long rawOffset(int i) {
+                return rawOffsets[i];
+            }
+
+            long rawEnd(int i) {
+                return i + 1 < count ? rawOffsets[i + 1] : rawSize;
+            }
+
+            long frameOffset(int i) {
+                return frameOffsets[i];
+            }
+
+            // última trama que empieza en rawOffset o antes
+            int find(long rawOffset) {
+                int i = Arrays.binarySearch(rawOffsets, 0, count, rawOffset);
+                return i >= 0 ? i : -i - 2;
+            }
+
+            boolean sameAs(BlockIndex other) {
+                return count == other.count && rawSize == other.rawSize
+                        && Arrays.equals(rawOffsets, 0, count, other.rawOffsets, 0, count)
+                        && Arrays.equals(frameOffsets, 0, count, other.frameOffsets, 0, count);
+            }
+
+            byte[] encode() {
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(count * INDEX_ENTRY_SIZE + INDEX_TRAILER_SIZE);
+                for (int i = 0; i < count; i++) {
+                    buf.putLong(rawOffsets[i]).putLong(frameOffsets[i]);
+                }
+                buf.putInt(INDEX_MAGIC).putInt(count).putLong(rawSize);
+                buf.putInt(crc32c(buf.array(), 0, buf.position()));
+                return buf.array();
+            }
+
+            // Cantidad de entradas según el cierre (los últimos INDEX_TRAILER_SIZE bytes).
+            static int entries(byte[] trailer) throws IOException {
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(trailer);
+                int n = buf.getInt(4);
+                if (buf.getInt(0) != INDEX_MAGIC || n < 0 || n > (Integer.MAX_VALUE - INDEX_TRAILER_SIZE) / INDEX_ENTRY_SIZE) {
+                    throw new IOException("Índice de bloques inválido");
+                }
+                return n;
+            }
+
+            static BlockIndex decode(byte[] encoded) throws IOException {
+                int n = entries(Arrays.copyOfRange(encoded, encoded.length - INDEX_TRAILER_SIZE, encoded.length));
+                if (encoded.length != n * INDEX_ENTRY_SIZE + INDEX_TRAILER_SIZE) {
+                    throw new IOException("Índice de bloques inválido");
+                }
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(encoded);
+                if (buf.getInt(encoded.length - 4) != crc32c(encoded, 0, encoded.length - 4)) {
+                    throw new IOException("Índice de bloques dañado (CRC32C)");
+                }
+                BlockIndex index = new BlockIndex();
+                for (int i = 0; i < n; i++) {
+                    long raw = buf.getLong();
+                    long frame = buf.getLong();
+                    if (i == 0 ? raw != 0 : raw <= index.rawOffsets[i - 1] || frame <= index.frameOffsets[i - 1]) {
+                        throw new IOException("Índice de bloques inválido");
+                    }
+                    index.add(raw, frame);
+                }
+                index.rawSize = buf.getLong(encoded.length - 12);
+                if (n > 0 && index.rawSize <= index.rawOffsets[n - 1] || n == 0 && index.rawSize != 0) {
+                    throw new IOException("Índice de bloques inválido");
+                }
+                return index;
+            }
+        }
+
+        // ====================================================================
+        // Acceso aleatorio
+        // ====================================================================
+
+        // Origen con lectura posicional: un archivo o un cifrado que se descifra
+        // por fragmentos a pedido.
+        public interface SeekableInput extends Closeable {
+            long size() throws IOException;
+
+            void readFully(long position, byte[] b, int off, int len) throws IOException;
+        }
+
+        public static SeekableInput seekable(FileChannel channel) {
+            return new SeekableInput() {
+                @Override
+                public long size() throws IOException {
+                    return channel.size();
+                }
+
+                @Override
+                public void readFully(long position, byte[] b, int off, int len) throws IOException {
+                    readAt(channel, position, b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+
+        static void readAt(FileChannel channel, long position, byte[] b, int off, int len) throws IOException {
+            java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(b, off, len);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, position + buf.position() - off) < 0) {
+                    throw new EOFException("Fin de archivo inesperado en el byte " + (position + buf.position() - off));
+                }
+            }
+        }
+
+        // Flujo sobre un SeekableInput desde una posición; sin buffer, así
+        // position() indica exactamente hasta dónde se consumió.
+        static final class SeekableStream extends InputStream {
+            private final SeekableInput src;
+            private long position;
+
+            SeekableStream(SeekableInput src, long position) {
+                this.src = src;
+                this.position = position;
+            }
+
+            long position() {
+                return position;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                long left = src.size() - position;
+                if (left <= 0) return -1;
+                int n = (int) Math.min(len, left);
+                src.readFully(position, b, off, n);
+                position += n;
+                return n;
+            }
+        }
+
+        // Escribe en out el tramo [offset, offset + length) del original de un
+        // contenedor que empieza en 'start' y termina al final de src. Solo se leen
+        // y decodifican las tramas que cubren el tramo; sin índice (contenedores
+        // anteriores) las tramas se ubican saltando de encabezado en encabezado.
+        public long readRange(SeekableInput src, long start, long offset, long length,
+                              OutputStream out) throws IOException {
+            StreamHeader header = StreamHeader.read(new DataInputStream(new SeekableStream(src, start)));
+            BlockIndex index = header.indexed ? loadIndex(src, start, header) : scanIndex(src, start, header);
+            if (offset < 0 || length < 0 || offset > index.rawSize - length) {
+                throw new IllegalArgumentException("Tramo fuera del contenido: " + offset + "+" + length
+                        + " de " + index.rawSize + " bytes");
+            }
+            if (length == 0) return 0;
+            long end = offset + length;
+            int first = index.find(offset);
+            long cursor = index.rawOffset(first);
+            long written = 0;
+            ArrayDeque<java.util.concurrent.Future<Frame>> pending = new ArrayDeque<>();
+            try {
+                for (int i = first; i < index.size() && index.rawOffset(i) < end; i++) {
+                    byte[] frame = readFrame(src, start, header, index, i);
+                    int rawLength = (int) (index.rawEnd(i) - index.rawOffset(i));
+                    pending.add(submit(() -> new Frame(rawLength,
+                            decodeFrame(header.version, frame, rawLength, header.window))));
+                    while (pending.size() >= maxInFlight) {
+                        Frame f = await(pending.poll());
+                        written += writeSlice(out, f, offset - cursor, end - cursor);
+                        cursor += f.rawLength;
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    Frame f = await(pending.poll());
+                    written += writeSlice(out, f, offset - cursor, end - cursor);
+                    cursor += f.rawLength;
+                }
+            } finally {
+                cancelAll(pending);
+            }
+            out.flush();
+            return written;
+        }
+
+        private static long writeSlice(OutputStream out, Frame frame, long from, long to) throws IOException {
+            int a = (int) Math.max(0, from);
+            int b = (int) Math.min(frame.rawLength, to);
+            out.write(frame.data, a, b - a);
+            return b - a;
+        }
+
+        // Lee la trama i y comprueba que coincida con el índice (y su CRC si lo hay).
+        private static byte[] readFrame(SeekableInput src, long start, StreamHeader header,
+                                        BlockIndex index, int i) throws IOException {
+            long at = index.frameOffset(i);
+            byte[] head = new byte[header.checksums ? 12 : 8];
+            src.readFully(start + at, head, 0, head.length);
+            java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(head);
+            int rawLength = buf.getInt();
+            int frameLength = buf.getInt();
+            if (rawLength != index.rawEnd(i) - index.rawOffset(i) || frameLength <= 0
+                    || frameLength > header.maxFrame()) {
+                throw new IOException("Trama inválida en el byte " + at);
+            }
+            byte[] frame = new byte[frameLength];
+            src.readFully(start + at + head.length, frame, 0, frameLength);
+            if (header.checksums && buf.getInt() != frameCrc(rawLength, frame)) {
+                throw new IOException("Trama dañada en el byte " + at + " (CRC32C)");
+            }
+            return frame;
+        }
+
+        private static BlockIndex loadIndex(SeekableInput src, long start, StreamHeader header) throws IOException {
+            long end = src.size();
+            if (end - start < header.length + 4 + INDEX_TRAILER_SIZE) {
+                throw new EOFException("Contenedor truncado");
+            }
+            byte[] trailer = new byte[INDEX_TRAILER_SIZE];
+            src.readFully(end - INDEX_TRAILER_SIZE, trailer, 0, INDEX_TRAILER_SIZE);
+            long length = (long) BlockIndex.entries(trailer) * INDEX_ENTRY_SIZE + INDEX_TRAILER_SIZE;
+            if (length > end - start - header.length - 4) {
+                throw new IOException("Índice de bloques inválido");
+            }
+            byte[] encoded = new byte[(int) length];
+            src.readFully(end - length, encoded, 0, encoded.length);
+            BlockIndex index = BlockIndex.decode(encoded);
+            if (index.size() > 0 && index.frameOffset(0) != header.length
+                    || header.originalSize >= 0 && index.rawSize != header.originalSize) {
+                throw new IOException("El índice de bloques no coincide con el encabezado");
+            }
+            return index;
+        }
+
+        private static BlockIndex scanIndex(SeekableInput src, long start, StreamHeader header) throws IOException {
+            BlockIndex index = new BlockIndex();
+            byte[] head = new byte[4];
+            long at = header.length;
+            long raw = 0;
+            while (true) {
+                src.readFully(start + at, head, 0, 4);
+                int rawLength = java.nio.ByteBuffer.wrap(head).getInt();
+                if (rawLength == 0) break;
+                src.readFully(start + at + 4, head, 0, 4);
+                int frameLength = java.nio.ByteBuffer.wrap(head).getInt();
+                if (rawLength < 0 || rawLength > header.blockSize || frameLength <= 0
+                        || frameLength > header.maxFrame()) {
+                    throw new IOException("Trama inválida en el byte " + at);
+                }
+                index.add(raw, at);
+                at += (header.checksums ? 12 : 8) + frameLength;
+                raw += rawLength;
+            }
+            index.rawSize = raw;
+            return index;
+        }
+
+        private long writeOriginal(OutputStream out, Frame frame) throws IOException {
+            long t = now();
+            out.write(frame.data);
+            time(Metrics.Phase.WRITE, t);
+            return frame.rawLength;
+        }
+
+        private java.util.concurrent.Future<Frame> submit(java.util.concurrent.Callable<Frame> task) {
+            if (executor != null) {
+                return executor.submit(task);
+            }
+            java.util.concurrent.FutureTask<Frame> inline = new java.util.concurrent.FutureTask<>(task);
+            inline.run();
+            return inline;
+        }
+
+        static <T> T await(java.util.concurrent.Future<T> future) throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Procesamiento de bloques interrumpido");
+            } catch (java.util.concurrent.ExecutionException e) {
+                Throwable cause = e.getCause();
+                // ForkJoinPool envuelve las excepciones verificadas de un Callable en
+                // RuntimeException (y otra vez al relanzarlas desde otro hilo)
+                while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IOException(cause);
+            }
+        }
+
+        static void cancelAll(ArrayDeque<? extends java.util.concurrent.Future<?>> pending) {
+            for (java.util.concurrent.Future<?> f : pending) {
+                f.cancel(true);
+            }
+            pending.clear();
+        }
+
+        public byte[] decompressBlock(byte[] frame, int rawLength) throws IOException {
+            return decompressBlock(frame, rawLength, DeflateTokenCoder.MAX_DISTANCE);
+        }
+
+        // Decodifica una trama v2/v3 según su byte de códec.
+        public byte[] decompressBlock(byte[] frame, int rawLength, int maxDistance) throws IOException {
+            if (control != null) control.throwIfCancelled();
+            long start = now();
+            long allocated = allocated();
+            byte[] data = decodeBlock(frame, rawLength, maxDistance);
+            decoded(frame.length, data.length, start, allocated);
+            return data;
+        }
+
+        private byte[] decodeBlock(byte[] frame, int rawLength, int maxDistance) throws IOException {
+            int codec = frame[0] & 0xFF;
+            switch (codec) {
+                case CODEC_STORED:
+                    if (frame.length - 1 != rawLength) {
+                        throw new IOException("Trama sin comprimir de tamaño inesperado: "
+                                + (frame.length - 1) + " != " + rawLength);
+                    }
+                    return Arrays.copyOfRange(frame, 1, frame.length);
+                case CODEC_HUFFMAN: {
+                    byte[] original = huffman.decompress(Arrays.copyOfRange(frame, 1, frame.length));
+                    if (original.length != rawLength) {
+                        throw new IOException("Tamaño de bloque inesperado: " + original.length + " != " + rawLength);
+                    }
+                    return original;
+                }
+                case CODEC_DEFLATE:
+                    return tokenCoder.decode(frame, 1, rawLength, maxDistance);
+                case CODEC_TOKENS_HUFFMAN:
+                    return decompressTokenFrame(frame, 1, rawLength);
+                default:
+                    throw new IOException("Códec de trama desconocido: " + codec);
+            }
+        }
+
+        // Tokens de 5 bytes + Huffman: tramas v1 y códec CODEC_TOKENS_HUFFMAN.
+        private byte[] decompressTokenFrame(byte[] frame, int from, int rawLength) throws IOException {
+            byte[] huff = from == 0 ? frame : Arrays.copyOfRange(frame, from, frame.length);
+            byte[] original = lz77.decompressSerialized(huffman.decompress(huff));
+            if (original.length != rawLength) {
+                throw new IOException("Tamaño de bloque inesperado: " + original.length + " != " + rawLength);
+            }
+            return original;
+        }
+
+        private static void report(ProgressCallback progress, long done, long total, String message) {
+            if (progress != null && total > 0) {
+                int pct = (int) Math.min(100, (done * 100) / total);
+                progress.onProgress(pct, message + ": " + pct + "%");
+            }
+        }
+    }
+
+    // ========================================================================
+    // CIFRADO AUTENTICADO POR FRAGMENTOS (AES-GCM / ChaCha20-Poly1305)
+    // ========================================================================
+
+    // Formato .enc/.ec:
+    //   encabezado (HEADER_SIZE bytes): "ED2C", versión, cifrador, kdf,
+    //   iteraciones (int), sal (16), prefijo de nonce (7), tamaño de fragmento (int)
+    //   fragmentos: texto cifrado + etiqueta de 16 bytes. Todos miden chunkSize
+    //   salvo el último, que es más corto (puede quedar vacío) y lleva la marca de
+    //   final en el nonce: truncar, reordenar o alterar cualquier fragmento hace
+    //   fallar su etiqueta. El encabezado completo va como AAD de cada fragmento.
+    // Los archivos sin encabezado son del cifrado XOR anterior: solo se descifran.
+    public static class SimpleEncryptor {
+
+        public static final int MAGIC = 0x45443243; // "ED2C"
+        public static final int FORMAT_VERSION = 1;
+
+        public static final int CIPHER_AES_GCM = 1;
+        public static final int CIPHER_CHACHA20_POLY1305 = 2;
+        public static final int KDF_PBKDF2_SHA256 = 1;
+
+        public static final int DEFAULT_ITERATIONS = 600_000;
+        public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+        public static final int MIN_CHUNK_SIZE = 4 * 1024;
+        public static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+        private static final int MIN_ITERATIONS = 10_000;
+        private static final int MAX_ITERATIONS = 100_000_000;
+
+        static final int HEADER_SIZE = 38;
+        private static final int SALT_SIZE = 16;
+        private static final int NONCE_PREFIX_SIZE = 7;
+        private static final int TAG_SIZE = 16;
+        private static final long MAX_CHUNKS = 1L << 32;
+
+        private static final java.security.SecureRandom RANDOM = new java.security.SecureRandom();
+
+        private final int cipher;
+        private final int chunkSize;
+        // Sin executor los fragmentos se cifran en el hilo que llama.
+        private final java.util.concurrent.ExecutorService executor;
+        private final int maxInFlight;
+        // null: sin cancelación ni pausa
+        private final JobControl control;
+        // null: sin medir
+        private final Metrics metrics;
+
+        public SimpleEncryptor() {
+            this(CIPHER_AES_GCM, DEFAULT_CHUNK_SIZE, null, 1);
+        }
+
+        // Con executor hasta maxInFlight fragmentos se cifran/descifran a la vez;
+        // la salida respeta el orden.
+        public SimpleEncryptor(int cipher, int chunkSize,
+                               java.util.concurrent.ExecutorService executor, int maxInFlight) {
+            this(cipher, chunkSize, executor, maxInFlight, null, null);
+        }
+
+        private SimpleEncryptor(int cipher, int chunkSize,
+                                java.util.concurrent.ExecutorService executor, int maxInFlight,
+                                JobControl control, Metrics metrics) {
+            if (cipher != CIPHER_AES_GCM && cipher != CIPHER_CHACHA20_POLY1305) {
+                throw new IllegalArgumentException("Cifrador desconocido: " + cipher);
+            }
+            if (chunkSize < MIN_CHUNK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("Tamaño de fragmento fuera de rango: " + chunkSize);
+            }
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight debe ser >= 1");
+            }
+            this.cipher = cipher;
+            this.chunkSize = chunkSize;
+            this.executor = executor;
+            this.maxInFlight = executor == null ? 1 : maxInFlight;
+            this.control = control;
+            this.metrics = metrics;
+        }
+
+        // Mismo cifrador sujeto a control: los flujos se detienen o abortan entre
+        // fragmentos, y los fragmentos en cola no se procesan tras cancelar.
+        public SimpleEncryptor withControl(JobControl control) {
+            return new SimpleEncryptor(cipher, chunkSize, executor, maxInFlight, control, metrics);
+        }
+
+        // Mismo cifrador midiendo en metrics el tiempo de cada fragmento y el de
+        // obtener la clave (PBKDF2 o la caché de la sesión).
+        public SimpleEncryptor withMetrics(Metrics metrics) {
+            return new SimpleEncryptor(cipher, chunkSize, executor, maxInFlight, control, metrics);
+        }
+
+        private void checkpoint() throws InterruptedIOException {
+            if (control != null) control.checkpoint();
+        }
+
+        public Session newSession(String password) {
+            return newSession(password, DEFAULT_ITERATIONS, null);
+        }
+
+        // Con cache == null la sesión usa una caché propia que se borra al cerrarla;
+        // una caché compartida la cierra quien la creó.
+        public Session newSession(String password, int iterations, KeyCache cache) {
+            if (password == null || password.isEmpty()) {
+                throw new IllegalArgumentException("Contraseña requerida.");
+            }
+            if (iterations < MIN_ITERATIONS || iterations > MAX_ITERATIONS) {
+                throw new IllegalArgumentException("Iteraciones fuera de rango: " + iterations);
+            }
+            boolean owned = cache == null;
+            return new Session(password.toCharArray(), iterations,
+                    owned ? new KeyCache(KeyCache.DEFAULT_MAX_ENTRIES) : cache, owned);
+        }
+
+        // Contraseña de un lote de archivos. Para cifrar se usa una sola sal por
+        // sesión, así que PBKDF2 corre una vez para todo el lote; al descifrar, una
+        // vez por cada sal distinta. Cada archivo lleva su propio prefijo de nonce.
+        public static final class Session implements AutoCloseable {
+            private final char[] password;
+            private final int iterations;
+            private final byte[] salt = new byte[SALT_SIZE];
+            private final KeyCache cache;
+            private final boolean ownsCache;
+
+            private Session(char[] password, int iterations, KeyCache cache, boolean ownsCache) {
+                this.password = password;
+                this.iterations = iterations;
+                this.cache = cache;
+                this.ownsCache = ownsCache;
+                RANDOM.nextBytes(salt);
+            }
+
+            // copia propia de la clave: el que la recibe la borra con destroy()
+            DerivedKey key(int cipher, byte[] salt, int iterations) throws IOException {
+                return new DerivedKey(cache.key(password, salt, iterations),
+                        cipher == CIPHER_AES_GCM ? "AES" : "ChaCha20");
+            }
+
+            // clave del cifrado XOR anterior: SHA-256 de la contraseña, sin sal
+            byte[] legacyKey() {
+                java.nio.ByteBuffer utf8 = java.nio.charset.StandardCharsets.UTF_8.encode(
+                        java.nio.CharBuffer.wrap(password));
+                byte[] bytes = new byte[utf8.remaining()];
+                utf8.get(bytes);
+                try {
+                    return java.security.MessageDigest.getInstance("SHA-256").digest(bytes);
+                } catch (java.security.NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    Arrays.fill(bytes, (byte) 0);
+                }
+            }
+
+            @Override
+            public void close() {
+                Arrays.fill(password, '\0');
+                if (ownsCache) {
+                    cache.close();
+                }
+            }
+        }
+
+        // Claves derivadas de un lote, solo en memoria (no se serializan ni se
+        // escriben a disco). Entrada por (contraseña, kdf, iteraciones, sal); al pasar
+        // de maxEntries se descarta la menos usada y se pone a cero, y close() borra
+        // todas. Las copias internas del proveedor JCE quedan fuera de este control.
+        public static final class KeyCache implements AutoCloseable {
+            public static final int DEFAULT_MAX_ENTRIES = 32;
+
+            private final LinkedHashMap<KeyId, byte[]> entries;
+            private long derivations;
+            private boolean closed;
+
+            public KeyCache(int maxEntries) {
+                if (maxEntries < 1) {
+                    throw new IllegalArgumentException("maxEntries debe ser >= 1");
+                }
+                this.entries = new LinkedHashMap<KeyId, byte[]>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<KeyId, byte[]> eldest) {
+                        if (size() <= maxEntries) return false;
+                        eldest.getKey().wipe();
+                        Arrays.fill(eldest.getValue(), (byte) 0);
+                        return true;
+                    }
+                };
+            }
+
+            // Devuelve una copia: una entrada desalojada se borra aunque haya flujos
+            // usando su clave. La derivación se hace con el lock tomado, así los hilos
+            // que piden la misma clave esperan a la primera en vez de repetirla.
+            synchronized byte[] key(char[] password, byte[] salt, int iterations) throws IOException {
+                if (closed) {
+                    throw new IllegalStateException("Caché de claves cerrada");
+                }
+                KeyId id = new KeyId(password, KDF_PBKDF2_SHA256, iterations, salt);
+                byte[] key = entries.get(id);
+                if (key != null) {
+                    id.wipe();
+                    return key.clone();
+                }
+                try {
+                    key = pbkdf2(password, salt, iterations);
+                } catch (IOException e) {
+                    id.wipe();
+                    throw e;
+                }
+                derivations++;
+                entries.put(id, key);
+                return key.clone();
+            }
+
+            public synchronized int size() {
+                return entries.size();
+            }
+
+            // derivaciones PBKDF2 hechas desde que se abrió la caché
+            public synchronized long getDerivations() {
+                return derivations;
+            }
+
+            @Override
+            public synchronized void close() {
+                closed = true;
+                for (Map.Entry<KeyId, byte[]> e : entries.entrySet()) {
+                    e.getKey().wipe();
+                    Arrays.fill(e.getValue(), (byte) 0);
+                }
+                entries.clear();
+            }
+        }
+
+        private static final class KeyId {
+            private final char[] password;
+            private final int kdf;
+            private final int iterations;
+            private final byte[] salt;
+            private final int hash;
+
+            KeyId(char[] password, int kdf, int iterations, byte[] salt) {
+                this.password = password.clone();
+                this.kdf = kdf;
+                this.iterations = iterations;
+                this.salt = salt.clone();
+                // la contraseña no entra en el hash: basta la sal para repartir
+                this.hash = 31 * (31 * kdf + iterations) + Arrays.hashCode(salt);
+            }
+
+            void wipe() {
+                Arrays.fill(password, '\0');
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof KeyId)) return false;
+                KeyId other = (KeyId) o;
+                return kdf == other.kdf && iterations == other.iterations
+                        && Arrays.equals(salt, other.salt) && Arrays.equals(password, other.password);
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+        }
+
+        // Clave que se puede borrar. El proveedor JCE la recibe por getEncoded(),
+        // que entrega copias; no se puede serializar.
+        static final class DerivedKey implements javax.crypto.SecretKey {
+            // SecretKey es Serializable; writeObject igual rechaza serializarla
+            private static final long serialVersionUID = 1L;
+
+            private final byte[] bytes;
+            private final String algorithm;
+            private volatile boolean destroyed;
+
+            DerivedKey(byte[] bytes, String algorithm) {
+                this.bytes = bytes;
+                this.algorithm = algorithm;
+            }
+
+            @Override
+            public String getAlgorithm() {
+                return algorithm;
+            }
+
+            @Override
+            public String getFormat() {
+                return "RAW";
+            }
+
+            @Override
+            public byte[] getEncoded() {
+                if (destroyed) {
+                    throw new IllegalStateException("Clave borrada");
+                }
+                return bytes.clone();
+            }
+
+            @Override
+            public void destroy() {
+                destroyed = true;
+                Arrays.fill(bytes, (byte) 0);
+            }
+
+            @Override
+            public boolean isDestroyed() {
+                return destroyed;
+            }
+
+            private void writeObject(ObjectOutputStream out) throws IOException {
+                throw new NotSerializableException("Las claves derivadas no se serializan");
+            }
+        }
+
+        private static byte[] pbkdf2(char[] password, byte[] salt, int iterations) throws IOException {
+            javax.crypto.spec.PBEKeySpec spec = new javax.crypto.spec.PBEKeySpec(password, salt, iterations, 256);
+            try {
+                return javax.crypto.SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                        .generateSecret(spec).getEncoded();
+            } catch (java.security.GeneralSecurityException e) {
+                throw new IOException("No se pudo derivar la clave", e);
+            } finally {
+                spec.clearPassword();
+            }
+        }
+
+        private static final class Header {
+            final byte[] encoded;
+            final int cipher;
+            final int iterations;
+            final byte[] salt;
+            final byte[] noncePrefix;
+            final int chunkSize;
+
+            Header(byte[] encoded) throws IOException {
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(encoded);
+                if (buf.getInt() != MAGIC) {
+                    throw new IOException("No es un archivo cifrado");
+                }
+                int version = buf.get() & 0xFF;
+                cipher = buf.get() & 0xFF;
+                int kdf = buf.get() & 0xFF;
+                iterations = buf.getInt();
+                salt = new byte[SALT_SIZE];
+                buf.get(salt);
+                noncePrefix = new byte[NONCE_PREFIX_SIZE];
+                buf.get(noncePrefix);
+                chunkSize = buf.getInt();
+                if (version != FORMAT_VERSION) {
+                    throw new IOException("Versión de cifrado no soportada: " + version);
+                }
+                if ((cipher != CIPHER_AES_GCM && cipher != CIPHER_CHACHA20_POLY1305) || kdf != KDF_PBKDF2_SHA256) {
+                    throw new IOException("Cifrador o derivación desconocidos: " + cipher + "/" + kdf);
+                }
+                if (iterations < MIN_ITERATIONS || iterations > MAX_ITERATIONS
+                        || chunkSize < MIN_CHUNK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+                    throw new IOException("Encabezado de cifrado inválido");
+                }
+                this.encoded = encoded;
+            }
+
+            static byte[] encode(int cipher, int iterations, byte[] salt, int chunkSize) {
+                byte[] prefix = new byte[NONCE_PREFIX_SIZE];
+                RANDOM.nextBytes(prefix);
+                return java.nio.ByteBuffer.allocate(HEADER_SIZE)
+                        .putInt(MAGIC)
+                        .put((byte) FORMAT_VERSION)
+                        .put((byte) cipher)
+                        .put((byte) KDF_PBKDF2_SHA256)
+                        .putInt(iterations)
+                        .put(salt)
+                        .put(prefix)
+                        .putInt(chunkSize)
+                        .array();
+            }
+        }
+
+        // Cifra o descifra un fragmento. Nonce: prefijo (7) + índice (4) + marca de final (1).
+        private static byte[] sealChunk(Header header, DerivedKey key, long index, boolean last,
+                                        byte[] data, int len, boolean encrypt) throws IOException {
+            if (index >= MAX_CHUNKS) {
+                throw new IOException("Demasiados fragmentos para un mismo nonce");
+            }
+            byte[] nonce = new byte[12];
+            System.arraycopy(header.noncePrefix, 0, nonce, 0, NONCE_PREFIX_SIZE);
+            nonce[7] = (byte) (index >>> 24);
+            nonce[8] = (byte) (index >>> 16);
+            nonce[9] = (byte) (index >>> 8);
+            nonce[10] = (byte) index;
+            nonce[11] = (byte) (last ? 1 : 0);
+            int mode = encrypt ? javax.crypto.Cipher.ENCRYPT_MODE : javax.crypto.Cipher.DECRYPT_MODE;
+            try {
+                javax.crypto.Cipher c;
+                if (header.cipher == CIPHER_AES_GCM) {
+                    c = javax.crypto.Cipher.getInstance("AES/GCM/NoPadding");
+                    c.init(mode, key, new javax.crypto.spec.GCMParameterSpec(TAG_SIZE * 8, nonce));
+                } else {
+                    c = javax.crypto.Cipher.getInstance("ChaCha20-Poly1305");
+                    c.init(mode, key, new javax.crypto.spec.IvParameterSpec(nonce));
+                }
+                c.updateAAD(header.encoded);
+                return c.doFinal(data, 0, len);
+            } catch (javax.crypto.AEADBadTagException e) {
+                throw new IOException("Fragmento " + index
+                        + " no autenticado: archivo alterado o contraseña incorrecta", e);
+            } catch (java.security.GeneralSecurityException e) {
+                throw new IOException("Error de cifrado en el fragmento " + index, e);
+            }
+        }
+
+        private DerivedKey key(Session session, Header header) throws IOException {
+            long start = metrics == null ? 0 : System.nanoTime();
+            DerivedKey key = session.key(header.cipher, header.salt, header.iterations);
+            if (metrics != null) metrics.time(Metrics.Phase.KEY_DERIVATION, start);
+            return key;
+        }
+
+        private byte[] crypt(Header header, DerivedKey key, long index, boolean last,
+                             byte[] data, int len, boolean encrypt) throws IOException {
+            if (control != null) control.throwIfCancelled();
+            long start = metrics == null ? 0 : System.nanoTime();
+            byte[] result = sealChunk(header, key, index, last, data, len, encrypt);
+            if (metrics != null) metrics.time(encrypt ? Metrics.Phase.ENCRYPT : Metrics.Phase.DECRYPT, start);
+            return result;
+        }
+
+        public OutputStream encryptingStream(OutputStream out, Session session) throws IOException {
+            byte[] encoded = Header.encode(cipher, session.iterations, session.salt, chunkSize);
+            Header header = new Header(encoded);
+            DerivedKey key = key(session, header);
+            try {
+                out.write(encoded);
+            } catch (IOException e) {
+                key.destroy();
+                throw e;
+            }
+            return new AeadOutputStream(out, header, key);
+        }
+
+        // Mira la firma sin consumirla; in debe soportar mark/reset.
+        public static boolean isEncrypted(InputStream in) throws IOException {
+            in.mark(4);
+            byte[] head = in.readNBytes(4);
+            in.reset();
+            return head.length == 4 && java.nio.ByteBuffer.wrap(head).getInt() == MAGIC;
+        }
+
+        // Lee el encabezado y devuelve el texto en claro; sin encabezado se asume
+        // el formato XOR anterior, que no se puede autenticar.
+        public InputStream decryptingStream(InputStream in, Session session) throws IOException {
+            byte[] head = in.readNBytes(4);
+            if (head.length < 4 || java.nio.ByteBuffer.wrap(head).getInt() != MAGIC) {
+                return new XorInputStream(new SequenceInputStream(new ByteArrayInputStream(head), in),
+                        session.legacyKey());
+            }
+            byte[] encoded = Arrays.copyOf(head, HEADER_SIZE);
+            if (in.readNBytes(encoded, 4, HEADER_SIZE - 4) != HEADER_SIZE - 4) {
+                throw new EOFException("Encabezado de cifrado truncado");
+            }
+            Header header = new Header(encoded);
+            return new AeadInputStream(in, header, key(session, header));
+        }
+
+        // Descifrado con acceso aleatorio: cada lectura autentica solo los
+        // fragmentos que toca. El fragmento final se autentica al abrir, así el
+        // tamaño en claro es confiable y un archivo truncado no se abre.
+        public BlockCompressor.SeekableInput openSeekable(FileChannel channel, Session session) throws IOException {
+            byte[] encoded = new byte[HEADER_SIZE];
+            if (channel.size() < HEADER_SIZE) {
+                throw new EOFException("Encabezado de cifrado truncado");
+            }
+            BlockCompressor.readAt(channel, 0, encoded, 0, HEADER_SIZE);
+            Header header = new Header(encoded);
+            long sealedChunk = header.chunkSize + TAG_SIZE;
+            long body = channel.size() - HEADER_SIZE;
+            int lastSealed = (int) (body % sealedChunk);
+            if (lastSealed < TAG_SIZE) {
+                throw new EOFException("Archivo cifrado truncado en el fragmento " + body / sealedChunk);
+            }
+            AeadSeekableInput src = new AeadSeekableInput(channel, header,
+                    key(session, header), body / sealedChunk, lastSealed);
+            try {
+                src.chunk(src.lastIndex);
+            } catch (IOException | RuntimeException e) {
+                src.key.destroy();
+                throw e;
+            }
+            return src;
+        }
+
+        private static final class AeadSeekableInput implements BlockCompressor.SeekableInput {
+            private final FileChannel channel;
+            private final Header header;
+            private final DerivedKey key;
+            private final long lastIndex;
+            private final int lastSealed;
+            // último fragmento descifrado: las lecturas suelen ser consecutivas
+            private long cachedIndex = -1;
+            private byte[] cached;
+
+            AeadSeekableInput(FileChannel channel, Header header, DerivedKey key, long lastIndex, int lastSealed) {
+                this.channel = channel;
+                this.header = header;
+                this.key = key;
+                this.lastIndex = lastIndex;
+                this.lastSealed = lastSealed;
+            }
+
+            private byte[] chunk(long index) throws IOException {
+                if (index != cachedIndex) {
+                    boolean last = index == lastIndex;
+                    byte[] sealed = new byte[last ? lastSealed : header.chunkSize + TAG_SIZE];
+                    BlockCompressor.readAt(channel, HEADER_SIZE + index * (header.chunkSize + TAG_SIZE),
+                            sealed, 0, sealed.length);
+                    cached = sealChunk(header, key, index, last, sealed, sealed.length, false);
+                    cachedIndex = index;
+                }
+                return cached;
+            }
+
+            @Override
+            public long size() {
+                return lastIndex * header.chunkSize + lastSealed - TAG_SIZE;
+            }
+
+            @Override
+            public void readFully(long position, byte[] b, int off, int len) throws IOException {
+                if (position < 0 || position > size() - len) {
+                    throw new EOFException("Lectura fuera del contenido cifrado: " + position + "+" + len);
+                }
+                while (len > 0) {
+                    byte[] plain = chunk(position / header.chunkSize);
+                    int from = (int) (position % header.chunkSize);
+                    int n = Math.min(len, plain.length - from);
+                    System.arraycopy(plain, from, b, off, n);
+                    position += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                key.destroy();
+                channel.close();
+            }
+        }
+
+        public byte[] encrypt(byte[] data, Session session) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(
+                    data.length + HEADER_SIZE + TAG_SIZE * (data.length / chunkSize + 1));
+            try (OutputStream os = encryptingStream(bos, session)) {
+                os.write(data);
+            }
+            return bos.toByteArray();
+        }
+
+        public byte[] decrypt(byte[] data, Session session) throws IOException {
+            try (InputStream in = decryptingStream(new ByteArrayInputStream(data), session)) {
+                return in.readAllBytes();
+            }
+        }
+
+        private java.util.concurrent.Future<byte[]> submit(java.util.concurrent.Callable<byte[]> task) {
+            if (executor != null) {
+                return executor.submit(task);
+            }
+            java.util.concurrent.FutureTask<byte[]> inline = new java.util.concurrent.FutureTask<>(task);
+            inline.run();
+            return inline;
+        }
+
+        private final class AeadOutputStream extends OutputStream {
+            private final OutputStream out;
+            private final Header header;
+            private final DerivedKey key;
+            private final ArrayDeque<java.util.concurrent.Future<byte[]>> pending = new ArrayDeque<>();
+            private byte[] buffer;
+            private int filled;
+            private long index;
+            private boolean closed;
+
+            AeadOutputStream(OutputStream out, Header header, DerivedKey key) {
+                this.out = out;
+                this.header = header;
+                this.key = key;
+                this.buffer = new byte[header.chunkSize];
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int n = Math.min(len, buffer.length - filled);
+                    System.arraycopy(b, off, buffer, filled, n);
+                    filled += n;
+                    off += n;
+                    len -= n;
+                    // un fragmento lleno nunca es el último: el final siempre es más corto
+                    if (filled == buffer.length) {
+                        checkpoint();
+                        seal(false);
+                    }
+                }
+            }
+
+            private void seal(boolean last) throws IOException {
+                byte[] plain = buffer;
+                int len = filled;
+                long chunk = index++;
+                pending.add(submit(() -> crypt(header, key, chunk, last, plain, len, true)));
+                if (executor != null) {
+                    buffer = new byte[header.chunkSize];
+                }
+                filled = 0;
+                while (pending.size() >= maxInFlight) {
+                    out.write(BlockCompressor.await(pending.poll()));
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                try {
+                    seal(true);
+                    while (!pending.isEmpty()) {
+                        out.write(BlockCompressor.await(pending.poll()));
+                    }
+                } finally {
+                    BlockCompressor.cancelAll(pending);
+                    key.destroy();
+                    out.close();
+                }
+            }
+        }
+
+        private final class AeadInputStream extends InputStream {
+            private final InputStream in;
+            private final Header header;
+            private final DerivedKey key;
+            private final ArrayDeque<java.util.concurrent.Future<byte[]>> pending = new ArrayDeque<>();
+            private byte[] plain = new byte[0];
+            private int pos;
+            private long index;
+            private boolean lastRead;
+
+            AeadInputStream(InputStream in, Header header, DerivedKey key) {
+                this.in = in;
+                this.header = header;
+                this.key = key;
+            }
+
+            // Lee por adelantado hasta maxInFlight fragmentos. Una lectura corta es el
+            // fragmento final; si el flujo se corta justo en un límite falta la marca de
+            // final y la etiqueta no verifica.
+            private void readAhead() throws IOException {
+                while (!lastRead && pending.size() < maxInFlight) {
+                    checkpoint();
+                    byte[] sealed = in.readNBytes(header.chunkSize + TAG_SIZE);
+                    boolean last = sealed.length < header.chunkSize + TAG_SIZE;
+                    if (sealed.length < TAG_SIZE) {
+                        throw new EOFException("Archivo cifrado truncado en el fragmento " + index);
+                    }
+                    long chunk = index++;
+                    pending.add(submit(() -> crypt(header, key, chunk, last, sealed, sealed.length, false)));
+                    lastRead = last;
+                }
+            }
+
+            private boolean nextChunk() throws IOException {
+                while (pos == plain.length) {
+                    readAhead();
+                    if (pending.isEmpty()) return false;
+                    plain = BlockCompressor.await(pending.poll());
+                    pos = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (!nextChunk()) return -1;
+                return plain[pos++] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                if (!nextChunk()) return -1;
+                int n = Math.min(len, plain.length - pos);
+                System.arraycopy(plain, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return plain.length - pos;
+            }
+
+            @Override
+            public void close() throws IOException {
+                BlockCompressor.cancelAll(pending);
+                key.destroy();
+                in.close();
+            }
+        }
+
+        // ====================================================================
+        // XOR anterior (solo lectura de archivos antiguos)
+        // ====================================================================
+
+        private static void xorInPlace(byte[] buf, int off, int len, byte[] key, long position) {
+            int keyLen = key.length;
+            for (int i = 0; i < len; i++) {
+                long pos = position + i;
+                int k = key[(int) (pos % keyLen)] & 0xFF;
+                int extra = (int) (pos * 31) & 0xFF;
+                buf[off + i] = (byte) ((buf[off + i] & 0xFF) ^ k ^ extra);
+            }
+        }
+
+        private static class XorInputStream extends FilterInputStream {
+            private final byte[] key;
+            private long position;
+
+            XorInputStream(InputStream in, byte[] key) {
+                super(in);
+                this.key = key;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b < 0) return b;
+                byte[] one = {(byte) b};
+                xorInPlace(one, 0, 1, key, position++);
+                return one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n > 0) {
+                    xorInPlace(b, off, n, key, position);
+                    position += n;
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = in.skip(n);
+                position += skipped;
+                return skipped;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        }
+    }
+}
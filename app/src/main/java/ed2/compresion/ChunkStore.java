@@ -0,0 +1,333 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// ============================================================================
+// ALMACÉN DE FRAGMENTOS (.ed2-chunks)
+// ============================================================================
+
+// Almacén local de fragmentos únicos, indexado por SHA-256, en la carpeta
+// DIRECTORY:
+//   pack:  int "ED2K", byte versión y registros (int tamaño original, int
+//          tamaño comprimido, int CRC32C, trama de compressBlock). Cada
+//          registro junta fragmentos nuevos hasta el tamaño de bloque, así se
+//          comprimen juntos y no de a 8 KB.
+//   index: int "ED2X", byte versión y por fragmento SHA-256 (32), long
+//          posición del registro, int posición y largo dentro de él e int
+//          CRC32C de la entrada.
+// Ambos solo crecen. El registro se escribe y sincroniza antes que sus
+// entradas de índice: tras un corte quedan a lo sumo bytes huérfanos en pack
+// y una entrada incompleta al final de index, que se descarta al abrir.
+public final class ChunkStore implements Closeable {
+
+    public static final String DIRECTORY = ".ed2-chunks";
+    public static final int HASH_SIZE = 32;
+    private static final int PACK_MAGIC = 0x4544324B; // "ED2K"
+    private static final int INDEX_MAGIC = 0x45443258; // "ED2X"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 5;
+    private static final int INDEX_ENTRY_SIZE = HASH_SIZE + 8 + 4 + 4 + 4;
+    private static final int RECORD_HEADER_SIZE = 12;
+    // registros decodificados en memoria al restaurar
+    private static final int CACHED_RECORDS = 8;
+
+    private static final class ChunkId {
+        final byte[] hash;
+        private final int hashCode;
+
+        ChunkId(byte[] hash) {
+            this.hash = hash;
+            this.hashCode = ((hash[0] & 0xFF) << 24) | ((hash[1] & 0xFF) << 16)
+                    | ((hash[2] & 0xFF) << 8) | (hash[3] & 0xFF);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ChunkId && Arrays.equals(hash, ((ChunkId) o).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    // record < 0: el fragmento está en el registro que todavía se arma
+    private static final class Location {
+        final long record;
+        final int offset;
+        final int length;
+
+        Location(long record, int offset, int length) {
+            this.record = record;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final BlockCompressor blocks;
+    private final FileChannel pack;
+    private final FileChannel index;
+    private final java.nio.channels.FileLock lock;
+    private final Map<ChunkId, Location> locations = new HashMap<>();
+    private final LinkedHashMap<Long, byte[]> cache = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHED_RECORDS;
+        }
+    };
+    private final byte[] record;
+    private int recordLength;
+    private final java.util.List<ChunkId> recordChunks = new ArrayList<>();
+    private long packEnd;
+    private long addedChunks;
+    private long addedBytes;
+    private long storedBytes;
+
+    private ChunkStore(BlockCompressor blocks, FileChannel pack, FileChannel index,
+                       java.nio.channels.FileLock lock) {
+        this.blocks = blocks;
+        this.pack = pack;
+        this.index = index;
+        this.lock = lock;
+        this.record = new byte[blocks.getBlockSize()];
+    }
+
+    // Con readOnly solo se leen fragmentos y no se toma el bloqueo; para
+    // escribir el almacén se bloquea y otro proceso recibe un error.
+    public static ChunkStore open(Path dir, BlockCompressor blocks, boolean readOnly) throws IOException {
+        if (!readOnly) {
+            Files.createDirectories(dir);
+        }
+        java.util.Set<StandardOpenOption> options = readOnly
+                ? EnumSet.of(StandardOpenOption.READ)
+                : EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        FileChannel pack = FileChannel.open(dir.resolve("pack"), options);
+        FileChannel index = null;
+        try {
+            java.nio.channels.FileLock lock = null;
+            if (!readOnly) {
+                try {
+                    lock = pack.tryLock();
+                } catch (java.nio.channels.OverlappingFileLockException e) {
+                    // ya lo tiene abierto este mismo proceso
+                    lock = null;
+                }
+                if (lock == null) {
+                    throw new IOException("El almacén de fragmentos está en uso: " + dir);
+                }
+            }
+            index = FileChannel.open(dir.resolve("index"), options);
+            ChunkStore store = new ChunkStore(blocks, pack, index, lock);
+            store.packEnd = checkHeader(pack, PACK_MAGIC, readOnly);
+            store.load(checkHeader(index, INDEX_MAGIC, readOnly), readOnly);
+            return store;
+        } catch (IOException | RuntimeException e) {
+            pack.close();
+            if (index != null) index.close();
+            throw e;
+        }
+    }
+
+    private static long checkHeader(FileChannel channel, int magic, boolean readOnly) throws IOException {
+        if (channel.size() == 0 && !readOnly) {
+            java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(FILE_HEADER_SIZE)
+                    .putInt(magic).put((byte) FORMAT_VERSION);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        byte[] header = new byte[FILE_HEADER_SIZE];
+        if (channel.size() < FILE_HEADER_SIZE) {
+            throw new IOException("Almacén de fragmentos dañado o vacío");
+        }
+        BlockCompressor.readAt(channel, 0, header, 0, FILE_HEADER_SIZE);
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(header);
+        if (buf.getInt() != magic || buf.get() != FORMAT_VERSION) {
+            throw new IOException("No es un almacén de fragmentos compatible");
+        }
+        return channel.size();
+    }
+
+    private void load(long indexSize, boolean readOnly) throws IOException {
+        byte[] buffer = new byte[INDEX_ENTRY_SIZE * 4096];
+        long pos = FILE_HEADER_SIZE;
+        long valid = pos;
+        outer:
+        while (pos < indexSize) {
+            int n = (int) Math.min(buffer.length, (indexSize - pos) / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE);
+            if (n == 0) break;
+            BlockCompressor.readAt(index, pos, buffer, 0, n);
+            java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(buffer, 0, n);
+            for (int at = 0; at < n; at += INDEX_ENTRY_SIZE) {
+                byte[] hash = new byte[HASH_SIZE];
+                buf.get(hash);
+                long recordAt = buf.getLong();
+                int offset = buf.getInt();
+                int length = buf.getInt();
+                int crc = buf.getInt();
+                if (crc != BlockCompressor.crc32c(buffer, at, INDEX_ENTRY_SIZE - 4)
+                        || recordAt < FILE_HEADER_SIZE || recordAt >= packEnd
+                        || offset < 0 || length <= 0 || offset > BlockCompressor.MAX_BLOCK_SIZE - length) {
+                    break outer;
+                }
+                locations.put(new ChunkId(hash), new Location(recordAt, offset, length));
+                valid += INDEX_ENTRY_SIZE;
+            }
+            pos += n;
+        }
+        if (valid < indexSize && !readOnly) {
+            // cola de una escritura interrumpida
+            index.truncate(valid);
+        }
+    }
+
+    public synchronized boolean contains(byte[] hash) {
+        return locations.containsKey(new ChunkId(hash));
+    }
+
+    public synchronized int size() {
+        return locations.size();
+    }
+
+    // Bytes originales y comprimidos que agregó esta apertura del almacén.
+    public synchronized long getAddedBytes() {
+        return addedBytes;
+    }
+
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    public synchronized long getAddedChunks() {
+        return addedChunks;
+    }
+
+    // Agrega el fragmento si no estaba; devuelve true si era nuevo.
+    public synchronized boolean add(byte[] hash, byte[] data, int off, int len) throws IOException {
+        if (lock == null) {
+            throw new IllegalStateException("Almacén abierto solo para lectura");
+        }
+        if (len <= 0 || len > record.length) {
+            throw new IllegalArgumentException("Fragmento fuera de rango: " + len);
+        }
+        ChunkId id = new ChunkId(hash.clone());
+        if (locations.containsKey(id)) return false;
+        if (recordLength + len > record.length) {
+            flush();
+        }
+        System.arraycopy(data, off, record, recordLength, len);
+        locations.put(id, new Location(-1, recordLength, len));
+        recordChunks.add(id);
+        recordLength += len;
+        addedChunks++;
+        addedBytes += len;
+        return true;
+    }
+
+    // Comprime y escribe el registro en armado; después, sus entradas de índice.
+    public synchronized void flush() throws IOException {
+        if (recordLength == 0) return;
+        byte[] frame = blocks.compressBlock(record, recordLength);
+        java.nio.ByteBuffer out = java.nio.ByteBuffer.allocate(RECORD_HEADER_SIZE + frame.length)
+                .putInt(recordLength)
+                .putInt(frame.length)
+                .putInt(BlockCompressor.frameCrc(recordLength, frame))
+                .put(frame);
+        out.flip();
+        long recordAt = packEnd;
+        while (out.hasRemaining()) {
+            pack.write(out, recordAt + out.position());
+        }
+        pack.force(false);
+        packEnd += RECORD_HEADER_SIZE + frame.length;
+        storedBytes += RECORD_HEADER_SIZE + frame.length;
+
+        java.nio.ByteBuffer entries = java.nio.ByteBuffer.allocate(recordChunks.size() * INDEX_ENTRY_SIZE);
+        for (ChunkId id : recordChunks) {
+            Location pending = locations.get(id);
+            int start = entries.position();
+            entries.put(id.hash).putLong(recordAt).putInt(pending.offset).putInt(pending.length);
+            entries.putInt(BlockCompressor.crc32c(entries.array(), start, INDEX_ENTRY_SIZE - 4));
+            locations.put(id, new Location(recordAt, pending.offset, pending.length));
+        }
+        entries.flip();
+        long indexEnd = index.size();
+        while (entries.hasRemaining()) {
+            index.write(entries, indexEnd + entries.position());
+        }
+        index.force(false);
+        cache.put(recordAt, Arrays.copyOf(record, recordLength));
+        recordChunks.clear();
+        recordLength = 0;
+    }
+
+    // Copia del fragmento; el que restaura verifica su hash.
+    public synchronized byte[] read(byte[] hash) throws IOException {
+        Location loc = locations.get(new ChunkId(hash));
+        if (loc == null) {
+            throw new IOException("Fragmento ausente del almacén: " + hex(hash));
+        }
+        byte[] data = loc.record < 0 ? record : record(loc.record);
+        if (loc.offset > data.length - loc.length) {
+            throw new IOException("Fragmento fuera de su registro: " + hex(hash));
+        }
+        return Arrays.copyOfRange(data, loc.offset, loc.offset + loc.length);
+    }
+
+    private byte[] record(long at) throws IOException {
+        byte[] cached = cache.get(at);
+        if (cached != null) return cached;
+        byte[] head = new byte[RECORD_HEADER_SIZE];
+        BlockCompressor.readAt(pack, at, head, 0, head.length);
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(head);
+        int rawLength = buf.getInt();
+        int frameLength = buf.getInt();
+        if (rawLength <= 0 || rawLength > BlockCompressor.MAX_BLOCK_SIZE || frameLength <= 0
+                || frameLength > 5L * rawLength + 1024 || at + RECORD_HEADER_SIZE + frameLength > packEnd) {
+            throw new IOException("Registro inválido en el byte " + at + " del almacén");
+        }
+        byte[] frame = new byte[frameLength];
+        BlockCompressor.readAt(pack, at + RECORD_HEADER_SIZE, frame, 0, frameLength);
+        if (buf.getInt() != BlockCompressor.frameCrc(rawLength, frame)) {
+            throw new IOException("Registro dañado en el byte " + at + " del almacén (CRC32C)");
+        }
+        byte[] data = blocks.decompressBlock(frame, rawLength);
+        cache.put(at, data);
+        return data;
+    }
+
+    static String hex(byte[] hash) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            sb.append(String.format("%02x", hash[i] & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (lock != null) {
+                flush();
+                lock.release();
+            }
+        } finally {
+            pack.close();
+            index.close();
+        }
+    }
+}
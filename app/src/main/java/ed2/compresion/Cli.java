@@ -0,0 +1,483 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import ed2.compresion.AppCompresion.FileManagerCore;
+import ed2.compresion.AppCompresion.LZ77Compressor;
+import ed2.compresion.AppCompresion.LogEntry;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// ============================================================================
+// LÍNEA DE COMANDOS
+// ============================================================================
+
+// Entrada sin interfaz gráfica para servidores y trabajos por lotes. Solo usa
+// FileManagerCore y las clases del núcleo, así no se carga AWT ni Swing (ver
+// el campo frame de AppCompresion). Sin argumentos abre la ventana: el mismo
+// jar sirve para ambos usos.
+public final class Cli {
+
+    // códigos de salida
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILED = 1;   // alguna entrada terminó con error
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_ERROR = 3;    // el lote no pudo completarse
+    static final int EXIT_CANCELLED = 130; // como un proceso cortado con Ctrl-C
+
+    private static final String USAGE = String.join("\n",
+            "uso: java -jar app-compresion.jar <comando> [opciones] <ruta>...",
+            "",
+            "comandos:",
+            "  compress | encrypt | both   procesa archivos o carpetas (.cmp/.enc/.ec)",
+            "  archive                     empaqueta cada ruta en un .cma",
+            "  dedup                       receta .cdd + almacén de fragmentos",
+            "  recover                     recupera en --out (.cmp/.enc/.ec/.cma/.cdd)",
+            "  list                        entradas de un .cma o .cdd",
+            "  verify                      comprueba integridad sin escribir nada",
+            "",
+            "opciones:",
+            "  -l, --level N          nivel de compresión 1-9 (" + LZ77Compressor.DEFAULT_LEVEL + ")",
+            "  -t, --threads N        hilos (" + Runtime.getRuntime().availableProcessors() + ")",
+            "  -b, --block-size N     bytes por bloque, admite K y M (" + BlockCompressor.DEFAULT_BLOCK_SIZE + ")",
+            "  -o, --out DIR          carpeta de destino de recover",
+            "  -i, --incremental      omite archivos sin cambios desde la pasada anterior",
+            "      --password-env VAR contraseña desde una variable de entorno",
+            "      --password-file F  contraseña desde la primera línea de F (- = entrada estándar)",
+            "      --json             un objeto JSON por línea y un resumen al final",
+            "      --metrics F        al terminar, métricas por fase en F (.json o texto de Prometheus)",
+            "  -q, --quiet            sin progreso en la salida de error",
+            "",
+            "Sin opción de contraseña, encrypt/both y los .enc/.ec/.cma indicados la piden",
+            "por consola. Ctrl-C cancela sin dejar salidas a medias; una carpeta cortada se",
+            "retoma repitiendo el mismo comando. Salida: 0 bien, 1 alguna entrada falló,",
+            "2 uso incorrecto, 3 error, 130 cancelado.");
+
+    private static final java.util.Set<String> COMMANDS = new java.util.HashSet<>(java.util.Arrays.asList(
+            "compress", "encrypt", "both", "archive", "dedup", "recover", "list", "verify"));
+
+    private final PrintStream out;
+    private final PrintStream err;
+    final JobControl job = new JobControl();
+
+    private String command;
+    private final List<Path> paths = new ArrayList<>();
+    private int level = LZ77Compressor.DEFAULT_LEVEL;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int blockSize = BlockCompressor.DEFAULT_BLOCK_SIZE;
+    private Path outDir;
+    private boolean incremental;
+    private String passwordEnv;
+    private String passwordFile;
+    private boolean json;
+    private boolean quiet;
+    private Path metricsFile;
+
+    private int entries;
+    private int failed;
+    private int lastPercent = -1;
+
+    Cli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            AppCompresion.main(args);
+            return;
+        }
+        Cli cli = new Cli(System.out, System.err);
+        // Ctrl-C o SIGTERM: se cancela el trabajo y se le da tiempo a borrar sus
+        // temporales y cerrar el diario antes de que la JVM termine.
+        java.util.concurrent.CountDownLatch finished = new java.util.concurrent.CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            cli.job.cancel();
+            try {
+                finished.await(30, java.util.concurrent.TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "ed2-cancel"));
+        int code;
+        try {
+            code = cli.run(args);
+        } finally {
+            finished.countDown();
+        }
+        System.exit(code);
+    }
+
+    int run(String[] args) {
+        try {
+            parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println("error: " + e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (command.equals("help")) {
+            out.println(USAGE);
+            return EXIT_OK;
+        }
+
+        long start = System.nanoTime();
+        int code;
+        FileManagerCore core = null;
+        try {
+            String password = password();
+            core = new FileManagerCore(blockSize, threads, level);
+            FileManagerCore controlled = core.withControl(job);
+            for (Path path : paths) {
+                execute(controlled, path, password);
+            }
+            code = failed > 0 ? EXIT_FAILED : EXIT_OK;
+        } catch (InterruptedIOException e) {
+            err.println("cancelado");
+            code = EXIT_CANCELLED;
+        } catch (IllegalArgumentException e) {
+            err.println("error: " + e.getMessage());
+            code = EXIT_USAGE;
+        } catch (IOException | RuntimeException e) {
+            err.println("error: " + e);
+            code = EXIT_ERROR;
+        } finally {
+            if (core != null) {
+                core.shutdown();
+            }
+        }
+        endProgress();
+        // también tras un fallo o una cancelación: es cuando más interesan
+        if (metricsFile != null && core != null) {
+            try {
+                core.getMetrics().export(metricsFile);
+            } catch (IOException e) {
+                err.println("error: no se pudieron escribir las métricas: " + e);
+                if (code == EXIT_OK) code = EXIT_ERROR;
+            }
+        }
+        if (json) {
+            out.println("{\"summary\":{\"command\":" + quote(command)
+                    + ",\"entries\":" + entries
+                    + ",\"failed\":" + failed
+                    + ",\"seconds\":" + seconds(System.nanoTime() - start)
+                    + ",\"exitCode\":" + code + "}}");
+        } else if (!quiet && !command.equals("list")) {
+            err.println(entries + " entradas, " + failed + " con error");
+        }
+        out.flush();
+        return code;
+    }
+
+    private void execute(FileManagerCore core, Path path, String password) throws IOException {
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("No existe: " + path);
+        }
+        switch (command) {
+            case "recover":
+                core.recoverPath(path, outDir, password, this::progress, this::log);
+                break;
+            case "verify":
+                core.verifyPath(path, password, this::progress, this::log);
+                break;
+            case "list":
+                list(core, path, password);
+                break;
+            default:
+                core.processPath(path, command, password, level, incremental, this::progress, this::log);
+                break;
+        }
+    }
+
+    private void list(FileManagerCore core, Path archive, String password) throws IOException {
+        for (SolidArchive.Entry e : core.listArchive(archive, password)) {
+            if (json) {
+                out.println("{\"archive\":" + quote(archive.toString())
+                        + ",\"path\":" + quote(e.path)
+                        + ",\"directory\":" + e.directory
+                        + ",\"size\":" + e.size
+                        + ",\"modified\":" + quote(Instant.ofEpochMilli(e.modified).toString()) + "}");
+            } else {
+                out.printf("%12s  %s  %s%n", e.directory ? "<dir>" : Long.toString(e.size),
+                        Instant.ofEpochMilli(e.modified), e.path);
+            }
+        }
+    }
+
+    // ========================================================================
+    // Argumentos
+    // ========================================================================
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            switch (a) {
+                case "-h":
+                case "--help":
+                    command = "help";
+                    return;
+                case "-l":
+                case "--level":
+                    level = intValue(a, value(args, ++i, a));
+                    break;
+                case "-t":
+                case "--threads":
+                    threads = intValue(a, value(args, ++i, a));
+                    break;
+                case "-b":
+                case "--block-size":
+                    blockSize = size(a, value(args, ++i, a));
+                    break;
+                case "-o":
+                case "--out":
+                    outDir = Paths.get(value(args, ++i, a));
+                    break;
+                case "-i":
+                case "--incremental":
+                    incremental = true;
+                    break;
+                case "--password-env":
+                    passwordEnv = value(args, ++i, a);
+                    break;
+                case "--password-file":
+                    passwordFile = value(args, ++i, a);
+                    break;
+                case "--json":
+                    json = true;
+                    break;
+                case "--metrics":
+                    metricsFile = Paths.get(value(args, ++i, a));
+                    break;
+                case "-q":
+                case "--quiet":
+                    quiet = true;
+                    break;
+                default:
+                    if (a.startsWith("-") && !a.equals("-")) {
+                        throw new IllegalArgumentException("Opción desconocida: " + a);
+                    }
+                    if (command == null) {
+                        if (!COMMANDS.contains(a)) {
+                            throw new IllegalArgumentException("Comando desconocido: " + a);
+                        }
+                        command = a;
+                    } else {
+                        paths.add(Paths.get(a));
+                    }
+            }
+        }
+        if (command == null) {
+            throw new IllegalArgumentException("Falta el comando");
+        }
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("Falta la ruta");
+        }
+        if (command.equals("recover") && outDir == null) {
+            throw new IllegalArgumentException("recover necesita --out");
+        }
+        if (passwordEnv != null && passwordFile != null) {
+            throw new IllegalArgumentException("Use --password-env o --password-file, no ambas");
+        }
+        // los rangos los validan FileManagerCore y LZ77Compressor; aquí solo se adelanta el mensaje
+        LZ77Compressor.forLevel(level);
+        if (threads < 1) {
+            throw new IllegalArgumentException("--threads debe ser >= 1");
+        }
+        if (blockSize < BlockCompressor.MIN_BLOCK_SIZE || blockSize > BlockCompressor.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("--block-size fuera de rango: " + blockSize);
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Falta el valor de " + option);
+        }
+        return args[i];
+    }
+
+    private static int intValue(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido para " + option + ": " + value);
+        }
+    }
+
+    private static int size(String option, String value) {
+        String v = value.toUpperCase(java.util.Locale.ROOT);
+        int shift = v.endsWith("K") ? 10 : v.endsWith("M") ? 20 : 0;
+        long n = intValue(option, shift == 0 ? v : v.substring(0, v.length() - 1));
+        n <<= shift;
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Valor inválido para " + option + ": " + value);
+        }
+        return (int) n;
+    }
+
+    // ========================================================================
+    // Contraseña
+    // ========================================================================
+
+    // Nunca por argumento: quedaría a la vista en la lista de procesos.
+    private String password() throws IOException {
+        if (passwordEnv != null) {
+            String p = System.getenv(passwordEnv);
+            if (p == null || p.isEmpty()) {
+                throw new IllegalArgumentException("La variable " + passwordEnv + " está vacía o no existe");
+            }
+            return p;
+        }
+        if (passwordFile != null) {
+            BufferedReader reader = passwordFile.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                    : Files.newBufferedReader(Paths.get(passwordFile), StandardCharsets.UTF_8);
+            try {
+                String p = reader.readLine();
+                if (p == null || p.isEmpty()) {
+                    throw new IllegalArgumentException("Contraseña vacía en " + passwordFile);
+                }
+                return p;
+            } finally {
+                if (!passwordFile.equals("-")) {
+                    reader.close();
+                }
+            }
+        }
+        if (!needsPassword()) {
+            return null;
+        }
+        Console console = System.console();
+        if (console == null) {
+            throw new IllegalArgumentException("Se necesita contraseña: use --password-env o --password-file");
+        }
+        char[] p = console.readPassword("Contraseña: ");
+        if (p == null || p.length == 0) {
+            throw new IllegalArgumentException("Contraseña vacía");
+        }
+        return new String(p);
+    }
+
+    // En carpetas no se sabe de antemano: hay que indicarla con una opción.
+    private boolean needsPassword() {
+        if (command.equals("encrypt") || command.equals("both")) {
+            return true;
+        }
+        if (command.equals("recover") || command.equals("verify") || command.equals("list")) {
+            for (Path p : paths) {
+                String name = p.getFileName() == null ? "" : p.getFileName().toString();
+                if (name.endsWith(".enc") || name.endsWith(".ec")
+                        || (name.endsWith(SolidArchive.EXTENSION) && isEncrypted(p))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEncrypted(Path file) {
+        try (java.io.InputStream in = new java.io.BufferedInputStream(Files.newInputStream(file))) {
+            return AppCompresion.SimpleEncryptor.isEncrypted(in);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // ========================================================================
+    // Salida
+    // ========================================================================
+
+    private synchronized void log(LogEntry e) {
+        entries++;
+        if (!e.success) {
+            failed++;
+        }
+        endProgress();
+        if (json) {
+            out.println("{\"timestamp\":" + quote(e.timestamp.toString())
+                    + ",\"operation\":" + quote(e.operation)
+                    + ",\"source\":" + quote(e.sourceName)
+                    + ",\"destination\":" + quote(e.destName)
+                    + ",\"seconds\":" + e.durationSeconds
+                    + ",\"rate\":" + (e.compressionRate.equals("-") ? "null" : e.compressionRate.replace(',', '.'))
+                    + ",\"inputBytes\":" + (e.inputBytes < 0 ? "null" : Long.toString(e.inputBytes))
+                    + ",\"outputBytes\":" + (e.outputBytes < 0 ? "null" : Long.toString(e.outputBytes))
+                    + ",\"success\":" + e.success + "}");
+        } else {
+            out.printf("%-20s %-6s %8.2f s  %7s  %s%s%n",
+                    e.operation,
+                    e.success ? "OK" : "ERROR",
+                    e.durationSeconds,
+                    e.compressionRate.equals("-") ? "-" : e.compressionRate + "%",
+                    e.sourceName,
+                    e.destName.isEmpty() ? "" : " -> " + e.destName);
+        }
+    }
+
+    // Solo en una terminal y cuando cambia el porcentaje: con salida redirigida
+    // el progreso no se escribe.
+    private synchronized void progress(int percent, String message) {
+        if (quiet || System.console() == null || percent == lastPercent) {
+            return;
+        }
+        lastPercent = percent;
+        err.print("\r[" + String.format("%3d", percent) + "%] " + message + "\033[K");
+        err.flush();
+    }
+
+    private synchronized void endProgress() {
+        if (lastPercent >= 0) {
+            err.print("\r\033[K");
+            err.flush();
+            lastPercent = -1;
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(java.util.Locale.ROOT, "%.3f", nanos / 1e9);
+    }
+
+    static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
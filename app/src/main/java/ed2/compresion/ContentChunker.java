@@ -0,0 +1,56 @@
+package ed2.compresion;
+
+// ============================================================================
+// DEDUPLICACIÓN POR FRAGMENTOS DEFINIDOS POR CONTENIDO
+// ============================================================================
+
+// Corta un flujo donde lo indica un hash rodante Gear (estilo FastCDC): el
+// corte depende solo de los últimos 64 bytes, así una inserción o borrado
+// mueve los cortes cercanos y el resto de los fragmentos se repite igual en
+// archivos parecidos. Entre MIN_SIZE y AVG_SIZE se usa una máscara más
+// exigente y después una más laxa, lo que junta los tamaños alrededor del
+// promedio.
+public final class ContentChunker {
+
+    public static final int MIN_SIZE = 2 * 1024;
+    public static final int AVG_SIZE = 8 * 1024;
+    public static final int MAX_SIZE = 64 * 1024;
+    // bits altos: son los que dependen de los 64 bytes anteriores
+    private static final long MASK_STRICT = -1L << (64 - 15);
+    private static final long MASK_LOOSE = -1L << (64 - 11);
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // tabla fija (SplitMix64): los cortes deben coincidir entre ejecuciones
+        long seed = 0x45443243444331L;
+        for (int i = 0; i < GEAR.length; i++) {
+            long z = (seed += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private ContentChunker() {
+    }
+
+    // Largo del próximo fragmento en b[off, off + len). Salvo al final del
+    // flujo, len debe ser al menos MAX_SIZE para que el corte no dependa de
+    // cuánto se leyó.
+    public static int cut(byte[] b, int off, int len) {
+        if (len <= MIN_SIZE) return len;
+        int n = Math.min(len, MAX_SIZE);
+        int normal = Math.min(n, AVG_SIZE);
+        long h = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            h = (h << 1) + GEAR[b[off + i] & 0xFF];
+            if ((h & MASK_STRICT) == 0) return i + 1;
+        }
+        for (; i < n; i++) {
+            h = (h << 1) + GEAR[b[off + i] & 0xFF];
+            if ((h & MASK_LOOSE) == 0) return i + 1;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,294 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import ed2.compresion.AppCompresion.ProgressCallback;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+// ============================================================================
+// RECETAS DEDUPLICADAS (.cdd)
+// ============================================================================
+
+// Receta de un árbol deduplicado: int "ED2D", byte versión y, como
+// contenedor por bloques, int entradas, long bytes totales y por entrada
+// tipo, ruta, tamaño y mtime (como en .cma); los archivos agregan int
+// cantidad de fragmentos y por fragmento su SHA-256 y su largo. El contenido
+// vive en el ChunkStore de la misma carpeta, compartido entre recetas:
+// respaldos sucesivos de datos parecidos solo agregan los fragmentos nuevos.
+public class DedupArchive {
+
+    public static final int MAGIC = 0x45443244; // "ED2D"
+    public static final int FORMAT_VERSION = 1;
+    public static final String EXTENSION = ".cdd";
+
+    private static final int TYPE_FILE = 0;
+    private static final int TYPE_DIRECTORY = 1;
+    private static final int MAX_ENTRIES = 10_000_000;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final BlockCompressor blocks;
+
+    public DedupArchive(BlockCompressor blocks) {
+        this.blocks = blocks;
+    }
+
+    // "<nombre>-yyyyMMdd-HHmmss.cdd", como lo escribe dedup, se restaura en
+    // "<nombre>"; un nombre sin fecha solo pierde la extensión.
+    private static final java.util.regex.Pattern STAMPED =
+            java.util.regex.Pattern.compile("(.+)-[0-9]{8}-[0-9]{6}");
+
+    public static String restoredName(String fileName) {
+        String base = fileName.endsWith(EXTENSION)
+                ? fileName.substring(0, fileName.length() - EXTENSION.length()) : fileName;
+        java.util.regex.Matcher m = STAMPED.matcher(base);
+        return m.matches() ? m.group(1) : base;
+    }
+
+    // Corta cada archivo de SolidArchive.scan(source), guarda los fragmentos
+    // nuevos en store y escribe la receta en out; devuelve los bytes
+    // originales. La receta se arma en un temporal: puede tener millones de
+    // referencias.
+    public long write(Path source, java.util.List<SolidArchive.Entry> entries, OutputStream out,
+                      ChunkStore store, ProgressCallback progress) throws IOException {
+        Path root = Files.isDirectory(source) ? source : source.toAbsolutePath().getParent();
+        long total = 0;
+        for (SolidArchive.Entry e : entries) {
+            total += e.size;
+        }
+        Path recipe = Files.createTempFile("ed2", EXTENSION);
+        try {
+            long done = 0;
+            try (DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(recipe), 64 * 1024))) {
+                dos.writeInt(entries.size());
+                dos.writeLong(total);
+                java.security.MessageDigest sha = sha256();
+                byte[] buffer = new byte[BUFFER_SIZE + ContentChunker.MAX_SIZE];
+                ByteArrayOutputStream refs = new ByteArrayOutputStream();
+                DataOutputStream refsOut = new DataOutputStream(refs);
+                for (SolidArchive.Entry e : entries) {
+                    dos.writeByte(e.directory ? TYPE_DIRECTORY : TYPE_FILE);
+                    dos.writeUTF(e.path);
+                    dos.writeLong(e.size);
+                    dos.writeLong(e.modified);
+                    if (e.directory) continue;
+                    refs.reset();
+                    int chunks = 0;
+                    long size = 0;
+                    try (InputStream in = Files.newInputStream(root.resolve(e.path))) {
+                        int start = 0;
+                        int end = 0;
+                        boolean eof = false;
+                        while (true) {
+                            if (!eof && end - start < ContentChunker.MAX_SIZE) {
+                                System.arraycopy(buffer, start, buffer, 0, end - start);
+                                end -= start;
+                                start = 0;
+                                int n = in.readNBytes(buffer, end, buffer.length - end);
+                                end += n;
+                                eof = end < buffer.length;
+                            }
+                            if (start == end) break;
+                            int len = ContentChunker.cut(buffer, start, end - start);
+                            sha.update(buffer, start, len);
+                            byte[] hash = sha.digest();
+                            store.add(hash, buffer, start, len);
+                            refsOut.write(hash);
+                            refsOut.writeInt(len);
+                            chunks++;
+                            size += len;
+                            start += len;
+                            if (chunks % 64 == 0) {
+                                report(progress, done + size, total);
+                            }
+                        }
+                    }
+                    if (size != e.size) {
+                        throw new IOException("El archivo cambió durante la deduplicación: " + e.path);
+                    }
+                    done += size;
+                    dos.writeInt(chunks);
+                    refs.writeTo(dos);
+                    report(progress, done, total);
+                }
+            }
+            // la receta no puede apuntar a fragmentos que no están en disco
+            store.flush();
+            DataOutputStream dos = new DataOutputStream(out);
+            dos.writeInt(MAGIC);
+            dos.writeByte(FORMAT_VERSION);
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(recipe), 64 * 1024)) {
+                blocks.compress(in, dos, Files.size(recipe), null);
+            }
+            dos.flush();
+        } finally {
+            Files.deleteIfExists(recipe);
+        }
+        return total;
+    }
+
+    // Restaura el árbol bajo destDir verificando el SHA-256 de cada fragmento;
+    // devuelve los bytes restaurados.
+    public long extract(InputStream in, Path destDir, ChunkStore store,
+                        ProgressCallback progress) throws IOException {
+        return unpack(in, dis -> restore(dis, destDir, store, progress));
+    }
+
+    // Como extract, pero sin escribir: lee y comprueba cada fragmento.
+    public long verify(InputStream in, ChunkStore store, ProgressCallback progress) throws IOException {
+        return unpack(in, dis -> restore(dis, null, store, progress));
+    }
+
+    // Entradas de la receta, sin tocar el almacén.
+    public java.util.List<SolidArchive.Entry> entries(InputStream in) throws IOException {
+        return unpack(in, DedupArchive::readEntries);
+    }
+
+    private interface RecipeReader<T> {
+        T read(DataInputStream dis) throws IOException;
+    }
+
+    private <T> T unpack(InputStream in, RecipeReader<T> reader) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("No es una receta " + EXTENSION);
+        }
+        int version = header.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Versión de receta no soportada: " + version);
+        }
+        Path recipe = Files.createTempFile("ed2", EXTENSION);
+        try {
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(recipe), 64 * 1024)) {
+                blocks.decompress(header, os, 0, null);
+            }
+            try (DataInputStream dis = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(recipe), 64 * 1024))) {
+                return reader.read(dis);
+            }
+        } finally {
+            Files.deleteIfExists(recipe);
+        }
+    }
+
+    private static java.util.List<SolidArchive.Entry> readEntries(DataInputStream dis) throws IOException {
+        int count = readCount(dis);
+        dis.readLong();
+        java.util.List<SolidArchive.Entry> entries = new ArrayList<>();
+        byte[] ref = new byte[ChunkStore.HASH_SIZE + 4];
+        for (int i = 0; i < count; i++) {
+            int type = dis.readUnsignedByte();
+            SolidArchive.Entry e = new SolidArchive.Entry(dis.readUTF(), type == TYPE_DIRECTORY,
+                    dis.readLong(), dis.readLong());
+            if (type == TYPE_FILE) {
+                int chunks = dis.readInt();
+                for (int c = 0; c < chunks; c++) {
+                    dis.readFully(ref);
+                }
+            }
+            entries.add(e);
+        }
+        return entries;
+    }
+
+    private static int readCount(DataInputStream dis) throws IOException {
+        int count = dis.readInt();
+        if (count < 0 || count > MAX_ENTRIES) {
+            throw new IOException("Receta inválida: " + count + " entradas");
+        }
+        return count;
+    }
+
+    // Con destDir == null solo se comprueban los fragmentos.
+    private static long restore(DataInputStream dis, Path destDir, ChunkStore store,
+                                ProgressCallback progress) throws IOException {
+        int count = readCount(dis);
+        long total = dis.readLong();
+        if (total < 0) {
+            throw new IOException("Receta inválida: " + total + " bytes");
+        }
+        java.security.MessageDigest sha = sha256();
+        java.util.List<SolidArchive.Entry> directories = new ArrayList<>();
+        byte[] hash = new byte[ChunkStore.HASH_SIZE];
+        long done = 0;
+        for (int i = 0; i < count; i++) {
+            int type = dis.readUnsignedByte();
+            String path = dis.readUTF();
+            long size = dis.readLong();
+            long modified = dis.readLong();
+            if ((type != TYPE_FILE && type != TYPE_DIRECTORY) || size < 0 || !SolidArchive.isSafe(path)) {
+                throw new IOException("Entrada inválida en la receta: " + path);
+            }
+            Path target = destDir == null ? null : destDir.resolve(path);
+            if (type == TYPE_DIRECTORY) {
+                if (target != null) {
+                    Files.createDirectories(target);
+                    directories.add(new SolidArchive.Entry(path, true, 0, modified));
+                }
+                continue;
+            }
+            if (target != null) {
+                Files.createDirectories(target.getParent());
+            }
+            int chunks = dis.readInt();
+            if (chunks < 0) {
+                throw new IOException("Entrada inválida en la receta: " + path);
+            }
+            long written = 0;
+            try (OutputStream os = target == null ? OutputStream.nullOutputStream()
+                    : new BufferedOutputStream(Files.newOutputStream(target), 64 * 1024)) {
+                for (int c = 0; c < chunks; c++) {
+                    dis.readFully(hash);
+                    int length = dis.readInt();
+                    byte[] data = store.read(hash);
+                    if (data.length != length || !java.security.MessageDigest.isEqual(sha.digest(data), hash)) {
+                        throw new IOException("Fragmento " + ChunkStore.hex(hash) + " dañado en el almacén");
+                    }
+                    os.write(data);
+                    written += length;
+                    if (c % 64 == 63) {
+                        report(progress, done + written, total);
+                    }
+                }
+            }
+            if (written != size) {
+                throw new IOException("Contenido incompleto para " + path);
+            }
+            if (target != null) {
+                Files.setLastModifiedTime(target, java.nio.file.attribute.FileTime.fromMillis(modified));
+            }
+            done += written;
+            report(progress, done, total);
+        }
+        for (SolidArchive.Entry e : directories) {
+            Files.setLastModifiedTime(destDir.resolve(e.path),
+                    java.nio.file.attribute.FileTime.fromMillis(e.modified));
+        }
+        return done;
+    }
+
+    private static java.security.MessageDigest sha256() {
+        try {
+            return java.security.MessageDigest.getInstance("SHA-256");
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void report(ProgressCallback progress, long done, long total) {
+        if (progress != null && total > 0) {
+            int pct = (int) Math.min(100, done * 100 / total);
+            progress.onProgress(pct, "Deduplicando: " + pct + "%");
+        }
+    }
+}
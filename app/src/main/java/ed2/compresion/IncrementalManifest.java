@@ -0,0 +1,215 @@
+package ed2.compresion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+// ============================================================================
+// MANIFIESTO INCREMENTAL
+// ============================================================================
+
+// Estado de la última pasada incremental de processPath sobre una carpeta,
+// guardado en FILE_NAME dentro de ella. Formato: int "ED2M", byte versión,
+// operación (UTF), byte nivel, long momento de guardado, int entradas y por
+// entrada: short prefijo compartido con la ruta anterior + resto de la ruta
+// (UTF), long tamaño, long mtime, 16 bytes de SHA-256 del contenido y long
+// tamaño de la salida; cierra un int CRC32C de todo lo anterior. Las rutas
+// se guardan en el orden en que se agregaron (el del recorrido, carpeta por
+// carpeta): el prefijo compartido achica el archivo sin tener que ordenar
+// millones de rutas.
+public final class IncrementalManifest {
+
+    public static final String FILE_NAME = ".ed2-manifest";
+    private static final int MAGIC = 0x4544324D; // "ED2M"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HASH_SIZE = 16;
+    // Una modificación hecha poco antes del guardado puede no cambiar la mtime
+    // (resolución del sistema de archivos): esas entradas se confirman por hash.
+    private static final long RACY_WINDOW_MS = 2000;
+
+    public static final class Entry {
+        public final long size;
+        public final long modified;
+        final byte[] hash;
+        public final long outputSize;
+
+        Entry(long size, long modified, byte[] hash, long outputSize) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.outputSize = outputSize;
+        }
+
+        boolean sameContent(byte[] other) {
+            return java.security.MessageDigest.isEqual(hash, other);
+        }
+    }
+
+    private final String operation;
+    private final int level;
+    private final long savedAt;
+    // los trabajadores de processTree agregan entradas a la vez
+    private final Map<String, Entry> entries;
+    private final java.util.Queue<String> order = new java.util.concurrent.ConcurrentLinkedQueue<>();
+
+    public IncrementalManifest(String operation, int level) {
+        this(operation, level, 0, 16);
+    }
+
+    private IncrementalManifest(String operation, int level, long savedAt, int capacity) {
+        this.operation = operation;
+        this.level = level;
+        this.savedAt = savedAt;
+        this.entries = new java.util.concurrent.ConcurrentHashMap<>(capacity);
+    }
+
+    // Las salidas dependen de la operación y el nivel: con otros valores el
+    // manifiesto anterior no sirve y se procesa todo.
+    public boolean matches(String operation, int level) {
+        return this.operation.equals(operation) && this.level == level;
+    }
+
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public void put(String path, Entry entry) {
+        if (entries.put(path, entry) == null) {
+            order.add(path);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public java.util.Set<String> paths() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    // La mtime solo alcanza para dar por igual un archivo si es anterior al
+    // margen de guardado; si no, hay que comparar el contenido.
+    public boolean trustsModified(Entry e) {
+        return e.modified < savedAt - RACY_WINDOW_MS;
+    }
+
+    // SHA-256 truncado a HASH_SIZE bytes: solo se compara contra la versión
+    // anterior del mismo archivo.
+    public static java.security.MessageDigest newDigest() {
+        try {
+            return java.security.MessageDigest.getInstance("SHA-256");
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static byte[] digestOf(java.security.MessageDigest digest) {
+        return Arrays.copyOf(digest.digest(), HASH_SIZE);
+    }
+
+    public static byte[] hash(Path file) throws IOException {
+        java.security.MessageDigest digest = newDigest();
+        byte[] buffer = new byte[256 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return digestOf(digest);
+    }
+
+    // Devuelve los bytes escritos. El CRC se calcula bajo el buffer, por bloques.
+    public long save(OutputStream out) throws IOException {
+        java.util.zip.CheckedOutputStream checked = new java.util.zip.CheckedOutputStream(
+                out, new java.util.zip.CRC32C());
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(checked, 64 * 1024));
+        dos.writeInt(MAGIC);
+        dos.writeByte(FORMAT_VERSION);
+        dos.writeUTF(operation);
+        dos.writeByte(level);
+        dos.writeLong(System.currentTimeMillis());
+        dos.writeInt(entries.size());
+        String previous = "";
+        for (String path : order) {
+            Entry e = entries.get(path);
+            int shared = sharedPrefix(previous, path);
+            dos.writeShort(shared);
+            dos.writeUTF(path.substring(shared));
+            dos.writeLong(e.size);
+            dos.writeLong(e.modified);
+            dos.write(e.hash);
+            dos.writeLong(e.outputSize);
+            previous = path;
+        }
+        dos.flush();
+        dos.writeInt((int) checked.getChecksum().getValue());
+        dos.flush();
+        return dos.size();
+    }
+
+    private static int sharedPrefix(String a, String b) {
+        int max = Math.min(Math.min(a.length(), b.length()), 0xFFFF);
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        // no cortar un par sustituto: el resto se escribe como UTF válido
+        if (i > 0 && Character.isHighSurrogate(b.charAt(i - 1))) i--;
+        return i;
+    }
+
+    public static IncrementalManifest load(InputStream in) throws IOException {
+        java.util.zip.CheckedInputStream checked = new java.util.zip.CheckedInputStream(
+                new BufferedInputStream(in, 64 * 1024), new java.util.zip.CRC32C());
+        DataInputStream dis = new DataInputStream(checked);
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("No es un manifiesto incremental");
+        }
+        int version = dis.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Versión de manifiesto no soportada: " + version);
+        }
+        String operation = dis.readUTF();
+        int level = dis.readUnsignedByte();
+        long savedAt = dis.readLong();
+        int count = dis.readInt();
+        if (count < 0) {
+            throw new IOException("Manifiesto inválido: " + count + " entradas");
+        }
+        IncrementalManifest manifest = new IncrementalManifest(operation, level, savedAt,
+                Math.min(count, 1 << 24) * 4 / 3 + 1);
+        String previous = "";
+        for (int i = 0; i < count; i++) {
+            int shared = dis.readUnsignedShort();
+            if (shared > previous.length()) {
+                throw new IOException("Manifiesto inválido en la entrada " + i);
+            }
+            String path = previous.substring(0, shared) + dis.readUTF();
+            long size = dis.readLong();
+            long modified = dis.readLong();
+            byte[] hash = new byte[HASH_SIZE];
+            dis.readFully(hash);
+            long outputSize = dis.readLong();
+            manifest.put(path, new Entry(size, modified, hash, outputSize));
+            previous = path;
+        }
+        int expected = (int) checked.getChecksum().getValue();
+        if (dis.readInt() != expected) {
+            throw new IOException("Manifiesto dañado (CRC32C)");
+        }
+        if (manifest.size() != count) {
+            throw new IOException("Manifiesto inválido: rutas repetidas");
+        }
+        return manifest;
+    }
+}
@@ -0,0 +1,67 @@
+package ed2.compresion;
+
+import java.io.InterruptedIOException;
+
+// ============================================================================
+// CONTROL DE TRABAJOS
+// ============================================================================
+
+// Control de un trabajo en curso desde otro hilo (la interfaz, Ctrl-C). La
+// cancelación es cooperativa: el trabajo la consulta entre bloques y entre
+// fragmentos cifrados, así nunca se corta a mitad de una escritura y los
+// temporales se borran al salir. La pausa detiene a quien pase por
+// checkpoint() hasta resume(); en carpetas eso ocurre entre archivos y,
+// dentro de un archivo, entre bloques.
+public final class JobControl {
+
+    private volatile boolean cancelled;
+    private volatile boolean paused;
+
+    public void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    // Sin esperar: para las tareas que corren en un pool compartido.
+    public void throwIfCancelled() throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Operación cancelada");
+        }
+    }
+
+    // Espera mientras el trabajo esté en pausa; lanza si se canceló.
+    public void checkpoint() throws InterruptedIOException {
+        if (paused) {
+            synchronized (this) {
+                try {
+                    while (paused && !cancelled) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Operación interrumpida");
+                }
+            }
+        }
+        throwIfCancelled();
+    }
+}
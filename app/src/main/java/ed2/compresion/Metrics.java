@@ -0,0 +1,429 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.FileManagerCore;
+import ed2.compresion.AppCompresion.LZ77Compressor;
+import ed2.compresion.AppCompresion.LogCallback;
+import ed2.compresion.AppCompresion.LogEntry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// ============================================================================
+// MÉTRICAS
+// ============================================================================
+
+// Contadores de un FileManagerCore desde su creación: tiempo por fase en
+// nanosegundos, bytes por bloque y por archivo, tokens y coincidencias de
+// LZ77, bytes asignados al codificar y decodificar bloques, e histogramas de
+// latencia por bloque y de velocidad por archivo. Todo se suma en LongAdder
+// desde cualquier hilo: medir cuesta un par de nanoTime por bloque o por
+// fragmento cifrado, nada por byte.
+// Los tiempos son sumas por hilo, así que con varios hilos superan al reloj;
+// read y write miden la espera en el flujo de abajo, que incluye lo que éste
+// haga en línea (un .ec se descifra mientras se lee).
+// Con una grabación JFR activa (-XX:StartFlightRecording) cada bloque y cada
+// archivo quedan además como eventos ed2.Block y ed2.File.
+public final class Metrics {
+
+    public enum Phase {
+        READ("read"),
+        WRITE("write"),
+        LZ77("lz77"),
+        HUFFMAN("huffman"),
+        // Huffman + LZ77 inversos, que en una trama DEFLATE van juntos
+        DECODE("decode"),
+        ENCRYPT("encrypt"),
+        DECRYPT("decrypt"),
+        KEY_DERIVATION("kdf");
+
+        public final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final int COMPRESS = 0;
+    private static final int DECOMPRESS = 1;
+    private static final String[] DIRECTIONS = {"compress", "decompress"};
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final long created = System.nanoTime();
+    private final java.util.concurrent.atomic.LongAdder[] phaseNanos = adders(Phase.values().length);
+    private final java.util.concurrent.atomic.LongAdder[] phaseCalls = adders(Phase.values().length);
+
+    private final java.util.concurrent.atomic.LongAdder[] blocks = adders(2);
+    private final java.util.concurrent.atomic.LongAdder[] rawBytes = adders(2);
+    private final java.util.concurrent.atomic.LongAdder[] encodedBytes = adders(2);
+    private final java.util.concurrent.atomic.LongAdder[] allocatedBytes = adders(2);
+    private final Histogram[] blockSeconds = {
+            new Histogram(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5),
+            new Histogram(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5)};
+
+    private final java.util.concurrent.atomic.LongAdder tokens = new java.util.concurrent.atomic.LongAdder();
+    private final java.util.concurrent.atomic.LongAdder matches = new java.util.concurrent.atomic.LongAdder();
+    private final java.util.concurrent.atomic.LongAdder matchBytes = new java.util.concurrent.atomic.LongAdder();
+
+    private final java.util.concurrent.atomic.LongAdder filesOk = new java.util.concurrent.atomic.LongAdder();
+    private final java.util.concurrent.atomic.LongAdder filesFailed = new java.util.concurrent.atomic.LongAdder();
+    private final java.util.concurrent.atomic.LongAdder filesCancelled = new java.util.concurrent.atomic.LongAdder();
+    private final java.util.concurrent.atomic.LongAdder fileInput = new java.util.concurrent.atomic.LongAdder();
+    private final java.util.concurrent.atomic.LongAdder fileOutput = new java.util.concurrent.atomic.LongAdder();
+    // MB/s sobre el lado mayor de cada archivo (el original)
+    private final Histogram fileThroughput = new Histogram(1, 5, 10, 25, 50, 100, 250, 500, 1000);
+
+    private static java.util.concurrent.atomic.LongAdder[] adders(int n) {
+        java.util.concurrent.atomic.LongAdder[] a = new java.util.concurrent.atomic.LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = new java.util.concurrent.atomic.LongAdder();
+        }
+        return a;
+    }
+
+    // Suma lo transcurrido desde start (System.nanoTime) y devuelve el
+    // instante actual, para encadenar fases.
+    public long time(Phase phase, long start) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()].add(now - start);
+        phaseCalls[phase.ordinal()].increment();
+        return now;
+    }
+
+    public long nanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    // Bloque comprimido; tokens es null si el bloque no pasó por LZ77.
+    public void compressed(int raw, int encoded, long start, long allocatedBefore,
+                           LZ77Compressor.TokenBuffer tokens) {
+        long m = 0;
+        long bytes = 0;
+        if (tokens != null) {
+            for (int i = 0; i < tokens.size(); i++) {
+                int len = tokens.length(i);
+                if (len > 0) {
+                    m++;
+                    bytes += len;
+                }
+            }
+            this.tokens.add(tokens.size());
+            matches.add(m);
+            matchBytes.add(bytes);
+        }
+        block(COMPRESS, raw, encoded, start, allocatedBefore);
+    }
+
+    public void decoded(int raw, int encoded, long start, long allocatedBefore) {
+        block(DECOMPRESS, raw, encoded, start, allocatedBefore);
+    }
+
+    private void block(int direction, int raw, int encoded, long start, long allocatedBefore) {
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+        blocks[direction].increment();
+        rawBytes[direction].add(raw);
+        encodedBytes[direction].add(encoded);
+        if (allocated > 0) allocatedBytes[direction].add(allocated);
+        blockSeconds[direction].observe(elapsed / 1e9);
+        if (JFR) Events.block(DIRECTIONS[direction], raw, encoded, elapsed, allocated);
+    }
+
+    // Registra el resultado de un archivo; los resúmenes (sin bytes) y los
+    // archivos omitidos no cuentan.
+    public void record(LogEntry entry) {
+        if (entry.success) {
+            if (entry.inputBytes < 0) return;
+            filesOk.increment();
+            fileInput.add(entry.inputBytes);
+            fileOutput.add(Math.max(0, entry.outputBytes));
+            if (entry.durationSeconds > 0) {
+                fileThroughput.observe(Math.max(entry.inputBytes, entry.outputBytes) / MB / entry.durationSeconds);
+            }
+        } else if (entry.operation.equals("CANCELLED")) {
+            filesCancelled.increment();
+        } else if (!entry.operation.equals("SKIP")) {
+            filesFailed.increment();
+        }
+        if (JFR) Events.file(entry);
+    }
+
+    // El mismo destino, registrando antes cada entrada.
+    public LogCallback recording(LogCallback logger) {
+        return entry -> {
+            record(entry);
+            logger.onLog(entry);
+        };
+    }
+
+    public double averageMatchLength() {
+        long m = matches.sum();
+        return m == 0 ? 0 : matchBytes.sum() / (double) m;
+    }
+
+    // ====================================================================
+    // Exportación
+    // ====================================================================
+
+    // Un nombre terminado en .json recibe JSON; cualquier otro, el formato
+    // de texto de Prometheus (p. ej. un .prom para el textfile collector de
+    // node_exporter). Se reemplaza atómicamente: quien lo lea nunca ve un
+    // archivo a medias.
+    public void export(Path file) throws IOException {
+        String text = file.getFileName().toString().endsWith(".json") ? toJson() : toPrometheus();
+        byte[] bytes = text.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        FileManagerCore.writeVerified(file, tmp -> {
+            Files.write(tmp, bytes);
+            return bytes.length;
+        });
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("{\n  \"elapsedNanos\": ").append(System.nanoTime() - created);
+        sb.append(",\n  \"phases\": {");
+        for (Phase p : Phase.values()) {
+            sb.append(p.ordinal() == 0 ? "\n" : ",\n")
+                    .append("    \"").append(p.label).append("\": {\"nanos\": ").append(phaseNanos[p.ordinal()].sum())
+                    .append(", \"calls\": ").append(phaseCalls[p.ordinal()].sum()).append('}');
+        }
+        sb.append("\n  },\n  \"blocks\": {");
+        for (int d = 0; d < 2; d++) {
+            sb.append(d == 0 ? "\n" : ",\n")
+                    .append("    \"").append(DIRECTIONS[d]).append("\": {\"count\": ").append(blocks[d].sum())
+                    .append(", \"rawBytes\": ").append(rawBytes[d].sum())
+                    .append(", \"encodedBytes\": ").append(encodedBytes[d].sum())
+                    .append(", \"allocatedBytes\": ").append(allocatedBytes[d].sum())
+                    .append(", \"seconds\": ");
+            blockSeconds[d].appendJson(sb);
+            sb.append('}');
+        }
+        sb.append("\n  },\n  \"lz77\": {\"tokens\": ").append(tokens.sum())
+                .append(", \"matches\": ").append(matches.sum())
+                .append(", \"matchBytes\": ").append(matchBytes.sum())
+                .append(", \"averageMatchLength\": ").append(number(averageMatchLength())).append('}');
+        sb.append(",\n  \"files\": {\"ok\": ").append(filesOk.sum())
+                .append(", \"failed\": ").append(filesFailed.sum())
+                .append(", \"cancelled\": ").append(filesCancelled.sum())
+                .append(", \"inputBytes\": ").append(fileInput.sum())
+                .append(", \"outputBytes\": ").append(fileOutput.sum())
+                .append(", \"throughputMBps\": ");
+        fileThroughput.appendJson(sb);
+        sb.append("}\n}\n");
+        return sb.toString();
+    }
+
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        help(sb, "ed2_elapsed_seconds", "gauge", "Tiempo desde que se crearon las métricas.");
+        sb.append("ed2_elapsed_seconds ").append(seconds(System.nanoTime() - created)).append('\n');
+        help(sb, "ed2_phase_seconds_total", "counter", "Tiempo por fase, sumado entre hilos.");
+        for (Phase p : Phase.values()) {
+            sb.append("ed2_phase_seconds_total{phase=\"").append(p.label).append("\"} ")
+                    .append(seconds(phaseNanos[p.ordinal()].sum())).append('\n');
+        }
+        help(sb, "ed2_phase_calls_total", "counter", "Veces que se midió cada fase.");
+        for (Phase p : Phase.values()) {
+            sb.append("ed2_phase_calls_total{phase=\"").append(p.label).append("\"} ")
+                    .append(phaseCalls[p.ordinal()].sum()).append('\n');
+        }
+        perDirection(sb, "ed2_blocks_total", "Bloques procesados.", blocks);
+        perDirection(sb, "ed2_block_raw_bytes_total", "Bytes originales de los bloques.", rawBytes);
+        perDirection(sb, "ed2_block_encoded_bytes_total", "Bytes codificados de los bloques.", encodedBytes);
+        perDirection(sb, "ed2_block_allocated_bytes_total", "Bytes asignados al procesar bloques.", allocatedBytes);
+        help(sb, "ed2_block_seconds", "histogram", "Latencia por bloque.");
+        for (int d = 0; d < 2; d++) {
+            blockSeconds[d].appendPrometheus(sb, "ed2_block_seconds", "direction=\"" + DIRECTIONS[d] + "\",");
+        }
+        help(sb, "ed2_lz77_tokens_total", "counter", "Tokens emitidos por LZ77.");
+        sb.append("ed2_lz77_tokens_total ").append(tokens.sum()).append('\n');
+        help(sb, "ed2_lz77_matches_total", "counter", "Coincidencias emitidas por LZ77.");
+        sb.append("ed2_lz77_matches_total ").append(matches.sum()).append('\n');
+        help(sb, "ed2_lz77_match_bytes_total", "counter", "Bytes cubiertos por coincidencias.");
+        sb.append("ed2_lz77_match_bytes_total ").append(matchBytes.sum()).append('\n');
+        help(sb, "ed2_lz77_average_match_length", "gauge", "Longitud media de las coincidencias.");
+        sb.append("ed2_lz77_average_match_length ").append(number(averageMatchLength())).append('\n');
+        help(sb, "ed2_files_total", "counter", "Archivos por resultado.");
+        sb.append("ed2_files_total{result=\"ok\"} ").append(filesOk.sum()).append('\n');
+        sb.append("ed2_files_total{result=\"failed\"} ").append(filesFailed.sum()).append('\n');
+        sb.append("ed2_files_total{result=\"cancelled\"} ").append(filesCancelled.sum()).append('\n');
+        help(sb, "ed2_file_input_bytes_total", "counter", "Bytes leídos por archivos terminados.");
+        sb.append("ed2_file_input_bytes_total ").append(fileInput.sum()).append('\n');
+        help(sb, "ed2_file_output_bytes_total", "counter", "Bytes escritos por archivos terminados.");
+        sb.append("ed2_file_output_bytes_total ").append(fileOutput.sum()).append('\n');
+        help(sb, "ed2_file_throughput_mbps", "histogram", "Velocidad por archivo en MB/s.");
+        fileThroughput.appendPrometheus(sb, "ed2_file_throughput_mbps", "");
+        return sb.toString();
+    }
+
+    private static void help(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void perDirection(StringBuilder sb, String name, String help,
+                                     java.util.concurrent.atomic.LongAdder[] values) {
+        help(sb, name, "counter", help);
+        for (int d = 0; d < 2; d++) {
+            sb.append(name).append("{direction=\"").append(DIRECTIONS[d]).append("\"} ")
+                    .append(values[d].sum()).append('\n');
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return number(nanos / 1e9);
+    }
+
+    // Double.toString vale tanto en JSON como en el formato de Prometheus
+    private static String number(double v) {
+        return Double.toString(v);
+    }
+
+    // Cubetas fijas, sin acumular: la exportación a Prometheus las acumula.
+    private static final class Histogram {
+        private final double[] bounds;
+        // la última es +Inf
+        private final java.util.concurrent.atomic.LongAdder[] counts;
+        private final java.util.concurrent.atomic.DoubleAdder sum = new java.util.concurrent.atomic.DoubleAdder();
+
+        Histogram(double... bounds) {
+            this.bounds = bounds;
+            this.counts = adders(bounds.length + 1);
+        }
+
+        void observe(double value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) i++;
+            counts[i].increment();
+            sum.add(value);
+        }
+
+        void appendJson(StringBuilder sb) {
+            sb.append("{\"bounds\": [");
+            for (int i = 0; i < bounds.length; i++) {
+                sb.append(i == 0 ? "" : ", ").append(number(bounds[i]));
+            }
+            sb.append("], \"counts\": [");
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                long c = counts[i].sum();
+                total += c;
+                sb.append(i == 0 ? "" : ", ").append(c);
+            }
+            sb.append("], \"sum\": ").append(number(sum.sum())).append(", \"count\": ").append(total).append('}');
+        }
+
+        void appendPrometheus(StringBuilder sb, String name, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i].sum();
+                sb.append(name).append("_bucket{").append(labels).append("le=\"")
+                        .append(i < bounds.length ? number(bounds[i]) : "+Inf").append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            String plain = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+            sb.append(name).append("_sum").append(plain).append(' ').append(number(sum.sum())).append('\n');
+            sb.append(name).append("_count").append(plain).append(' ').append(cumulative).append('\n');
+        }
+    }
+
+    // ====================================================================
+    // Asignaciones y JFR
+    // ====================================================================
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+                if (b.isThreadAllocatedMemorySupported() && b.isThreadAllocatedMemoryEnabled()) {
+                    return b;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // JVM sin jdk.management: no se cuentan asignaciones
+        }
+        return null;
+    }
+
+    // Bytes asignados hasta ahora por el hilo actual; -1 si la JVM no lo informa.
+    public static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Un runtime recortado con jlink puede no traer jdk.jfr: entonces los
+    // eventos no se cargan nunca.
+    private static final boolean JFR = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    private static final class Events {
+
+        static void block(String direction, int raw, int encoded, long elapsed, long allocated) {
+            BlockEvent e = new BlockEvent();
+            if (!e.shouldCommit()) return;
+            e.direction = direction;
+            e.rawBytes = raw;
+            e.encodedBytes = encoded;
+            e.elapsed = elapsed;
+            e.allocated = allocated;
+            e.commit();
+        }
+
+        static void file(LogEntry entry) {
+            FileEvent e = new FileEvent();
+            if (!e.shouldCommit()) return;
+            e.operation = entry.operation;
+            e.source = entry.sourceName;
+            e.destination = entry.destName;
+            e.success = entry.success;
+            e.inputBytes = entry.inputBytes;
+            e.outputBytes = entry.outputBytes;
+            e.elapsed = (long) (entry.durationSeconds * 1e9);
+            e.commit();
+        }
+    }
+
+    @jdk.jfr.Name("ed2.Block")
+    @jdk.jfr.Label("Bloque")
+    @jdk.jfr.Category("ED2")
+    static final class BlockEvent extends jdk.jfr.Event {
+        @jdk.jfr.Label("Dirección")
+        String direction;
+        @jdk.jfr.Label("Bytes originales")
+        @jdk.jfr.DataAmount
+        long rawBytes;
+        @jdk.jfr.Label("Bytes codificados")
+        @jdk.jfr.DataAmount
+        long encodedBytes;
+        @jdk.jfr.Label("Tiempo")
+        @jdk.jfr.Timespan
+        long elapsed;
+        @jdk.jfr.Label("Bytes asignados")
+        @jdk.jfr.DataAmount
+        long allocated;
+    }
+
+    @jdk.jfr.Name("ed2.File")
+    @jdk.jfr.Label("Archivo")
+    @jdk.jfr.Category("ED2")
+    static final class FileEvent extends jdk.jfr.Event {
+        @jdk.jfr.Label("Operación")
+        String operation;
+        @jdk.jfr.Label("Origen")
+        String source;
+        @jdk.jfr.Label("Destino")
+        String destination;
+        @jdk.jfr.Label("Bien")
+        boolean success;
+        @jdk.jfr.Label("Bytes leídos")
+        @jdk.jfr.DataAmount
+        long inputBytes;
+        @jdk.jfr.Label("Bytes escritos")
+        @jdk.jfr.DataAmount
+        long outputBytes;
+        @jdk.jfr.Label("Tiempo")
+        @jdk.jfr.Timespan
+        long elapsed;
+    }
+}
@@ -0,0 +1,123 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.ProgressCallback;
+
+// ============================================================================
+// PROGRESO MUESTREADO
+// ============================================================================
+
+// Progreso de un trabajo completo. Cada parte (un archivo, un paquete) pesa
+// lo que sus bytes y traduce su propio porcentaje a bytes hechos; las sumas
+// van a contadores sin bloqueo. Un único hilo muestrea cada PERIOD_MS y
+// avisa al destino solo si cambió el porcentaje global o el mensaje: quien
+// informa paga una suma atómica y la interfaz recibe a lo sumo 20 avisos
+// por segundo, sin importar cuántos archivos o bloques haya.
+public final class ProgressTracker implements AutoCloseable {
+
+    public static final long PERIOD_MS = 50;
+
+    private final ProgressCallback target;
+    private final java.util.concurrent.atomic.LongAdder done = new java.util.concurrent.atomic.LongAdder();
+    // suma de las partes entregadas; estimate la adelanta mientras se recorre
+    private final java.util.concurrent.atomic.AtomicLong planned = new java.util.concurrent.atomic.AtomicLong();
+    private volatile long estimate;
+    private volatile boolean sealed;
+    private volatile String message = "";
+    private final java.util.concurrent.ScheduledExecutorService sampler;
+    // solo los usa sample()
+    private int lastPercent = -1;
+    private String lastMessage;
+
+    public ProgressTracker(ProgressCallback target) {
+        this.target = target;
+        this.sampler = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ed2-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        sampler.scheduleAtFixedRate(this::sample, PERIOD_MS, PERIOD_MS,
+                java.util.concurrent.TimeUnit.MILLISECONDS);
+    }
+
+    // Nueva parte de weight unidades (bytes, normalmente).
+    public Part part(long weight) {
+        planned.addAndGet(Math.max(0, weight));
+        return new Part(Math.max(0, weight));
+    }
+
+    // Total aproximado mientras todavía se descubren partes.
+    public void estimate(long total) {
+        estimate = total;
+    }
+
+    // Ya no habrá más partes: el total es la suma de las entregadas.
+    public void seal() {
+        sealed = true;
+    }
+
+    public void message(String message) {
+        if (message != null) this.message = message;
+    }
+
+    private long total() {
+        long p = planned.get();
+        return sealed ? p : Math.max(p, estimate);
+    }
+
+    private synchronized void sample() {
+        long total = total();
+        int percent = total <= 0 ? 0 : (int) Math.min(100, done.sum() * 100 / total);
+        // un total que crece no hace retroceder la barra
+        percent = Math.max(percent, lastPercent);
+        String m = message;
+        if (percent == lastPercent && m.equals(lastMessage)) return;
+        lastPercent = percent;
+        lastMessage = m;
+        try {
+            target.onProgress(percent, m);
+        } catch (RuntimeException e) {
+            // un aviso que falla no detiene el trabajo; el próximo muestreo lo repite
+        }
+    }
+
+    // Detiene el muestreo y entrega el último estado antes de volver.
+    @Override
+    public void close() {
+        sampler.shutdownNow();
+        try {
+            sampler.awaitTermination(1, java.util.concurrent.TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sample();
+    }
+
+    // Progreso de una parte; el porcentaje que recibe es el propio (0-100) y
+    // nunca retrocede. Puede usarse desde varios hilos.
+    public final class Part implements ProgressCallback {
+        private final long weight;
+        private final java.util.concurrent.atomic.AtomicLong reported = new java.util.concurrent.atomic.AtomicLong();
+
+        private Part(long weight) {
+            this.weight = weight;
+        }
+
+        @Override
+        public void onProgress(int percent, String message) {
+            advance(weight * Math.max(0, Math.min(100, percent)) / 100);
+            message(message);
+        }
+
+        // La parte terminó (bien o mal): cuenta entera.
+        public void finish() {
+            advance(weight);
+        }
+
+        private void advance(long now) {
+            long previous = reported.getAndAccumulate(now, Math::max);
+            if (now > previous) {
+                done.add(now - previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.FileManagerCore.FileTask;
+import ed2.compresion.AppCompresion.FileManagerCore.ResultTask;
+import ed2.compresion.AppCompresion.LogCallback;
+import ed2.compresion.AppCompresion.LogEntry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// ============================================================================
+// DIARIO DE REANUDACIÓN (.ed2-resume)
+// ============================================================================
+
+// Diario de una pasada de carpeta: los archivos que ya terminaron bien.
+// Texto UTF-8, una línea "ED2R <trabajo>" y luego "tamaño mtime ruta" por
+// archivo, agregada apenas termina; así sobrevive a una cancelación o a un
+// proceso terminado a la fuerza (una última línea cortada se ignora). La
+// pasada siguiente del mismo trabajo omite los que conservan tamaño, mtime
+// y salida, y sigue anotando en el mismo diario; al terminar se borra.
+final class ResumeJournal implements Closeable {
+    static final String FILE_NAME = ".ed2-resume";
+    private static final String MAGIC = "ED2R";
+
+    private final Path root;
+    private final Path file;
+    private final Map<String, long[]> done;
+    private final BufferedWriter writer;
+    private final java.util.concurrent.atomic.AtomicLong resumed = new java.util.concurrent.atomic.AtomicLong();
+
+    private ResumeJournal(Path root, Path file, Map<String, long[]> done, BufferedWriter writer) {
+        this.root = root;
+        this.file = file;
+        this.done = done;
+        this.writer = writer;
+    }
+
+    // Un diario de otro trabajo (otra operación, nivel u origen) se descarta.
+    static ResumeJournal open(Path root, Path file, String job) throws IOException {
+        String header = MAGIC + " " + job;
+        Map<String, long[]> done = new HashMap<>();
+        boolean resume = false;
+        if (Files.isRegularFile(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, java.nio.charset.StandardCharsets.UTF_8)) {
+                resume = header.equals(reader.readLine());
+                String line;
+                while (resume && (line = reader.readLine()) != null) {
+                    String[] parts = line.split(" ", 3);
+                    if (parts.length < 3) continue;
+                    try {
+                        done.put(parts[2], new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])});
+                    } catch (NumberFormatException e) {
+                        // línea cortada
+                    }
+                }
+            } catch (IOException e) {
+                // ilegible: se empieza de nuevo
+                resume = false;
+                done.clear();
+            }
+        }
+        BufferedWriter writer;
+        if (resume) {
+            writer = Files.newBufferedWriter(file, java.nio.charset.StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND);
+            // la última línea pudo quedar sin terminar
+            writer.newLine();
+        } else {
+            writer = Files.newBufferedWriter(file, java.nio.charset.StandardCharsets.UTF_8);
+            writer.write(header);
+            writer.newLine();
+        }
+        writer.flush();
+        return new ResumeJournal(root, file, done, writer);
+    }
+
+    // La tarea con el diario: lo ya terminado se omite y lo que termine
+    // bien se anota con el tamaño y la mtime que tenía al empezar.
+    FileTask wrap(java.util.function.Function<Path, Path> outputOf, ResultTask task) {
+        return (source, progress, logger) -> {
+            java.nio.file.attribute.BasicFileAttributes attrs = null;
+            try {
+                attrs = Files.readAttributes(source, java.nio.file.attribute.BasicFileAttributes.class);
+            } catch (IOException e) {
+                // la tarea informa el error
+            }
+            String rel = root.relativize(source).toString()
+                    .replace(source.getFileSystem().getSeparator(), "/");
+            if (attrs != null) {
+                long[] entry = done.get(rel);
+                Path out = outputOf.apply(source);
+                if (entry != null && entry[0] == attrs.size()
+                        && entry[1] == attrs.lastModifiedTime().toMillis()
+                        && out != null && Files.exists(out)) {
+                    resumed.incrementAndGet();
+                    return;
+                }
+            }
+            if (task.run(source, progress, logger) && attrs != null) {
+                record(rel, attrs.size(), attrs.lastModifiedTime().toMillis());
+            }
+        };
+    }
+
+    private synchronized void record(String rel, long size, long modified) {
+        try {
+            writer.write(size + " " + modified + " " + rel);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            // sin diario solo se pierde la posibilidad de retomar
+        }
+    }
+
+    // La pasada terminó: no hay nada que retomar.
+    void finish() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    void report(Path dir, long start, LogCallback logger) {
+        if (resumed.get() > 0) {
+            logger.onLog(new LogEntry(
+                    "RESUME",
+                    dir.getFileName().toString(),
+                    resumed.get() + " ya procesados",
+                    (System.nanoTime() - start) / 1e9,
+                    "-",
+                    true
+            ));
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,436 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import ed2.compresion.AppCompresion.FileManagerCore;
+import ed2.compresion.AppCompresion.ProgressCallback;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// ============================================================================
+// ARCHIVO SÓLIDO MULTIARCHIVO (.cma)
+// ============================================================================
+
+// Formato: int "ED2A", byte versión, el directorio central como contenedor
+// por bloques y luego el contenido de todos los archivos concatenado en un
+// único contenedor. Los bloques cruzan los límites entre archivos, así LZ77
+// encuentra coincidencias entre archivos parecidos y los archivos chicos no
+// pagan cada uno sus propias tablas. El directorio va primero para poder
+// extraer en un solo recorrido, también a través del descifrado.
+// Directorio: int cantidad y por entrada byte tipo, UTF ruta relativa con '/',
+// long tamaño y long fecha de modificación (ms).
+public class SolidArchive {
+
+    public static final int MAGIC = 0x45443241; // "ED2A"
+    public static final int FORMAT_VERSION = 1;
+    public static final String EXTENSION = ".cma";
+
+    private static final int TYPE_FILE = 0;
+    private static final int TYPE_DIRECTORY = 1;
+    private static final int MAX_ENTRIES = 10_000_000;
+
+    public static final class Entry {
+        public final String path;
+        public final boolean directory;
+        public final long size;
+        public final long modified;
+
+        Entry(String path, boolean directory, long size, long modified) {
+            this.path = path;
+            this.directory = directory;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private final BlockCompressor blocks;
+
+    public SolidArchive(BlockCompressor blocks) {
+        this.blocks = blocks;
+    }
+
+    // Entradas de un árbol (o de un único archivo) relativas a su carpeta raíz.
+    // Carpetas primero; los archivos se agrupan por extensión y luego por ruta
+    // para que los parecidos caigan en los mismos bloques.
+    public static java.util.List<Entry> scan(Path source) throws IOException {
+        Path root = Files.isDirectory(source) ? source : source.toAbsolutePath().getParent();
+        java.util.List<Entry> entries = new ArrayList<>();
+        java.util.List<Path> paths = new ArrayList<>();
+        if (Files.isDirectory(source)) {
+            try (java.util.stream.Stream<Path> stream = Files.walk(source)) {
+                stream.filter(p -> !p.equals(source) && !FileManagerCore.isWorkFile(source, p)).forEach(paths::add);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            paths.add(source.toAbsolutePath());
+        }
+        for (Path p : paths) {
+            java.nio.file.attribute.BasicFileAttributes attrs = Files.readAttributes(p,
+                    java.nio.file.attribute.BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attrs.isDirectory() && !attrs.isRegularFile()) continue;
+            String rel = root.relativize(p).toString().replace(p.getFileSystem().getSeparator(), "/");
+            entries.add(new Entry(rel, attrs.isDirectory(), attrs.isDirectory() ? 0 : attrs.size(),
+                    attrs.lastModifiedTime().toMillis()));
+        }
+        entries.sort(Comparator.comparing((Entry e) -> !e.directory)
+                .thenComparing(e -> e.directory ? "" : extensionOf(e.path))
+                .thenComparing(e -> e.path));
+        return entries;
+    }
+
+    private static String extensionOf(String path) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        return dot > slash ? path.substring(dot + 1) : "";
+    }
+
+    // Empaqueta las entradas de scan(source); devuelve los bytes originales.
+    public long write(Path source, java.util.List<Entry> entries, OutputStream out,
+                      ProgressCallback progress) throws IOException {
+        Path root = Files.isDirectory(source) ? source : source.toAbsolutePath().getParent();
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(MAGIC);
+        dos.writeByte(FORMAT_VERSION);
+
+        ByteArrayOutputStream dir = new ByteArrayOutputStream();
+        DataOutputStream dirOut = new DataOutputStream(dir);
+        dirOut.writeInt(entries.size());
+        long total = 0;
+        for (Entry e : entries) {
+            dirOut.writeByte(e.directory ? TYPE_DIRECTORY : TYPE_FILE);
+            dirOut.writeUTF(e.path);
+            dirOut.writeLong(e.size);
+            dirOut.writeLong(e.modified);
+            total += e.size;
+        }
+        blocks.compress(new ByteArrayInputStream(dir.toByteArray()), dos, dir.size(), null);
+
+        try (InputStream data = new ConcatenatedFiles(root, entries)) {
+            blocks.compress(data, dos, total, progress);
+        }
+        dos.flush();
+        return total;
+    }
+
+    // Lee los archivos en el orden del directorio, exigiendo el tamaño registrado.
+    private static final class ConcatenatedFiles extends InputStream {
+        private final Path root;
+        private final Iterator<Entry> files;
+        private InputStream current;
+        private Entry entry;
+        private long remaining;
+
+        ConcatenatedFiles(Path root, java.util.List<Entry> entries) {
+            this.root = root;
+            java.util.List<Entry> onlyFiles = new ArrayList<>();
+            for (Entry e : entries) {
+                if (!e.directory) onlyFiles.add(e);
+            }
+            this.files = onlyFiles.iterator();
+        }
+
+        private boolean advance() throws IOException {
+            while (current == null || remaining == 0) {
+                if (current != null) {
+                    boolean grew = current.read() >= 0;
+                    current.close();
+                    current = null;
+                    if (grew) throw changed(entry);
+                }
+                if (!files.hasNext()) return false;
+                entry = files.next();
+                current = Files.newInputStream(root.resolve(entry.path));
+                remaining = entry.size;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!advance()) return -1;
+            int n = current.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) throw changed(entry);
+            remaining -= n;
+            return n;
+        }
+
+        private static IOException changed(Entry e) {
+            return new IOException("El archivo cambió durante el empaquetado: " + e.path);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+
+    public static java.util.List<Entry> readDirectory(InputStream in, BlockCompressor blocks) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("No es un archivo .cma");
+        }
+        int version = dis.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Versión de archivo .cma no soportada: " + version);
+        }
+        ByteArrayOutputStream dir = new ByteArrayOutputStream();
+        blocks.decompress(dis, dir, 0, null);
+        DataInputStream d = new DataInputStream(new ByteArrayInputStream(dir.toByteArray()));
+        int count = d.readInt();
+        if (count < 0 || count > MAX_ENTRIES) {
+            throw new IOException("Directorio inválido: " + count + " entradas");
+        }
+        java.util.List<Entry> entries = new ArrayList<>(Math.min(count, 1 << 16));
+        for (int i = 0; i < count; i++) {
+            int type = d.readUnsignedByte();
+            String path = d.readUTF();
+            long size = d.readLong();
+            long modified = d.readLong();
+            if ((type != TYPE_FILE && type != TYPE_DIRECTORY) || size < 0 || !isSafe(path)) {
+                throw new IOException("Entrada inválida en el directorio: " + path);
+            }
+            entries.add(new Entry(path, type == TYPE_DIRECTORY, size, modified));
+        }
+        return entries;
+    }
+
+    // Recorre directorio y contenido sin extraer (ver BlockCompressor.check);
+    // devuelve los bytes originales.
+    public long verify(InputStream in) throws IOException {
+        long total = 0;
+        for (Entry e : readDirectory(in, blocks)) {
+            total += e.size;
+        }
+        long n = blocks.check(in);
+        if (n != total) {
+            throw new IOException("Contenido incompleto: " + n + " != " + total + " bytes");
+        }
+        return n;
+    }
+
+    // Abre un .cma con acceso aleatorio: el directorio se lee una vez y cada
+    // archivo se ubica dentro del contenido concatenado.
+    public Catalog open(BlockCompressor.SeekableInput src) throws IOException {
+        BlockCompressor.SeekableStream in = new BlockCompressor.SeekableStream(src, 0);
+        java.util.List<Entry> entries = readDirectory(in, blocks);
+        return new Catalog(src, entries, in.position());
+    }
+
+    public final class Catalog {
+        private final BlockCompressor.SeekableInput src;
+        private final java.util.List<Entry> entries;
+        private final Map<String, Entry> byPath = new HashMap<>();
+        // posición de cada archivo en el contenido concatenado
+        private final Map<String, Long> offsets = new HashMap<>();
+        private final long dataStart;
+
+        private Catalog(BlockCompressor.SeekableInput src, java.util.List<Entry> entries, long dataStart) {
+            this.src = src;
+            this.entries = Collections.unmodifiableList(entries);
+            this.dataStart = dataStart;
+            long at = 0;
+            for (Entry e : entries) {
+                byPath.put(e.path, e);
+                if (!e.directory) {
+                    offsets.put(e.path, at);
+                    at += e.size;
+                }
+            }
+        }
+
+        public java.util.List<Entry> entries() {
+            return entries;
+        }
+
+        public Entry entry(String path) throws FileNotFoundException {
+            Entry e = byPath.get(path);
+            if (e == null) {
+                throw new FileNotFoundException("No está en el archivo: " + path);
+            }
+            return e;
+        }
+
+        // Copia a out el tramo [offset, offset + length) del archivo 'path'
+        // decodificando solo los bloques que lo cubren.
+        public long read(String path, long offset, long length, OutputStream out) throws IOException {
+            Entry e = entry(path);
+            if (e.directory) {
+                throw new IllegalArgumentException("Es una carpeta: " + path);
+            }
+            if (offset < 0 || length < 0 || offset > e.size - length) {
+                throw new IllegalArgumentException("Tramo fuera del archivo: " + offset + "+" + length
+                        + " de " + e.size + " bytes");
+            }
+            return blocks.readRange(src, dataStart, offsets.get(path) + offset, length, out);
+        }
+    }
+
+    // Rutas relativas sin "..", "." ni componentes vacíos: nada se escribe fuera
+    // de la carpeta de destino.
+    static boolean isSafe(String path) {
+        if (path.isEmpty() || path.startsWith("/") || path.indexOf('\\') >= 0 || path.indexOf(':') >= 0) {
+            return false;
+        }
+        for (String part : path.split("/", -1)) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..")) return false;
+        }
+        return true;
+    }
+
+    // Extrae todo el archivo bajo destDir; devuelve los bytes restaurados.
+    public long extract(InputStream in, Path destDir, ProgressCallback progress) throws IOException {
+        java.util.List<Entry> entries = readDirectory(in, blocks);
+        long total = 0;
+        for (Entry e : entries) {
+            Path target = destDir.resolve(e.path);
+            if (e.directory) {
+                Files.createDirectories(target);
+            } else {
+                total += e.size;
+            }
+        }
+        long written;
+        try (SplitOutput out = new SplitOutput(destDir, entries, total, progress)) {
+            written = blocks.decompress(in, out, 0, null);
+            out.finish();
+        }
+        if (written != total) {
+            throw new IOException("Contenido incompleto: " + written + " != " + total + " bytes");
+        }
+        for (Entry e : entries) {
+            if (e.directory) {
+                Files.setLastModifiedTime(destDir.resolve(e.path),
+                        java.nio.file.attribute.FileTime.fromMillis(e.modified));
+            }
+        }
+        return written;
+    }
+
+    // Reparte el contenido concatenado entre los archivos del directorio.
+    private static final class SplitOutput extends OutputStream {
+        private final Path destDir;
+        private final Iterator<Entry> files;
+        private final long total;
+        private final ProgressCallback progress;
+        private FileChannel current;
+        private Entry entry;
+        private long remaining;
+        private long done;
+
+        SplitOutput(Path destDir, java.util.List<Entry> entries, long total, ProgressCallback progress) {
+            this.destDir = destDir;
+            this.total = total;
+            this.progress = progress;
+            java.util.List<Entry> onlyFiles = new ArrayList<>();
+            for (Entry e : entries) {
+                if (!e.directory) onlyFiles.add(e);
+            }
+            this.files = onlyFiles.iterator();
+        }
+
+        // abre el siguiente archivo con lugar libre; los vacíos se crean al pasar
+        private void advance() throws IOException {
+            while (current == null || remaining == 0) {
+                closeCurrent();
+                if (!files.hasNext()) {
+                    throw new IOException("Contenido de más en el archivo .cma");
+                }
+                entry = files.next();
+                Path target = destDir.resolve(entry.path);
+                Files.createDirectories(target.getParent());
+                current = FileChannel.open(target, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                remaining = entry.size;
+            }
+        }
+
+        private void closeCurrent() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+                Files.setLastModifiedTime(destDir.resolve(entry.path),
+                        java.nio.file.attribute.FileTime.fromMillis(entry.modified));
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            done += len;
+            while (len > 0) {
+                advance();
+                int n = (int) Math.min(len, remaining);
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(b, off, n);
+                while (buf.hasRemaining()) {
+                    current.write(buf);
+                }
+                remaining -= n;
+                off += n;
+                len -= n;
+            }
+            if (progress != null && total > 0) {
+                int pct = (int) Math.min(100, done * 100 / total);
+                progress.onProgress(pct, "Extrayendo: " + pct + "%");
+            }
+        }
+
+        // cierra el último archivo y crea los vacíos que quedan al final
+        void finish() throws IOException {
+            if (current != null && remaining > 0) {
+                throw new IOException("Contenido incompleto para " + entry.path);
+            }
+            closeCurrent();
+            while (files.hasNext()) {
+                entry = files.next();
+                if (entry.size != 0) {
+                    throw new IOException("Contenido incompleto para " + entry.path);
+                }
+                Path target = destDir.resolve(entry.path);
+                Files.createDirectories(target.getParent());
+                Files.write(target, new byte[0]);
+                Files.setLastModifiedTime(target, java.nio.file.attribute.FileTime.fromMillis(entry.modified));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import ed2.compresion.AppCompresion.HuffmanCompressor;
+import ed2.compresion.AppCompresion.LZ77Compressor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Contenedor v4: tramas con CRC32C; el índice del final se prueba en BlockIndexTest.
+class BlockCompressorTest extends BlockFixture {
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, BLOCK - 1, BLOCK, BLOCK + 1, 3 * BLOCK + 17})
+    void roundTripText(int size) throws IOException {
+        byte[] data = TestFiles.text(size, size);
+        assertArrayEquals(data, decompress(serial, compress(serial, data)));
+        assertArrayEquals(data, decompress(parallel, compress(parallel, data)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, BLOCK, 2 * BLOCK + 5})
+    void roundTripIncompressible(int size) throws IOException {
+        byte[] data = TestFiles.random(size, size);
+        byte[] packed = compress(parallel, data);
+        // bloques guardados tal cual: solo el encabezado, las tramas y el índice
+        assertTrue(packed.length < size + 200, "expansión: " + packed.length);
+        assertArrayEquals(data, decompress(serial, packed));
+    }
+
+    @Test
+    void verifyReportsOriginalSize() throws IOException {
+        byte[] data = TestFiles.text(2 * BLOCK + 100, 7);
+        byte[] packed = compress(serial, data);
+        assertEquals(data.length, BlockCompressor.verify(new ByteArrayInputStream(packed)));
+        assertEquals(data.length, serial.check(new ByteArrayInputStream(packed)));
+    }
+
+    @Test
+    void truncatedStreamFails() throws IOException {
+        byte[] packed = compress(serial, TestFiles.text(2 * BLOCK, 3));
+        for (int cut : new int[]{0, 10, BlockCompressor.CONTAINER_HEADER_SIZE + 6, packed.length / 2,
+                packed.length - 1}) {
+            byte[] part = Arrays.copyOf(packed, cut);
+            assertThrows(IOException.class, () -> decompress(serial, part), "corte en " + cut);
+            assertThrows(IOException.class, () -> BlockCompressor.verify(new ByteArrayInputStream(part)),
+                    "corte en " + cut);
+        }
+    }
+
+    @Test
+    void flippedFrameByteFailsCrc() throws IOException {
+        byte[] data = TestFiles.text(3 * BLOCK, 11);
+        byte[] packed = compress(serial, data);
+        // primer byte de datos de la primera trama
+        int at = BlockCompressor.CONTAINER_HEADER_SIZE + 12 + 5;
+        packed[at] ^= 0x01;
+        IOException e = assertThrows(IOException.class, () -> decompress(serial, packed));
+        assertTrue(e.getMessage().contains("CRC32C"), e.getMessage());
+        assertThrows(IOException.class, () -> BlockCompressor.verify(new ByteArrayInputStream(packed)));
+    }
+
+    @Test
+    void damagedFrameIsZeroedWhenRescuing() throws IOException {
+        byte[] data = TestFiles.text(3 * BLOCK, 13);
+        byte[] packed = compress(serial, data);
+        packed[BlockCompressor.CONTAINER_HEADER_SIZE + 12 + 5] ^= 0x01;
+        List<Long> damaged = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serial.decompress(new ByteArrayInputStream(packed), out, packed.length, null, damaged::add);
+        assertEquals(List.of(0L), damaged);
+        byte[] rescued = out.toByteArray();
+        assertEquals(data.length, rescued.length);
+        assertArrayEquals(new byte[BLOCK], Arrays.copyOf(rescued, BLOCK));
+        assertArrayEquals(Arrays.copyOfRange(data, BLOCK, data.length),
+                Arrays.copyOfRange(rescued, BLOCK, data.length));
+    }
+
+    @Test
+    void flippedHeaderFails() throws IOException {
+        byte[] packed = compress(serial, TestFiles.text(BLOCK, 5));
+        packed[10] ^= 0x01;
+        assertThrows(IOException.class, () -> decompress(serial, packed));
+    }
+
+    // Como la salida de seq: solo repeticiones de 4 a 7 bytes ("\n12345").
+    private static byte[] numberLines(int size, int first) {
+        StringBuilder sb = new StringBuilder(size + 16);
+        for (int n = first; sb.length() < size; n++) {
+            sb.append(n).append('\n');
+        }
+        return Arrays.copyOf(sb.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII), size);
+    }
+
+    @Test
+    void shortRepeatTextIsNotLeftToHuffman() throws IOException {
+        byte[] block = numberLines(BLOCK, 100_000);
+        assertNotEquals(BlockCompressor.REPEATS_NONE, BlockCompressor.probeRepeats(block, block.length));
+        byte[] frame = serial.compressBlock(block, block.length);
+        assertEquals(BlockCompressor.CODEC_DEFLATE, frame[0]);
+        byte[] huffmanOnly = new HuffmanCompressor().compress(block);
+        assertTrue(frame.length - 1 < huffmanOnly.length,
+                "LZ77: " + (frame.length - 1) + ", solo Huffman: " + huffmanOnly.length);
+        assertArrayEquals(block, decompress(serial, compress(serial, block)));
+    }
+
+    @Test
+    void levelsDifferOnShortRepeatText() throws IOException {
+        byte[] data = numberLines(2 * BLOCK, 1);
+        int fast = compress(new BlockCompressor(LZ77Compressor.forLevel(1), new HuffmanCompressor(), BLOCK), data).length;
+        int best = compress(new BlockCompressor(LZ77Compressor.forLevel(9), new HuffmanCompressor(), BLOCK), data).length;
+        assertTrue(best < fast, "nivel 9: " + best + ", nivel 1: " + fast);
+    }
+
+    @Test
+    void lowEntropyNoiseKeepsTheSmallerCodec() throws IOException {
+        // 16 símbolos al azar: muchas coincidencias cortas por casualidad, que LZ77 no aprovecha
+        byte[] block = TestFiles.random(BLOCK, 23);
+        for (int i = 0; i < block.length; i++) block[i] = (byte) ('a' + (block[i] & 0x0F));
+        byte[] frame = serial.compressBlock(block, block.length);
+        assertEquals(BlockCompressor.CODEC_HUFFMAN, frame[0]);
+        assertArrayEquals(block, decompress(serial, compress(serial, block)));
+    }
+}
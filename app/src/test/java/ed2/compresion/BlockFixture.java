@@ -0,0 +1,68 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import ed2.compresion.AppCompresion.HuffmanCompressor;
+import ed2.compresion.AppCompresion.LZ77Compressor;
+import org.junit.jupiter.api.AfterEach;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Base de las pruebas del contenedor de bloques: un compresor secuencial y
+// otro en paralelo (pool propio de cada prueba) sobre bloques mínimos, y los
+// flujos en memoria.
+abstract class BlockFixture {
+
+    static final int BLOCK = BlockCompressor.MIN_BLOCK_SIZE;
+    private final ExecutorService pool = Executors.newFixedThreadPool(3);
+
+    final BlockCompressor serial = new BlockCompressor(
+            LZ77Compressor.forLevel(6), new HuffmanCompressor(), BLOCK);
+    final BlockCompressor parallel = new BlockCompressor(
+            LZ77Compressor.forLevel(6), new HuffmanCompressor(), BLOCK, pool, 4);
+
+    @AfterEach
+    void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    static byte[] compress(BlockCompressor blocks, byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = blocks.compress(new ByteArrayInputStream(data), out, data.length, null);
+        assertEquals(out.size(), written);
+        return out.toByteArray();
+    }
+
+    static byte[] decompress(BlockCompressor blocks, byte[] packed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long n = blocks.decompress(new ByteArrayInputStream(packed), out, packed.length, null);
+        assertEquals(out.size(), n);
+        return out.toByteArray();
+    }
+
+    static BlockCompressor.SeekableInput memory(byte[] bytes) {
+        return new BlockCompressor.SeekableInput() {
+            @Override
+            public long size() {
+                return bytes.length;
+            }
+
+            @Override
+            public void readFully(long position, byte[] b, int off, int len) throws IOException {
+                if (position < 0 || position + len > bytes.length) {
+                    throw new java.io.EOFException("fuera de rango: " + position);
+                }
+                System.arraycopy(bytes, (int) position, b, off, len);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
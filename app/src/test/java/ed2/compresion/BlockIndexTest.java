@@ -0,0 +1,41 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Índice de bloques: lectura de rangos sin descomprimir lo anterior.
+class BlockIndexTest extends BlockFixture {
+
+    @Test
+    void indexReadsArbitraryRanges() throws IOException {
+        byte[] data = TestFiles.text(4 * BLOCK + 321, 17);
+        byte[] packed = compress(parallel, data);
+        BlockCompressor.SeekableInput src = memory(packed);
+        long[][] ranges = {{0, 0}, {0, 1}, {BLOCK - 3, 6}, {BLOCK, BLOCK}, {123, 3 * BLOCK},
+                {data.length - 1, 1}, {0, data.length}};
+        for (long[] r : ranges) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(r[1], serial.readRange(src, 0, r[0], r[1], out));
+            assertArrayEquals(Arrays.copyOfRange(data, (int) r[0], (int) (r[0] + r[1])), out.toByteArray(),
+                    r[0] + "+" + r[1]);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> serial.readRange(src, 0, data.length - 1, 2, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void corruptIndexIsRejected() throws IOException {
+        byte[] packed = compress(serial, TestFiles.text(2 * BLOCK, 19));
+        // posición de la segunda trama dentro del índice
+        packed[packed.length - 20 - 1] ^= 0x01;
+        assertThrows(IOException.class, () -> decompress(serial, packed));
+        assertThrows(IOException.class,
+                () -> serial.readRange(memory(packed), 0, 0, 10, new ByteArrayOutputStream()));
+    }
+}
@@ -0,0 +1,164 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Línea de comandos: códigos de salida, salida --json y contraseña sin consola.
+class CliTest {
+
+    private static final String BLOCK = Integer.toString(BlockCompressor.MIN_BLOCK_SIZE);
+
+    @TempDir
+    Path tmp;
+
+    private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+    private Cli cli() {
+        stdout.reset();
+        stderr.reset();
+        return new Cli(new PrintStream(stdout, true, StandardCharsets.UTF_8),
+                new PrintStream(stderr, true, StandardCharsets.UTF_8));
+    }
+
+    private int run(String... args) {
+        return cli().run(args);
+    }
+
+    private List<String> lines() {
+        String s = stdout.toString(StandardCharsets.UTF_8);
+        return s.isEmpty() ? List.of() : Arrays.asList(s.split("\n"));
+    }
+
+    @Test
+    void parseErrorsExitWithUsage() throws IOException {
+        Path file = TestFiles.write(tmp.resolve("a"), TestFiles.text(1000, 1));
+        String[][] bad = {
+                {},
+                {"compress"},
+                {"squash", file.toString()},
+                {"compress", "--fast", file.toString()},
+                {"compress", "--level", "12", file.toString()},
+                {"compress", "--level"},
+                {"compress", "--threads", "0", file.toString()},
+                {"compress", "--block-size", "1K", file.toString()},
+                {"recover", file.toString()},
+                {"encrypt", "--password-env", "X", "--password-file", "y", file.toString()},
+        };
+        for (String[] args : bad) {
+            assertEquals(Cli.EXIT_USAGE, run(args), String.join(" ", args));
+            assertTrue(stderr.toString(StandardCharsets.UTF_8).startsWith("error: "), String.join(" ", args));
+        }
+        // una ruta que no existe se descubre al ejecutar, con el mismo código
+        assertEquals(Cli.EXIT_USAGE, run("compress", tmp.resolve("nada").toString()));
+        assertEquals(Cli.EXIT_OK, run("--help"));
+    }
+
+    @Test
+    void jsonLinesAndSummary() throws IOException {
+        Path src = TestFiles.sampleTree(tmp.resolve("tree"));
+        assertEquals(Cli.EXIT_OK, run("compress", "--json", "-b", BLOCK, "-t", "2", src.toString()));
+        List<String> lines = lines();
+        assertEquals(6, lines.size(), lines.toString());
+        for (String line : lines.subList(0, 5)) {
+            assertTrue(line.startsWith("{\"timestamp\":\"") && line.endsWith("}"), line);
+            for (String key : new String[]{"\"operation\":\"COMPRESS\"", "\"source\":", "\"destination\":",
+                    "\"seconds\":", "\"rate\":", "\"inputBytes\":", "\"outputBytes\":", "\"success\":true"}) {
+                assertTrue(line.contains(key), key + " en " + line);
+            }
+        }
+        String summary = lines.get(5);
+        assertTrue(summary.matches("\\{\"summary\":\\{\"command\":\"compress\",\"entries\":5,\"failed\":0,"
+                + "\"seconds\":[0-9]+\\.[0-9]{3},\"exitCode\":0}}"), summary);
+    }
+
+    @Test
+    void failingEntryExitsWithOne() throws IOException {
+        Path file = TestFiles.write(tmp.resolve("data"), TestFiles.text(2 * BlockCompressor.MIN_BLOCK_SIZE, 4));
+        assertEquals(Cli.EXIT_OK, run("compress", "-q", "-b", BLOCK, file.toString()));
+        Path cmp = tmp.resolve("data.cmp");
+        TestFiles.flipByte(cmp, BlockCompressor.CONTAINER_HEADER_SIZE + 20);
+
+        assertEquals(Cli.EXIT_FAILED, run("recover", "--json", "-o", tmp.resolve("dest").toString(), cmp.toString()));
+        List<String> lines = lines();
+        assertEquals(2, lines.size(), lines.toString());
+        assertTrue(lines.get(0).contains("\"operation\":\"ERROR_RECOVER\"") && lines.get(0).contains("\"success\":false"),
+                lines.get(0));
+        assertTrue(lines.get(1).contains("\"entries\":1,\"failed\":1,") && lines.get(1).contains("\"exitCode\":1"),
+                lines.get(1));
+    }
+
+    @Test
+    void passwordFromFileOrEnvironment() throws IOException {
+        byte[] data = TestFiles.text(5000, 2);
+        Path file = TestFiles.write(tmp.resolve("in/data.txt"), data);
+        Path secret = Files.write(tmp.resolve("secret"), "correcta\nsegunda línea\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Cli.EXIT_OK, run("both", "-q", "--password-file", secret.toString(), file.toString()));
+
+        Path ec = tmp.resolve("in/data.ec");
+        Path dest = tmp.resolve("dest");
+        assertEquals(Cli.EXIT_OK, run("recover", "-q", "--password-file", secret.toString(), "-o", dest.toString(),
+                ec.toString()));
+        assertArrayEquals(data, Files.readAllBytes(dest.resolve("data")));
+
+        // otra contraseña (PATH siempre está definida): el descifrado falla
+        assertEquals(Cli.EXIT_FAILED, run("recover", "-q", "--password-env", "PATH", "-o",
+                tmp.resolve("bad").toString(), ec.toString()));
+        assertEquals(Cli.EXIT_USAGE, run("recover", "-q", "--password-env", "ED2_NO_DEFINIDA_" + System.nanoTime(),
+                "-o", dest.toString(), ec.toString()));
+        Files.write(secret, new byte[0]);
+        assertEquals(Cli.EXIT_USAGE, run("recover", "-q", "--password-file", secret.toString(), "-o", dest.toString(),
+                ec.toString()));
+    }
+
+    @Test
+    void cancelledJobExitsWith130() throws IOException {
+        Path src = TestFiles.sampleTree(tmp.resolve("tree"));
+        Cli cli = cli();
+        cli.job.cancel();
+        assertEquals(Cli.EXIT_CANCELLED, cli.run(new String[]{"compress", "--json", "-b", BLOCK, src.toString()}));
+        String summary = lines().get(lines().size() - 1);
+        assertTrue(summary.contains("\"exitCode\":130"), summary);
+    }
+
+    @Test
+    void unwritableMetricsExitWithThree() throws IOException {
+        Path file = TestFiles.write(tmp.resolve("a"), TestFiles.text(1000, 1));
+        assertEquals(Cli.EXIT_ERROR, run("compress", "-q", "--metrics", tmp.resolve("no/existe/m.json").toString(),
+                file.toString()));
+        assertTrue(Files.exists(tmp.resolve("a.cmp")), "el trabajo terminó; solo faltan las métricas");
+    }
+
+    // En otra JVM: en esta ya pudieron cargarse por otras pruebas.
+    @Test
+    void startupLoadsNoAwtOrSwing() throws IOException, InterruptedException {
+        Path file = TestFiles.write(tmp.resolve("a"), TestFiles.text(1000, 1));
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-verbose:class", "-cp", System.getProperty("java.class.path"),
+                Cli.class.getName(), "compress", "-q", file.toString()));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(Cli.EXIT_OK, process.exitValue(), output);
+        assertTrue(output.contains(" ed2.compresion.Cli "), "sin la lista de clases cargadas");
+        for (String line : output.split("\n")) {
+            assertFalse(line.contains(" java.awt.") || line.contains(" javax.swing."), line);
+        }
+        assertTrue(Files.exists(tmp.resolve("a.cmp")));
+    }
+}
@@ -0,0 +1,32 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import ed2.compresion.AppCompresion.FileManagerCore;
+import ed2.compresion.AppCompresion.ProgressCallback;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Base de las pruebas que pasan por FileManagerCore: una carpeta temporal por
+// prueba y un núcleo con bloques mínimos y dos hilos, apagado al terminar.
+abstract class CoreFixture {
+
+    static final int BLOCK = BlockCompressor.MIN_BLOCK_SIZE;
+    static final ProgressCallback NO_PROGRESS = (percent, message) -> { };
+
+    @TempDir
+    Path tmp;
+
+    final FileManagerCore core = new FileManagerCore(BLOCK, 2, 6);
+
+    @AfterEach
+    void shutdown() {
+        core.shutdown();
+    }
+
+    Path sampleTree() throws IOException {
+        return TestFiles.sampleTree(tmp.resolve("tree"));
+    }
+}
@@ -0,0 +1,76 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.LogEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Recetas .cdd y almacén de fragmentos: ida y vuelta, reutilización y daño.
+class DedupArchiveTest extends CoreFixture {
+
+    @Test
+    void dedupRoundTripAndDamagedStore() throws IOException {
+        Path src = sampleTree();
+        core.processPath(src, "dedup", null, NO_PROGRESS, new TestFiles.Log());
+        // segunda pasada sin cambios: la receta nueva no agrega fragmentos
+        long packSize = Files.size(tmp.resolve(ChunkStore.DIRECTORY).resolve("pack"));
+        TestFiles.Log second = new TestFiles.Log();
+        core.processPath(src, "dedup", null, NO_PROGRESS, second);
+        assertEquals(packSize, Files.size(tmp.resolve(ChunkStore.DIRECTORY).resolve("pack")));
+
+        List<Path> recipes;
+        try (Stream<Path> s = Files.list(tmp)) {
+            recipes = s.filter(p -> p.toString().endsWith(DedupArchive.EXTENSION)).sorted()
+                    .collect(java.util.stream.Collectors.toList());
+        }
+        Path cdd = recipes.get(0);
+        // sin fragmentos nuevos, lo agregado al disco es solo la receta
+        assertEquals(Files.size(recipes.get(recipes.size() - 1)), second.find("DEDUP").outputBytes);
+        Path dest = tmp.resolve("dest");
+        TestFiles.Log recover = new TestFiles.Log();
+        core.recoverPath(cdd, dest, null, NO_PROGRESS, recover);
+        assertEquals(0, recover.failures(), recover.operations().toString());
+        TestFiles.assertSameTree(src, dest.resolve("tree"));
+
+        TestFiles.flipByte(tmp.resolve(ChunkStore.DIRECTORY).resolve("pack"), packSize / 2);
+        TestFiles.Log verify = new TestFiles.Log();
+        core.verifyPath(cdd, null, NO_PROGRESS, verify);
+        assertEquals(List.of("ERROR_VERIFY"), verify.operations());
+    }
+
+    @Test
+    void dedupOutputsAreNotCompressedAgain() throws IOException {
+        Path src = sampleTree();
+        core.processPath(src, "dedup", null, NO_PROGRESS, new TestFiles.Log());
+        core.processPath(src, "archive", null, NO_PROGRESS, new TestFiles.Log());
+        // la carpeta que tiene la receta, el archivo sólido y el almacén
+        Path lone = TestFiles.write(tmp.resolve("lone"), TestFiles.text(1000, 9));
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(tmp, "compress", null, 6, false, NO_PROGRESS, log);
+        assertEquals(6, log.operations().stream().filter("COMPRESS"::equals).count(), log.operations().toString());
+        synchronized (log.entries) {
+            for (LogEntry e : log.entries) {
+                assertFalse(e.sourceName.endsWith(".cdd") || e.sourceName.endsWith(SolidArchive.EXTENSION)
+                        || e.sourceName.equals("pack") || e.sourceName.equals("index"), e.sourceName);
+            }
+        }
+        assertTrue(Files.exists(lone.resolveSibling("lone.cmp")));
+        try (Stream<Path> s = Files.list(tmp.resolve(ChunkStore.DIRECTORY))) {
+            assertTrue(s.noneMatch(p -> p.toString().endsWith(".cmp")));
+        }
+    }
+
+    @Test
+    void restoredTreeDropsTheDedupStamp() {
+        assertEquals("tree", DedupArchive.restoredName("tree-20261018-045355.cdd"));
+        assertEquals("tree", DedupArchive.restoredName("tree.cdd"));
+        assertEquals("mi-copia", DedupArchive.restoredName("mi-copia-20261018-045355.cdd"));
+        assertEquals("tree-2026", DedupArchive.restoredName("tree-2026.cdd"));
+    }
+}
@@ -0,0 +1,190 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import ed2.compresion.AppCompresion.FileManagerCore;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Pasadas completas por FileManagerCore sobre .cmp: ida y vuelta, archivos
+// dañados, temporales y salidas compartidas. Los demás formatos tienen su clase.
+class FileManagerCoreTest extends CoreFixture {
+
+    @Test
+    void compressedTreeRoundTrip() throws IOException {
+        Path src = sampleTree();
+        Path reference = tmp.resolve("reference");
+        Files.createDirectories(reference);
+        // recover deja todos los archivos de la carpeta directamente en el destino
+        for (String rel : TestFiles.tree(src).keySet()) {
+            Path file = src.resolve(rel);
+            TestFiles.write(reference.resolve(file.getFileName()), Files.readAllBytes(file));
+        }
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(src, "compress", null, 6, false, NO_PROGRESS, log);
+        assertEquals(0, log.failures(), log.operations().toString());
+        assertEquals(5, log.operations().stream().filter("COMPRESS"::equals).count());
+
+        TestFiles.Log verify = new TestFiles.Log();
+        core.verifyPath(src, null, NO_PROGRESS, verify);
+        assertEquals(0, verify.failures(), verify.operations().toString());
+
+        Path dest = tmp.resolve("dest");
+        core.recoverPath(src, dest, null, NO_PROGRESS, new TestFiles.Log());
+        TestFiles.assertSameTree(reference, dest);
+    }
+
+    @Test
+    void inputsWithTheSameOutputAreNotWrittenTogether() throws IOException {
+        FileManagerCore wide = new FileManagerCore(BLOCK, 4, 6);
+        try {
+            Path src = tmp.resolve("tree");
+            for (int i = 0; i < 8; i++) {
+                // x.txt y x.log comprimen ambos a x.cmp
+                TestFiles.write(src.resolve("f" + i + ".txt"), TestFiles.text(2 * BLOCK, i));
+                TestFiles.write(src.resolve("f" + i + ".log"), TestFiles.text(2 * BLOCK + 7, 100 + i));
+            }
+            TestFiles.Log log = new TestFiles.Log();
+            wide.processPath(src, "compress", null, 6, false, NO_PROGRESS, log);
+            assertEquals(8, log.operations().stream().filter("COMPRESS"::equals).count(), log.operations().toString());
+            assertEquals(8, log.operations().stream().filter("ERROR_PROCESS"::equals).count());
+
+            // cada x.cmp es exactamente una de sus dos entradas
+            Path dest = tmp.resolve("dest");
+            TestFiles.Log recover = new TestFiles.Log();
+            wide.recoverPath(src, dest, null, NO_PROGRESS, recover);
+            assertEquals(8, recover.operations().stream().filter("DECOMPRESS"::equals).count(),
+                    recover.operations().toString());
+            for (int i = 0; i < 8; i++) {
+                byte[] restored = Files.readAllBytes(dest.resolve("f" + i));
+                assertTrue(java.util.Arrays.equals(restored, Files.readAllBytes(src.resolve("f" + i + ".txt")))
+                        || java.util.Arrays.equals(restored, Files.readAllBytes(src.resolve("f" + i + ".log"))), "f" + i);
+            }
+        } finally {
+            wide.shutdown();
+        }
+    }
+
+    @Test
+    void leftoverTemporaryOutputsAreNotInputs() throws IOException {
+        Path src = tmp.resolve("tree");
+        TestFiles.write(src.resolve("a"), TestFiles.text(1000, 1));
+        // temporales de una pasada terminada a la fuerza: un archivo y una extracción
+        TestFiles.write(src.resolve(FileManagerCore.TEMP_PREFIX + "a.cmp-8123456789012345"), new byte[]{1, 2, 3});
+        TestFiles.write(src.resolve(FileManagerCore.TEMP_PREFIX + "tree-42/x"), new byte[]{4, 5, 6});
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(src, "compress", null, 6, false, NO_PROGRESS, log);
+        assertEquals(List.of("COMPRESS"), log.operations());
+        assertEquals("a", log.find("COMPRESS").sourceName);
+        try (Stream<Path> s = Files.list(src)) {
+            assertEquals(4, s.count(), "la salida se escribió en un temporal propio");
+        }
+    }
+
+    @Test
+    void unreadableSubdirectoryIsLoggedAndTheRestProcessed() throws IOException {
+        assumeTrue(tmp.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path src = tmp.resolve("tree");
+        TestFiles.write(src.resolve("a"), TestFiles.text(1000, 1));
+        TestFiles.write(src.resolve("locked/b"), TestFiles.text(1000, 2));
+        TestFiles.write(src.resolve("z/c"), TestFiles.text(1000, 3));
+        Path locked = src.resolve("locked");
+        Set<PosixFilePermission> mode = Files.getPosixFilePermissions(locked);
+        Files.setPosixFilePermissions(locked, Set.of());
+        try {
+            // root lee igual: no hay nada que probar
+            assumeTrue(!Files.isReadable(locked));
+            TestFiles.Log log = new TestFiles.Log();
+            core.processPath(src, "compress", null, 6, false, NO_PROGRESS, log);
+            List<String> operations = new ArrayList<>(log.operations());
+            Collections.sort(operations);
+            assertEquals(List.of("COMPRESS", "COMPRESS", "ERROR_PROCESS"), operations);
+            assertEquals("locked", log.find("ERROR_PROCESS").sourceName);
+            assertTrue(Files.exists(src.resolve("z/c.cmp")));
+        } finally {
+            Files.setPosixFilePermissions(locked, mode);
+        }
+    }
+
+    @Test
+    void userFilesNamedLikePartsAreInputs() throws IOException {
+        Path src = tmp.resolve("tree");
+        TestFiles.write(src.resolve("backup.2024.part"), TestFiles.text(1000, 1));
+        TestFiles.write(src.resolve("y.1.part"), TestFiles.text(1000, 2));
+        TestFiles.write(src.resolve("sub/z.cmp.part"), TestFiles.text(1000, 3));
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(src, "archive", null, NO_PROGRESS, log);
+        assertEquals(List.of("ARCHIVE"), log.operations());
+        Path dest = tmp.resolve("dest");
+        core.recoverPath(tmp.resolve("tree" + SolidArchive.EXTENSION), dest, null, NO_PROGRESS, new TestFiles.Log());
+        TestFiles.assertSameTree(src, dest.resolve("tree"));
+    }
+
+    @Test
+    void outputsKeepTheUsualPermissions() throws IOException {
+        assumeTrue(tmp.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        // lo que la umask del proceso da a un archivo y a una carpeta nuevos
+        Set<PosixFilePermission> fileMode = Files.getPosixFilePermissions(Files.createFile(tmp.resolve("plain")));
+        Set<PosixFilePermission> dirMode = Files.getPosixFilePermissions(Files.createDirectory(tmp.resolve("plain-dir")));
+
+        Path src = sampleTree();
+        Path one = src.resolve("one");
+        core.processPath(one, "compress", null, NO_PROGRESS, new TestFiles.Log());
+        core.processPath(one, "both", "clave", NO_PROGRESS, new TestFiles.Log());
+        core.processPath(src, "archive", null, NO_PROGRESS, new TestFiles.Log());
+        assertEquals(fileMode, Files.getPosixFilePermissions(src.resolve("one.cmp")));
+        assertEquals(fileMode, Files.getPosixFilePermissions(src.resolve("one.ec")));
+        Path cma = tmp.resolve("tree" + SolidArchive.EXTENSION);
+        assertEquals(fileMode, Files.getPosixFilePermissions(cma));
+
+        Path dest = tmp.resolve("dest");
+        core.recoverPath(src.resolve("one.cmp"), dest, null, NO_PROGRESS, new TestFiles.Log());
+        assertEquals(fileMode, Files.getPosixFilePermissions(dest.resolve("one")));
+        core.recoverPath(cma, dest, null, NO_PROGRESS, new TestFiles.Log());
+        assertEquals(dirMode, Files.getPosixFilePermissions(dest.resolve("tree")));
+    }
+
+    @Test
+    void damagedCmpFailsVerifyAndRecover() throws IOException {
+        Path file = TestFiles.write(tmp.resolve("data"), TestFiles.text(2 * BLOCK, 4));
+        core.processPath(file, "compress", null, NO_PROGRESS, new TestFiles.Log());
+        Path cmp = tmp.resolve("data.cmp");
+        TestFiles.flipByte(cmp, BlockCompressor.CONTAINER_HEADER_SIZE + 20);
+
+        TestFiles.Log verify = new TestFiles.Log();
+        core.verifyPath(cmp, null, NO_PROGRESS, verify);
+        assertEquals(List.of("ERROR_VERIFY"), verify.operations());
+
+        TestFiles.Log recover = new TestFiles.Log();
+        Path dest = tmp.resolve("dest");
+        core.recoverPath(cmp, dest, null, NO_PROGRESS, recover);
+        assertEquals(List.of("ERROR_RECOVER"), recover.operations());
+        assertFalse(Files.exists(dest.resolve("data")));
+        assertEquals(List.of(), TestFiles.tree(dest).keySet().stream().collect(Collectors.toList()),
+                "no deben quedar temporales");
+    }
+
+    @Test
+    void truncatedCmpFails() throws IOException {
+        Path file = TestFiles.write(tmp.resolve("data"), TestFiles.text(2 * BLOCK, 5));
+        core.processPath(file, "compress", null, NO_PROGRESS, new TestFiles.Log());
+        Path cmp = tmp.resolve("data.cmp");
+        TestFiles.truncate(cmp, Files.size(cmp) - 30);
+        TestFiles.Log recover = new TestFiles.Log();
+        core.recoverPath(cmp, tmp.resolve("dest"), null, NO_PROGRESS, recover);
+        assertEquals(List.of("ERROR_RECOVER"), recover.operations());
+    }
+
+}
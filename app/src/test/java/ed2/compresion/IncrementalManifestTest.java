@@ -0,0 +1,145 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.FileManagerCore;
+import ed2.compresion.AppCompresion.LogEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Formato .ed2-manifest: rutas con prefijo compartido y CRC32C al final, y las
+// pasadas incrementales que lo leen y lo escriben.
+class IncrementalManifestTest extends CoreFixture {
+
+    private static byte[] saved(IncrementalManifest manifest) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(manifest.save(out), out.size());
+        return out.toByteArray();
+    }
+
+    private static IncrementalManifest sample() {
+        IncrementalManifest manifest = new IncrementalManifest("compress", 6);
+        String[] paths = {"a", "docs/informe.txt", "docs/informe2.txt", "docs/ñandú/😀.txt", "z"};
+        for (int i = 0; i < paths.length; i++) {
+            byte[] hash = TestFiles.random(16, i);
+            manifest.put(paths[i], new IncrementalManifest.Entry(i * 1000L, 1_700_000_000_000L + i, hash, i * 10L));
+        }
+        return manifest;
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        IncrementalManifest manifest = sample();
+        IncrementalManifest loaded = IncrementalManifest.load(new ByteArrayInputStream(saved(manifest)));
+        assertTrue(loaded.matches("compress", 6));
+        assertFalse(loaded.matches("compress", 7));
+        assertFalse(loaded.matches("both", 6));
+        assertEquals(manifest.paths(), loaded.paths());
+        for (String path : manifest.paths()) {
+            IncrementalManifest.Entry a = manifest.get(path);
+            IncrementalManifest.Entry b = loaded.get(path);
+            assertEquals(a.size, b.size, path);
+            assertEquals(a.modified, b.modified, path);
+            assertEquals(a.outputSize, b.outputSize, path);
+            assertArrayEquals(a.hash, b.hash, path);
+        }
+    }
+
+    @Test
+    void emptyManifestRoundTrip() throws IOException {
+        IncrementalManifest loaded = IncrementalManifest.load(
+                new ByteArrayInputStream(saved(new IncrementalManifest("dedup", 1))));
+        assertEquals(0, loaded.size());
+        assertTrue(loaded.matches("dedup", 1));
+    }
+
+    @Test
+    void flippedByteFailsCrc() throws IOException {
+        byte[] bytes = saved(sample());
+        // dentro de la primera entrada: el CRC es lo único que lo detecta
+        bytes[bytes.length / 2] ^= 0x01;
+        IOException e = assertThrows(IOException.class,
+                () -> IncrementalManifest.load(new ByteArrayInputStream(bytes)));
+        assertNotNull(e.getMessage());
+    }
+
+    @Test
+    void truncatedManifestFails() throws IOException {
+        byte[] bytes = saved(sample());
+        for (int cut : new int[]{0, 3, 10, bytes.length / 2, bytes.length - 4, bytes.length - 1}) {
+            byte[] part = Arrays.copyOf(bytes, cut);
+            assertThrows(IOException.class, () -> IncrementalManifest.load(new ByteArrayInputStream(part)),
+                    "corte en " + cut);
+        }
+    }
+
+    @Test
+    void incrementalPassSkipsUnchangedFiles() throws IOException {
+        Path src = sampleTree();
+        core.processPath(src, "compress", null, 6, true, NO_PROGRESS, new TestFiles.Log());
+        IncrementalManifest manifest;
+        try (InputStream in = Files.newInputStream(src.resolve(IncrementalManifest.FILE_NAME))) {
+            manifest = IncrementalManifest.load(in);
+        }
+        // el tamaño de salida anotado es el del .cmp en disco
+        assertEquals(5, manifest.paths().size());
+        for (String rel : manifest.paths()) {
+            int dot = rel.lastIndexOf('.');
+            String out = (dot > rel.lastIndexOf('/') ? rel.substring(0, dot) : rel) + ".cmp";
+            assertEquals(Files.size(src.resolve(out)), manifest.get(rel).outputSize, rel);
+        }
+
+        TestFiles.write(src.resolve("one"), new byte[]{1, 2});
+        TestFiles.Log second = new TestFiles.Log();
+        core.processPath(src, "compress", null, 6, true, NO_PROGRESS, second);
+        assertEquals(List.of("COMPRESS", "INCREMENTAL"), second.operations());
+        assertEquals("4 sin cambios", second.find("INCREMENTAL").destName);
+
+        // otro nivel: el manifiesto no sirve y se procesa todo
+        TestFiles.Log other = new TestFiles.Log();
+        core.processPath(src, "compress", null, 7, true, NO_PROGRESS, other);
+        assertEquals(5, other.operations().stream().filter("COMPRESS"::equals).count());
+    }
+
+    @Test
+    void manifestIsNeverAnInput() throws IOException {
+        Path src = sampleTree();
+        core.processPath(src, "compress", null, 6, true, NO_PROGRESS, new TestFiles.Log());
+        TestFiles.write(src.resolve("sub/" + FileManagerCore.TEMP_PREFIX
+                + IncrementalManifest.FILE_NAME + "-123"), new byte[]{1});
+
+        // una pasada normal y un archivo sólido sobre la misma carpeta
+        TestFiles.Log plain = new TestFiles.Log();
+        core.processPath(src, "compress", null, 7, false, NO_PROGRESS, plain);
+        assertEquals(5, plain.operations().stream().filter("COMPRESS"::equals).count(), plain.operations().toString());
+        assertFalse(Files.exists(src.resolve(".cmp")));
+        core.processPath(src, "archive", null, NO_PROGRESS, new TestFiles.Log());
+        assertTrue(core.listArchive(tmp.resolve("tree" + SolidArchive.EXTENSION), null).stream()
+                .noneMatch(e -> e.path.contains(IncrementalManifest.FILE_NAME)));
+    }
+
+    @Test
+    void unreadableManifestReprocessesEverything() throws IOException {
+        Path src = sampleTree();
+        core.processPath(src, "compress", null, 6, true, NO_PROGRESS, new TestFiles.Log());
+        TestFiles.flipByte(src.resolve(IncrementalManifest.FILE_NAME), 20);
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(src, "compress", null, 6, true, NO_PROGRESS, log);
+        assertEquals(5, log.operations().stream().filter("COMPRESS"::equals).count());
+        // el aviso va al log, antes que los archivos, y la pasada no falla
+        LogEntry warning = log.entries.get(0);
+        assertEquals("INCREMENTAL", warning.operation);
+        assertEquals(IncrementalManifest.FILE_NAME, warning.sourceName);
+        assertTrue(warning.destName.startsWith("ilegible"), warning.destName);
+        assertEquals(0, log.failures());
+        assertEquals("0 sin cambios", log.entries.get(log.entries.size() - 1).destName);
+    }
+}
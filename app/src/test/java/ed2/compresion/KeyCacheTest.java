@@ -0,0 +1,105 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.SimpleEncryptor;
+import ed2.compresion.AppCompresion.SimpleEncryptor.KeyCache;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Caché de claves de un lote: una derivación por sal, y nada queda en memoria
+// tras desalojar o cerrar.
+class KeyCacheTest {
+
+    private static final int ITERATIONS = 10_000;
+    private static final char[] PASSWORD = "clave".toCharArray();
+
+    // Las claves guardadas, sin copiar: key() solo entrega copias.
+    @SuppressWarnings("unchecked")
+    private static List<byte[]> stored(KeyCache cache) throws ReflectiveOperationException {
+        Field entries = KeyCache.class.getDeclaredField("entries");
+        entries.setAccessible(true);
+        synchronized (cache) {
+            return new ArrayList<>(((Map<?, byte[]>) entries.get(cache)).values());
+        }
+    }
+
+    private static boolean zeroed(byte[] key) {
+        for (byte b : key) {
+            if (b != 0) return false;
+        }
+        return true;
+    }
+
+    @Test
+    void batchDerivesOnce() throws IOException {
+        SimpleEncryptor enc = new SimpleEncryptor(SimpleEncryptor.CIPHER_AES_GCM,
+                SimpleEncryptor.MIN_CHUNK_SIZE, null, 1);
+        try (KeyCache cache = new KeyCache(KeyCache.DEFAULT_MAX_ENTRIES);
+             SimpleEncryptor.Session session = enc.newSession("clave", ITERATIONS, cache)) {
+            List<byte[]> sealed = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                sealed.add(enc.encrypt(TestFiles.text(1000 + i, i), session));
+            }
+            assertEquals(1, cache.getDerivations());
+            // la misma sal al descifrar el lote: ninguna derivación más
+            for (int i = 0; i < 8; i++) {
+                assertArrayEquals(TestFiles.text(1000 + i, i), enc.decrypt(sealed.get(i), session));
+            }
+            assertEquals(1, cache.getDerivations());
+        }
+    }
+
+    @Test
+    void evictedKeyIsZeroed() throws Exception {
+        try (KeyCache cache = new KeyCache(2)) {
+            byte[] first = cache.key(PASSWORD, TestFiles.random(16, 1), ITERATIONS);
+            byte[] stored = stored(cache).get(0);
+            assertArrayEquals(first, stored);
+            assertNotSame(first, stored);
+
+            cache.key(PASSWORD, TestFiles.random(16, 2), ITERATIONS);
+            cache.key(PASSWORD, TestFiles.random(16, 3), ITERATIONS);
+            assertEquals(2, cache.size());
+            assertTrue(zeroed(stored), "la clave desalojada sigue en memoria");
+            assertFalse(zeroed(first), "la copia entregada es de quien la pidió");
+
+            // volver a pedirla deriva otra vez
+            assertArrayEquals(first, cache.key(PASSWORD, TestFiles.random(16, 1), ITERATIONS));
+            assertEquals(4, cache.getDerivations());
+        }
+    }
+
+    @Test
+    void closeWipesAndRejectsFurtherKeys() throws Exception {
+        KeyCache cache = new KeyCache(4);
+        cache.key(PASSWORD, TestFiles.random(16, 1), ITERATIONS);
+        cache.key(PASSWORD, TestFiles.random(16, 2), ITERATIONS);
+        List<byte[]> stored = stored(cache);
+        cache.close();
+        assertEquals(0, cache.size());
+        for (byte[] key : stored) {
+            assertTrue(zeroed(key));
+        }
+        assertThrows(IllegalStateException.class, () -> cache.key(PASSWORD, TestFiles.random(16, 1), ITERATIONS));
+    }
+
+    @Test
+    void derivedKeyRefusesSerialization() throws IOException {
+        SimpleEncryptor.DerivedKey key = new SimpleEncryptor.DerivedKey(TestFiles.random(32, 1), "AES");
+        try (ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream())) {
+            assertThrows(NotSerializableException.class, () -> out.writeObject(key));
+        }
+        key.destroy();
+        assertTrue(key.isDestroyed());
+        assertThrows(IllegalStateException.class, key::getEncoded);
+    }
+}
@@ -0,0 +1,75 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import ed2.compresion.AppCompresion.HuffmanCompressor;
+import ed2.compresion.AppCompresion.LZ77Compressor;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tabla de niveles: ningún límite baja al subir de nivel, como en zlib. La
+// cadena de hash con la ventana original da los mismos tokens que el barrido.
+class LZ77CompressorTest {
+
+    @Test
+    void hashChainMatchesTheExhaustiveScan() {
+        LZ77Compressor chain = new LZ77Compressor(LZ77Compressor.LEGACY_WINDOW_SIZE);
+        byte[] lowAlphabet = TestFiles.random(40_000, 11);
+        for (int i = 0; i < lowAlphabet.length; i++) lowAlphabet[i] = (byte) ('a' + (lowAlphabet[i] & 0x03));
+        byte[][] corpora = {
+                new byte[0], {7}, {7, 7}, {1, 2, 3},
+                TestFiles.text(64 * 1024, 21),
+                TestFiles.random(64 * 1024, 22),
+                new byte[40_000],
+                lowAlphabet,
+        };
+        for (byte[] data : corpora) {
+            assertArrayEquals(chain.serializeTokens(chain.compressBruteForce(data, null)),
+                    chain.serializeTokens(chain.compress(data, null)), data.length + " bytes");
+        }
+    }
+
+    @Test
+    void levelParametersNeverDecrease() {
+        LZ77Compressor previous = LZ77Compressor.forLevel(LZ77Compressor.MIN_LEVEL);
+        for (int level = LZ77Compressor.MIN_LEVEL + 1; level <= LZ77Compressor.MAX_LEVEL; level++) {
+            LZ77Compressor current = LZ77Compressor.forLevel(level);
+            assertTrue(current.getMaxChain() >= previous.getMaxChain(), "maxChain en " + level);
+            assertTrue(current.getNiceLength() >= previous.getNiceLength(), "niceLength en " + level);
+            assertTrue(current.getLazyLimit() >= previous.getLazyLimit(), "lazyLimit en " + level);
+            previous = current;
+        }
+    }
+
+    @Test
+    void bestLevelUsesTheFullMatchLength() {
+        LZ77Compressor best = LZ77Compressor.forLevel(LZ77Compressor.MAX_LEVEL);
+        assertEquals(LZ77Compressor.MAX_MATCH, best.getNiceLength());
+        assertEquals(LZ77Compressor.MAX_MATCH, best.getLazyLimit());
+        LZ77Compressor capped = LZ77Compressor.forLevel(LZ77Compressor.MAX_LEVEL,
+                LZ77Compressor.DEFAULT_WINDOW_SIZE, 64);
+        assertEquals(64, capped.getNiceLength());
+    }
+
+    @Test
+    void everyLevelRoundTripsAndHigherLevelsAreNotWorse() throws IOException {
+        byte[] data = TestFiles.text(3 * BlockCompressor.MIN_BLOCK_SIZE, 31);
+        long previous = data.length;
+        for (int level = LZ77Compressor.MIN_LEVEL; level <= LZ77Compressor.MAX_LEVEL; level++) {
+            BlockCompressor blocks = new BlockCompressor(LZ77Compressor.forLevel(level), new HuffmanCompressor(),
+                    BlockCompressor.MIN_BLOCK_SIZE);
+            ByteArrayOutputStream packed = new ByteArrayOutputStream();
+            blocks.compress(new ByteArrayInputStream(data), packed, data.length, null);
+            ByteArrayOutputStream restored = new ByteArrayOutputStream();
+            blocks.decompress(new ByteArrayInputStream(packed.toByteArray()), restored, packed.size(), null);
+            assertArrayEquals(data, restored.toByteArray(), "nivel " + level);
+            // margen pequeño: la evaluación perezosa no siempre gana por poco
+            assertTrue(packed.size() <= previous + previous / 100, "nivel " + level + ": " + packed.size());
+            previous = Math.min(previous, packed.size());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ed2.compresion;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Archivos escritos por la versión original (Huffman con árbol serializado,
+// tokens LZ77 de 5 bytes y XOR con la contraseña "legado"), guardados en
+// resources/ed2/compresion/legacy junto a la entrada de la que salieron.
+class LegacyFormatTest extends CoreFixture {
+
+    private static final String PASSWORD = "legado";
+
+    private Path fixture(String name) throws IOException {
+        try (InputStream in = LegacyFormatTest.class.getResourceAsStream("legacy/" + name)) {
+            assertNotNull(in, name);
+            return TestFiles.write(tmp.resolve("in").resolve(name), in.readAllBytes());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"nota.cmp", "nota.enc", "nota.ec", "datos.cmp", "datos.enc", "datos.ec"})
+    void legacyFilesVerifyAndRecover(String name) throws IOException {
+        String base = name.substring(0, name.indexOf('.'));
+        byte[] original = Files.readAllBytes(fixture(base.equals("nota") ? "nota.txt" : "datos.bin"));
+        Path legacy = fixture(name);
+        String password = name.endsWith(".cmp") ? null : PASSWORD;
+
+        TestFiles.Log verify = new TestFiles.Log();
+        core.verifyPath(legacy, password, NO_PROGRESS, verify);
+        if (password == null) {
+            assertEquals(List.of("VERIFY"), verify.operations());
+        } else {
+            // el XOR no autentica nada: se dice, en vez de dar el archivo por bueno
+            assertEquals(List.of("ERROR_VERIFY"), verify.operations());
+            assertTrue(verify.find("ERROR_VERIFY").destName.contains("XOR"), verify.find("ERROR_VERIFY").destName);
+        }
+
+        Path dest = tmp.resolve("dest");
+        TestFiles.Log recover = new TestFiles.Log();
+        core.recoverPath(legacy, dest, password, NO_PROGRESS, recover);
+        assertEquals(0, recover.failures(), recover.operations().toString());
+        assertEquals(List.of(base), List.copyOf(TestFiles.tree(dest).keySet()));
+        assertArrayEquals(original, Files.readAllBytes(dest.resolve(base)));
+    }
+}
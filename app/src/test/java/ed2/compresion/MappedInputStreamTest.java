@@ -0,0 +1,102 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.FileManagerCore;
+import ed2.compresion.AppCompresion.FileManagerCore.MappedInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Lectura mapeada por segmentos: cruzar de uno a otro, volver atrás con
+// mark/reset y saltar sobre varios remapea sin perder ni repetir bytes.
+class MappedInputStreamTest extends CoreFixture {
+
+    private static final int SEGMENT = 4096;
+
+    private MappedInputStream open(Path file) throws IOException {
+        return new MappedInputStream(FileChannel.open(file), Files.size(file), SEGMENT);
+    }
+
+    private static byte[] readN(MappedInputStream in, int n) throws IOException {
+        byte[] b = new byte[n];
+        int done = 0;
+        while (done < n) {
+            int r = in.read(b, done, n - done);
+            assertTrue(r > 0, "fin prematuro");
+            done += r;
+        }
+        return b;
+    }
+
+    @Test
+    void readsAcrossSegments() throws IOException {
+        byte[] data = TestFiles.random(3 * SEGMENT + 123, 5);
+        Path file = TestFiles.write(tmp.resolve("data"), data);
+        try (MappedInputStream in = open(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            // un tamaño de lectura que no divide al segmento: cada read cruza o acaba en el borde
+            byte[] buffer = new byte[1000];
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                assertTrue(n <= SEGMENT);
+                out.write(buffer, 0, n);
+            }
+            assertArrayEquals(data, out.toByteArray());
+            assertEquals(-1, in.read());
+            assertEquals(0, in.available());
+        }
+        try (MappedInputStream in = open(file)) {
+            assertEquals(SEGMENT - 2, in.skip(SEGMENT - 2));
+            for (int i = SEGMENT - 2; i < SEGMENT + 2; i++) {
+                assertEquals(data[i] & 0xFF, in.read(), "byte " + i);
+            }
+        }
+    }
+
+    @Test
+    void markResetAndSkipRemap() throws IOException {
+        byte[] data = TestFiles.random(3 * SEGMENT + 123, 6);
+        Path file = TestFiles.write(tmp.resolve("data"), data);
+        try (MappedInputStream in = open(file)) {
+            assertTrue(in.markSupported());
+            assertEquals(SEGMENT - 10, in.skip(SEGMENT - 10));
+            in.mark(0);
+            assertArrayEquals(Arrays.copyOfRange(data, SEGMENT - 10, SEGMENT + 10), readN(in, 20));
+
+            // saltar a la tercera ventana y volver a la primera
+            assertEquals(SEGMENT, in.skip(SEGMENT));
+            assertArrayEquals(Arrays.copyOfRange(data, 2 * SEGMENT + 10, 2 * SEGMENT + 30), readN(in, 20));
+            in.reset();
+            assertArrayEquals(Arrays.copyOfRange(data, SEGMENT - 10, SEGMENT + 10), readN(in, 20));
+
+            // más allá del final solo salta lo que queda
+            long left = data.length - (SEGMENT + 10);
+            assertEquals(left, in.available());
+            assertEquals(left, in.skip(10 * SEGMENT));
+            assertEquals(-1, in.read());
+            assertEquals(0, in.skip(1));
+            in.reset();
+            assertEquals(data[SEGMENT - 10] & 0xFF, in.read());
+        }
+    }
+
+    @Test
+    void largeFilesRoundTripThroughTheMappedPath() throws IOException {
+        byte[] data = TestFiles.text((int) FileManagerCore.MMAP_THRESHOLD + 777, 7);
+        Path file = TestFiles.write(tmp.resolve("in/big"), data);
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(file, "compress", null, NO_PROGRESS, log);
+        assertEquals(0, log.failures(), log.operations().toString());
+
+        Path dest = tmp.resolve("dest");
+        TestFiles.Log recover = new TestFiles.Log();
+        core.recoverPath(tmp.resolve("in/big.cmp"), dest, null, NO_PROGRESS, recover);
+        assertEquals(0, recover.failures(), recover.operations().toString());
+        assertArrayEquals(data, Files.readAllBytes(dest.resolve("big")));
+    }
+}
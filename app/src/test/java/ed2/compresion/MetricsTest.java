@@ -0,0 +1,105 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.LogEntry;
+import ed2.compresion.AppCompresion.SimpleEncryptor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Métricas por archivo y por fase: los bytes son los del disco y las dos
+// exportaciones cuentan lo mismo.
+class MetricsTest extends CoreFixture {
+
+    private static final Pattern SAMPLE = Pattern.compile("([a-z0-9_]+)(\\{[^}]*})? (\\S+)");
+
+    @Test
+    void encryptedOutputsReportTheBytesOnDisk() throws IOException {
+        // varios fragmentos cifrados: cada uno suma su etiqueta al .ec
+        Path file = TestFiles.write(tmp.resolve("in/data.txt"),
+                TestFiles.random(3 * SimpleEncryptor.DEFAULT_CHUNK_SIZE + 5, 1));
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(file, "both", "clave", NO_PROGRESS, log);
+        core.processPath(file, "encrypt", "clave", NO_PROGRESS, log);
+
+        LogEntry both = log.find("COMPRESS+ENCRYPT");
+        long ec = Files.size(tmp.resolve("in/data.ec"));
+        assertEquals(ec, both.outputBytes);
+        assertEquals(String.format("%.2f", 100.0 * (1.0 - ec / (double) Files.size(file))), both.compressionRate);
+        long enc = Files.size(tmp.resolve("in/data.enc"));
+        assertEquals(enc, log.find("ENCRYPT").outputBytes);
+        assertTrue(core.getMetrics().toJson().contains("\"outputBytes\": " + (ec + enc)), core.getMetrics().toJson());
+    }
+
+    @Test
+    void jsonAndPrometheusExportsAgree() throws IOException {
+        Path src = sampleTree();
+        long input = 0;
+        for (byte[] content : TestFiles.tree(src).values()) input += content.length;
+        core.processPath(src, "compress", null, 6, false, NO_PROGRESS, new TestFiles.Log());
+        long output = 0;
+        for (Map.Entry<String, byte[]> e : TestFiles.tree(src).entrySet()) {
+            if (e.getKey().endsWith(".cmp")) output += e.getValue().length;
+        }
+
+        Path json = tmp.resolve("m.json");
+        Path prom = tmp.resolve("m.prom");
+        core.getMetrics().export(json);
+        core.getMetrics().export(prom);
+
+        String j = Files.readString(json);
+        assertTrue(j.startsWith("{") && j.trim().endsWith("}"), j);
+        assertTrue(j.contains("\"files\": {\"ok\": 5, \"failed\": 0, \"cancelled\": 0, \"inputBytes\": " + input
+                + ", \"outputBytes\": " + output + ","), j);
+        for (Metrics.Phase p : Metrics.Phase.values()) {
+            assertTrue(j.contains("\"" + p.label + "\": {\"nanos\": "), p.label);
+        }
+
+        Map<String, Double> samples = new HashMap<>();
+        Set<String> described = new HashSet<>();
+        String previousSeries = null;
+        double previousBucket = 0;
+        for (String line : Files.readAllLines(prom)) {
+            if (line.startsWith("# TYPE ")) {
+                described.add(line.split(" ")[2]);
+                continue;
+            }
+            if (line.startsWith("#")) continue;
+            Matcher m = SAMPLE.matcher(line);
+            assertTrue(m.matches(), line);
+            String name = m.group(1);
+            String family = name.replaceAll("_(bucket|sum|count)$", "");
+            assertTrue(described.contains(name) || described.contains(family), "sin # TYPE: " + line);
+            double value = Double.parseDouble(m.group(3));
+            samples.put(name + (m.group(2) == null ? "" : m.group(2)), value);
+            // cubetas acumuladas: ninguna baja dentro de una serie
+            if (name.endsWith("_bucket")) {
+                String series = name + m.group(2).replaceAll("le=\"[^\"]*\"", "");
+                if (series.equals(previousSeries)) {
+                    assertTrue(value >= previousBucket, line);
+                }
+                previousSeries = series;
+                previousBucket = value;
+            }
+        }
+        assertEquals(5.0, samples.get("ed2_files_total{result=\"ok\"}"));
+        assertEquals((double) input, samples.get("ed2_file_input_bytes_total"));
+        assertEquals((double) output, samples.get("ed2_file_output_bytes_total"));
+        assertEquals(samples.get("ed2_file_throughput_mbps_count"),
+                samples.get("ed2_file_throughput_mbps_bucket{le=\"+Inf\"}"));
+        assertEquals(samples.get("ed2_block_seconds_count{direction=\"compress\"}"),
+                samples.get("ed2_block_seconds_bucket{direction=\"compress\",le=\"+Inf\"}"));
+        assertEquals(samples.get("ed2_blocks_total{direction=\"compress\"}"),
+                samples.get("ed2_block_seconds_count{direction=\"compress\"}"));
+        assertTrue(samples.get("ed2_blocks_total{direction=\"compress\"}") >= 5);
+    }
+}
@@ -0,0 +1,128 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.ProgressCallback;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Progreso muestreado: nunca retrocede, pesa cada parte por sus bytes y avisa
+// a lo sumo una vez por período.
+class ProgressTrackerTest {
+
+    // Destino falso que guarda cada aviso.
+    private static final class Recorder implements ProgressCallback {
+        final List<Integer> percents = new ArrayList<>();
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public synchronized void onProgress(int percent, String message) {
+            percents.add(percent);
+            messages.add(message);
+            notifyAll();
+        }
+
+        synchronized int last() {
+            return percents.isEmpty() ? -1 : percents.get(percents.size() - 1);
+        }
+
+        synchronized void awaitPercent(int percent) throws InterruptedException {
+            await(() -> last() == percent, percent + " %");
+        }
+
+        synchronized void awaitMessage(String message) throws InterruptedException {
+            await(() -> !messages.isEmpty() && messages.get(messages.size() - 1).equals(message), message);
+        }
+
+        private void await(java.util.function.BooleanSupplier condition, String what) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!condition.getAsBoolean()) {
+                long left = deadline - System.nanoTime();
+                assertTrue(left > 0, "sin aviso de " + what + ": " + percents);
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+        }
+
+        synchronized void assertNeverBackwards() {
+            for (int i = 1; i < percents.size(); i++) {
+                assertTrue(percents.get(i) >= percents.get(i - 1), percents.toString());
+            }
+        }
+    }
+
+    @Test
+    void partsWeighByTheirBytes() {
+        Recorder recorder = new Recorder();
+        ProgressTracker tracker = new ProgressTracker(recorder);
+        ProgressTracker.Part small = tracker.part(100);
+        ProgressTracker.Part large = tracker.part(900);
+        tracker.seal();
+        large.finish();
+        small.onProgress(50, "a medias");
+        tracker.close();
+        assertEquals(95, recorder.last());
+        assertEquals("a medias", recorder.messages.get(recorder.messages.size() - 1));
+    }
+
+    @Test
+    void percentNeverGoesBackwards() throws InterruptedException {
+        Recorder recorder = new Recorder();
+        try (ProgressTracker tracker = new ProgressTracker(recorder)) {
+            ProgressTracker.Part first = tracker.part(100);
+            first.onProgress(60, "uno");
+            first.onProgress(30, "uno"); // una parte que retrocede no resta
+            recorder.awaitPercent(60);
+            first.finish();
+            recorder.awaitPercent(100);
+
+            // el recorrido descubre más partes: el total crece, la barra no baja
+            ProgressTracker.Part second = tracker.part(300);
+            second.onProgress(50, "dos");
+            tracker.estimate(10_000);
+            recorder.awaitMessage("dos");
+            assertEquals(100, recorder.last());
+            tracker.seal();
+            second.finish();
+        }
+        recorder.assertNeverBackwards();
+        assertEquals(100, recorder.last());
+    }
+
+    @Test
+    void reportsAreCoalescedToTheSamplingRate() throws InterruptedException {
+        Recorder recorder = new Recorder();
+        int threads = 4;
+        int calls = 200_000;
+        long start = System.nanoTime();
+        try (ProgressTracker tracker = new ProgressTracker(recorder)) {
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                ProgressTracker.Part part = tracker.part(calls);
+                new Thread(() -> {
+                    for (int i = 1; i <= calls; i++) {
+                        part.onProgress((int) (100L * i / calls), "bloque " + (i / 1000));
+                    }
+                    done.countDown();
+                }).start();
+            }
+            tracker.seal();
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        synchronized (recorder) {
+            // un aviso por período, más el de close()
+            assertTrue(recorder.percents.size() <= elapsedMs / ProgressTracker.PERIOD_MS + 2,
+                    recorder.percents.size() + " avisos en " + elapsedMs + " ms");
+            for (int i = 1; i < recorder.percents.size(); i++) {
+                assertFalse(recorder.percents.get(i).equals(recorder.percents.get(i - 1))
+                        && recorder.messages.get(i).equals(recorder.messages.get(i - 1)), "aviso repetido");
+            }
+        }
+        recorder.assertNeverBackwards();
+        assertEquals(100, recorder.last());
+    }
+}
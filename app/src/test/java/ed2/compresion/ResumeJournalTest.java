@@ -0,0 +1,84 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.FileManagerCore;
+import ed2.compresion.AppCompresion.LogEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Diario .ed2-resume y cancelación: un trabajo cortado se retoma donde quedó.
+class ResumeJournalTest extends CoreFixture {
+
+    @Test
+    void resumeJournalSkipsFinishedFiles() throws IOException {
+        Path src = tmp.resolve("tree");
+        Path a = TestFiles.write(src.resolve("a"), TestFiles.text(1000, 7));
+        TestFiles.write(src.resolve("b"), TestFiles.text(1000, 8));
+        // a ya terminó en una pasada anterior de este mismo trabajo
+        TestFiles.write(src.resolve("a.cmp"), "salida previa".getBytes(StandardCharsets.UTF_8));
+        Files.write(src.resolve(".ed2-resume"), ("ED2R compress 6\n" + Files.size(a) + " "
+                + Files.getLastModifiedTime(a).toMillis() + " a\n").getBytes(StandardCharsets.UTF_8));
+
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(src, "compress", null, 6, false, NO_PROGRESS, log);
+        assertEquals(List.of("COMPRESS", "RESUME"), log.operations());
+        assertEquals("b", log.find("COMPRESS").sourceName);
+        assertEquals("salida previa", Files.readString(src.resolve("a.cmp")));
+        assertFalse(Files.exists(src.resolve(".ed2-resume")), "una pasada completa borra el diario");
+    }
+
+    @Test
+    void journalOfAnotherJobIsIgnored() throws IOException {
+        Path src = tmp.resolve("tree");
+        Path a = TestFiles.write(src.resolve("a"), TestFiles.text(1000, 7));
+        TestFiles.write(src.resolve("a.cmp"), "salida previa".getBytes(StandardCharsets.UTF_8));
+        Files.write(src.resolve(".ed2-resume"), ("ED2R compress 9\n" + Files.size(a) + " "
+                + Files.getLastModifiedTime(a).toMillis() + " a\n").getBytes(StandardCharsets.UTF_8));
+
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(src, "compress", null, 6, false, NO_PROGRESS, log);
+        assertEquals(List.of("COMPRESS"), log.operations());
+    }
+
+    @Test
+    void cancelledJobLeavesAJournalThatResumes() throws IOException {
+        FileManagerCore serial = new FileManagerCore(BLOCK, 1, 6);
+        try {
+            Path src = tmp.resolve("tree");
+            for (int i = 0; i < 4; i++) {
+                TestFiles.write(src.resolve("f" + i), TestFiles.text(BLOCK / 2, i));
+            }
+            JobControl job = new JobControl();
+            TestFiles.Log first = new TestFiles.Log();
+            assertThrows(InterruptedIOException.class, () -> serial.withControl(job).processPath(
+                    src, "compress", null, 6, false, NO_PROGRESS, entry -> {
+                        first.onLog(entry);
+                        job.cancel();
+                    }));
+            assertTrue(Files.exists(src.resolve(".ed2-resume")));
+            long done = first.operations().stream().filter("COMPRESS"::equals).count();
+            assertTrue(done >= 1 && done < 4, first.operations().toString());
+            try (Stream<Path> s = Files.list(src)) {
+                assertTrue(s.noneMatch(p -> p.getFileName().toString().startsWith(FileManagerCore.TEMP_PREFIX)),
+                        "temporales sin borrar");
+            }
+
+            TestFiles.Log second = new TestFiles.Log();
+            serial.processPath(src, "compress", null, 6, false, NO_PROGRESS, second);
+            LogEntry resume = second.find("RESUME");
+            assertNotNull(resume, second.operations().toString());
+            assertEquals(done + " ya procesados", resume.destName);
+            assertEquals(4 - done, second.operations().stream().filter("COMPRESS"::equals).count());
+        } finally {
+            serial.shutdown();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.FileManagerCore;
+import ed2.compresion.AppCompresion.SimpleEncryptor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Formato .enc/.ec: encabezado y fragmentos AEAD con la marca de final en el nonce,
+// en memoria y en archivos completos a través de FileManagerCore.
+class SimpleEncryptorTest extends CoreFixture {
+
+    private static final int CHUNK = SimpleEncryptor.MIN_CHUNK_SIZE;
+    // pocas iteraciones: la prueba mide el formato, no PBKDF2
+    private static final int ITERATIONS = 10_000;
+
+    private static SimpleEncryptor encryptor(int cipher) {
+        return new SimpleEncryptor(cipher, CHUNK, null, 1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {SimpleEncryptor.CIPHER_AES_GCM, SimpleEncryptor.CIPHER_CHACHA20_POLY1305})
+    void roundTripAtChunkBoundaries(int cipher) throws IOException {
+        SimpleEncryptor enc = encryptor(cipher);
+        try (SimpleEncryptor.Session session = enc.newSession("clave", ITERATIONS, null)) {
+            for (int size : new int[]{0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 3 * CHUNK}) {
+                byte[] data = TestFiles.random(size, size);
+                byte[] sealed = enc.encrypt(data, session);
+                assertTrue(SimpleEncryptor.isEncrypted(new java.io.ByteArrayInputStream(sealed)));
+                assertArrayEquals(data, enc.decrypt(sealed, session), "tamaño " + size);
+            }
+        }
+    }
+
+    @Test
+    void wrongPasswordFails() throws IOException {
+        SimpleEncryptor enc = encryptor(SimpleEncryptor.CIPHER_AES_GCM);
+        byte[] sealed;
+        try (SimpleEncryptor.Session session = enc.newSession("correcta", ITERATIONS, null)) {
+            sealed = enc.encrypt(TestFiles.text(2 * CHUNK, 1), session);
+        }
+        try (SimpleEncryptor.Session other = enc.newSession("incorrecta", ITERATIONS, null)) {
+            IOException e = assertThrows(IOException.class, () -> enc.decrypt(sealed, other));
+            assertTrue(e.getMessage().contains("no autenticado"), e.getMessage());
+        }
+    }
+
+    @Test
+    void flippedByteFails() throws IOException {
+        SimpleEncryptor enc = encryptor(SimpleEncryptor.CIPHER_CHACHA20_POLY1305);
+        try (SimpleEncryptor.Session session = enc.newSession("clave", ITERATIONS, null)) {
+            byte[] sealed = enc.encrypt(TestFiles.text(3 * CHUNK, 2), session);
+            // un byte del encabezado (AAD), del primer fragmento y de la última etiqueta
+            for (int at : new int[]{5, SimpleEncryptor.HEADER_SIZE + 10, sealed.length - 1}) {
+                byte[] bad = sealed.clone();
+                bad[at] ^= 0x01;
+                assertThrows(IOException.class, () -> enc.decrypt(bad, session), "byte " + at);
+            }
+        }
+    }
+
+    @Test
+    void truncationIsDetected() throws IOException {
+        SimpleEncryptor enc = encryptor(SimpleEncryptor.CIPHER_AES_GCM);
+        try (SimpleEncryptor.Session session = enc.newSession("clave", ITERATIONS, null)) {
+            byte[] sealed = enc.encrypt(TestFiles.text(2 * CHUNK, 3), session);
+            int fullChunk = CHUNK + 16;
+            // cortes en un límite de fragmento (falta la marca de final), dentro de
+            // un fragmento y en el encabezado
+            for (int cut : new int[]{SimpleEncryptor.HEADER_SIZE + fullChunk,
+                    SimpleEncryptor.HEADER_SIZE + 2 * fullChunk, sealed.length - 1,
+                    SimpleEncryptor.HEADER_SIZE + 3, 10}) {
+                byte[] part = Arrays.copyOf(sealed, cut);
+                assertThrows(IOException.class, () -> enc.decrypt(part, session), "corte en " + cut);
+            }
+        }
+    }
+
+    @Test
+    void reorderedChunksFail() throws IOException {
+        SimpleEncryptor enc = encryptor(SimpleEncryptor.CIPHER_AES_GCM);
+        try (SimpleEncryptor.Session session = enc.newSession("clave", ITERATIONS, null)) {
+            byte[] sealed = enc.encrypt(TestFiles.text(3 * CHUNK, 4), session);
+            int fullChunk = CHUNK + 16;
+            byte[] swapped = sealed.clone();
+            int a = SimpleEncryptor.HEADER_SIZE;
+            System.arraycopy(sealed, a + fullChunk, swapped, a, fullChunk);
+            System.arraycopy(sealed, a, swapped, a + fullChunk, fullChunk);
+            assertThrows(IOException.class, () -> enc.decrypt(swapped, session));
+        }
+    }
+
+    @Test
+    void encryptedFilesRoundTripAndRejectWrongPassword() throws IOException {
+        byte[] data = TestFiles.text(2 * BLOCK + 3, 6);
+        Path file = TestFiles.write(tmp.resolve("in/data.txt"), data);
+        core.processPath(file, "both", "correcta", NO_PROGRESS, new TestFiles.Log());
+        core.processPath(file, "encrypt", "correcta", NO_PROGRESS, new TestFiles.Log());
+        Path ec = tmp.resolve("in/data.ec");
+        Path enc = tmp.resolve("in/data.enc");
+
+        for (Path sealed : new Path[]{ec, enc}) {
+            TestFiles.Log wrong = new TestFiles.Log();
+            core.recoverPath(sealed, tmp.resolve("bad"), "incorrecta", NO_PROGRESS, wrong);
+            assertEquals(List.of("ERROR_RECOVER"), wrong.operations(), sealed.toString());
+
+            Path dest = tmp.resolve("ok-" + sealed.getFileName());
+            core.recoverPath(sealed, dest, "correcta", NO_PROGRESS, new TestFiles.Log());
+            assertArrayEquals(data, Files.readAllBytes(dest.resolve("data")), sealed.toString());
+        }
+        assertFalse(Files.exists(tmp.resolve("bad/data")));
+
+        TestFiles.flipByte(ec, Files.size(ec) - 1);
+        TestFiles.Log verify = new TestFiles.Log();
+        core.verifyPath(ec, "correcta", NO_PROGRESS, verify);
+        assertEquals(List.of("ERROR_VERIFY"), verify.operations());
+    }
+}
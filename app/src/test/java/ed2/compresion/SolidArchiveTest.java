@@ -0,0 +1,59 @@
+package ed2.compresion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Archivo sólido .cma: un árbol entero ida y vuelta, dañado y cifrado.
+class SolidArchiveTest extends CoreFixture {
+
+    @Test
+    void solidArchiveRoundTripAndDamage() throws IOException {
+        Path src = sampleTree();
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(src, "archive", null, NO_PROGRESS, log);
+        assertEquals(List.of("ARCHIVE"), log.operations());
+        Path cma = tmp.resolve("tree" + SolidArchive.EXTENSION);
+        assertEquals(Files.size(cma), log.find("ARCHIVE").outputBytes);
+
+        Path dest = tmp.resolve("dest");
+        core.recoverPath(cma, dest, null, NO_PROGRESS, new TestFiles.Log());
+        TestFiles.assertSameTree(src, dest.resolve("tree"));
+        assertEquals(5, core.listArchive(cma, null).stream().filter(e -> !e.directory).count());
+
+        TestFiles.flipByte(cma, Files.size(cma) / 2);
+        TestFiles.Log verify = new TestFiles.Log();
+        core.verifyPath(cma, null, NO_PROGRESS, verify);
+        assertEquals(List.of("ERROR_VERIFY"), verify.operations());
+        TestFiles.Log recover = new TestFiles.Log();
+        core.recoverPath(cma, tmp.resolve("dest2"), null, NO_PROGRESS, recover);
+        assertEquals(List.of("ERROR_RECOVER"), recover.operations());
+        assertFalse(Files.exists(tmp.resolve("dest2/tree")));
+    }
+
+    @Test
+    void encryptedArchiveNeedsTheRightPassword() throws IOException {
+        Path src = sampleTree();
+        TestFiles.Log log = new TestFiles.Log();
+        core.processPath(src, "archive", "correcta", NO_PROGRESS, log);
+        Path cma = tmp.resolve("tree" + SolidArchive.EXTENSION);
+        // el encabezado y las etiquetas del cifrado también cuentan
+        assertEquals(Files.size(cma), log.find("ARCHIVE+ENCRYPT").outputBytes);
+
+        TestFiles.Log wrong = new TestFiles.Log();
+        core.recoverPath(cma, tmp.resolve("bad"), "incorrecta", NO_PROGRESS, wrong);
+        assertEquals(List.of("ERROR_RECOVER"), wrong.operations());
+        // el motivo queda en el log
+        assertFalse(wrong.find("ERROR_RECOVER").destName.isEmpty());
+        assertFalse(Files.exists(tmp.resolve("bad/tree")));
+
+        Path dest = tmp.resolve("dest");
+        core.recoverPath(cma, dest, "correcta", NO_PROGRESS, new TestFiles.Log());
+        TestFiles.assertSameTree(src, dest.resolve("tree"));
+    }
+}
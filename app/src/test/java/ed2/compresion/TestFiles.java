@@ -0,0 +1,136 @@
+package ed2.compresion;
+
+import ed2.compresion.AppCompresion.BlockCompressor;
+import ed2.compresion.AppCompresion.LogCallback;
+import ed2.compresion.AppCompresion.LogEntry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Datos y utilidades compartidas por las pruebas de formato.
+final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    // Texto con repeticiones cortas y largas, como un registro o código fuente.
+    static byte[] text(int size, long seed) {
+        Random random = new Random(seed);
+        String[] words = {"bloque", "trama", "índice", "archivo", "compresión", "clave", "fragmento",
+                "diccionario", "ventana", "código", "de", "la", "el", "en", "con"};
+        StringBuilder sb = new StringBuilder(size + 32);
+        int line = 0;
+        while (sb.length() < size) {
+            sb.append(line++).append(": ");
+            int n = 4 + random.nextInt(8);
+            for (int i = 0; i < n; i++) {
+                sb.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            sb.append('\n');
+        }
+        byte[] all = sb.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[size];
+        System.arraycopy(all, 0, out, 0, size);
+        return out;
+    }
+
+    static byte[] random(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    // Archivos de 0, 1, blockSize y varios bloques, sin extensión: recover
+    // quita solo la de la salida y los nombres vuelven iguales.
+    static Path sampleTree(Path src) throws IOException {
+        int block = BlockCompressor.MIN_BLOCK_SIZE;
+        write(src.resolve("empty"), new byte[0]);
+        write(src.resolve("one"), new byte[]{42});
+        write(src.resolve("block"), text(block, 1));
+        write(src.resolve("sub/multi"), text(3 * block + 5, 2));
+        write(src.resolve("sub/noise"), random(block + 1, 3));
+        return src;
+    }
+
+    static Path write(Path file, byte[] data) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, data);
+    }
+
+    static void flipByte(Path file, long position) throws IOException {
+        byte[] b = Files.readAllBytes(file);
+        b[(int) position] ^= 0x40;
+        Files.write(file, b);
+    }
+
+    static void truncate(Path file, long size) throws IOException {
+        byte[] b = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(b, (int) size));
+    }
+
+    // Contenido de cada archivo regular bajo root, por ruta relativa.
+    static TreeMap<String, byte[]> tree(Path root) throws IOException {
+        TreeMap<String, byte[]> files = new TreeMap<>();
+        try (Stream<Path> stream = Files.walk(root)) {
+            for (Path p : (Iterable<Path>) stream::iterator) {
+                if (Files.isRegularFile(p)) {
+                    files.put(root.relativize(p).toString().replace('\\', '/'), Files.readAllBytes(p));
+                }
+            }
+        }
+        return files;
+    }
+
+    static void assertSameTree(Path expected, Path actual) throws IOException {
+        TreeMap<String, byte[]> a = tree(expected);
+        TreeMap<String, byte[]> b = tree(actual);
+        assertEquals(a.keySet(), b.keySet());
+        for (String rel : a.keySet()) {
+            assertArrayEquals(a.get(rel), b.get(rel), rel);
+        }
+    }
+
+    // Registro de las entradas del log; los trabajadores lo llaman desde varios hilos.
+    static final class Log implements LogCallback {
+        final List<LogEntry> entries = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onLog(LogEntry entry) {
+            entries.add(entry);
+        }
+
+        List<String> operations() {
+            synchronized (entries) {
+                List<String> ops = new ArrayList<>();
+                for (LogEntry e : entries) ops.add(e.operation);
+                return ops;
+            }
+        }
+
+        LogEntry find(String operation) {
+            synchronized (entries) {
+                for (LogEntry e : entries) {
+                    if (e.operation.equals(operation)) return e;
+                }
+            }
+            return null;
+        }
+
+        long failures() {
+            synchronized (entries) {
+                return entries.stream().filter(e -> !e.success).count();
+            }
+        }
+    }
+}
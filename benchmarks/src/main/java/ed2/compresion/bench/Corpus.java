@@ -0,0 +1,107 @@
+package ed2.compresion.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.Random;
+
+// ============================================================================
+// CORPUS DE PRUEBA PARA LOS BENCHMARKS
+// ============================================================================
+// text:       líneas tipo log con vocabulario reducido
+// binary:     registros binarios (enteros con deltas pequeños y flotantes)
+// compressed: test3In.rar repetido o recortado (ya comprimido)
+// repetitive: un patrón corto repetido con mutaciones esporádicas
+public final class Corpus {
+
+    public static final String COMPRESSED_PROPERTY = "bench.compressed";
+
+    private static final String[] WORDS = {
+            "INFO", "WARN", "ERROR", "usuario", "archivo", "conexion", "cerrada",
+            "abierta", "tiempo", "ms", "bytes", "sesion", "servidor", "cliente",
+            "peticion", "respuesta", "GET", "POST", "/api/v1/datos", "estado=OK"
+    };
+
+    private Corpus() {}
+
+    public static byte[] generate(String kind, int size) {
+        switch (kind) {
+            case "text": return text(size);
+            case "binary": return binary(size);
+            case "compressed": return compressed(size);
+            case "repetitive": return repetitive(size);
+            default: throw new IllegalArgumentException("Corpus desconocido: " + kind);
+        }
+    }
+
+    private static byte[] text(int size) {
+        Random r = new Random(42);
+        StringBuilder sb = new StringBuilder(size + 128);
+        long ts = 1_700_000_000_000L;
+        while (sb.length() < size) {
+            ts += r.nextInt(500);
+            sb.append(ts).append(' ');
+            int words = 4 + r.nextInt(8);
+            for (int i = 0; i < words; i++) {
+                sb.append(WORDS[r.nextInt(WORDS.length)]).append(' ');
+            }
+            sb.append(r.nextInt(10_000)).append('\n');
+        }
+        byte[] all = sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        return java.util.Arrays.copyOf(all, size);
+    }
+
+    private static byte[] binary(int size) {
+        Random r = new Random(43);
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(size + 16);
+        int counter = 0;
+        while (buf.position() < size) {
+            counter += r.nextInt(16);
+            buf.putInt(counter);
+            buf.putFloat((float) r.nextGaussian());
+            buf.putShort((short) r.nextInt(64));
+            buf.put((byte) (r.nextInt(4) == 0 ? r.nextInt(256) : 0));
+            buf.put((byte) 0x7F);
+        }
+        return java.util.Arrays.copyOf(buf.array(), size);
+    }
+
+    private static byte[] compressed(int size) {
+        byte[] source = readCompressedSample();
+        byte[] out = new byte[size];
+        for (int p = 0; p < size; p += source.length) {
+            System.arraycopy(source, 0, out, p, Math.min(source.length, size - p));
+        }
+        return out;
+    }
+
+    private static byte[] readCompressedSample() {
+        String configured = System.getProperty(COMPRESSED_PROPERTY);
+        Path[] candidates = configured != null
+                ? new Path[]{Paths.get(configured)}
+                : new Path[]{Paths.get("test3In.rar"), Paths.get("..", "test3In.rar")};
+        for (Path p : candidates) {
+            if (Files.isRegularFile(p)) {
+                try {
+                    return Files.readAllBytes(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        throw new IllegalStateException("No se encontró test3In.rar; use -D" + COMPRESSED_PROPERTY + "=<ruta>");
+    }
+
+    private static byte[] repetitive(int size) {
+        Random r = new Random(44);
+        byte[] pattern = "registro-repetido;estado=OK;valor=000;".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        byte[] out = new byte[size];
+        for (int i = 0; i < size; i++) {
+            out[i] = pattern[i % pattern.length];
+            if (r.nextInt(1000) == 0) {
+                out[i] = (byte) ('0' + r.nextInt(10));
+            }
+        }
+        return out;
+    }
+}
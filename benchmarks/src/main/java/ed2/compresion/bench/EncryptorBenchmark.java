@@ -0,0 +1,58 @@
+package ed2.compresion.bench;
+
+import ed2.compresion.AppCompresion.SimpleEncryptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Cifrado autenticado por fragmentos; la clave se deriva una vez en setup,
+// como en un lote de processPath.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncryptorBenchmark {
+
+    @Param({"text", "compressed"})
+    public String corpus;
+
+    @Param({"65536", "1048576", "8388608"})
+    public int size;
+
+    // 1 = AES-GCM, 2 = ChaCha20-Poly1305
+    @Param({"1", "2"})
+    public int cipher;
+
+    private SimpleEncryptor encryptor;
+    private SimpleEncryptor.Session session;
+    private byte[] data;
+    private byte[] sealed;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        encryptor = new SimpleEncryptor(cipher, SimpleEncryptor.DEFAULT_CHUNK_SIZE, null, 1);
+        session = encryptor.newSession("contraseña-de-prueba");
+        data = Corpus.generate(corpus, size);
+        sealed = encryptor.encrypt(data, session);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+    }
+
+    @Benchmark
+    public byte[] encrypt(Throughput mb) throws IOException {
+        mb.add(size);
+        return encryptor.encrypt(data, session);
+    }
+
+    @Benchmark
+    public byte[] decrypt(Throughput mb) throws IOException {
+        mb.add(size);
+        return encryptor.decrypt(sealed, session);
+    }
+}
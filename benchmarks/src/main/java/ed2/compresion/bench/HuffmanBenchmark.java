@@ -0,0 +1,50 @@
+package ed2.compresion.bench;
+
+import ed2.compresion.AppCompresion.HuffmanCompressor;
+import ed2.compresion.AppCompresion.LZ77Compressor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Huffman sobre lo que realmente recibe en el pipeline: los tokens LZ77 serializados.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HuffmanBenchmark {
+
+    @Param({"text", "binary", "compressed", "repetitive"})
+    public String corpus;
+
+    @Param({"65536", "1048576", "8388608"})
+    public int size;
+
+    private final HuffmanCompressor huffman = new HuffmanCompressor();
+    private byte[] tokenBytes;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        // registros de 5 bytes: requieren la ventana original de 4 KB
+        LZ77Compressor lz77 = new LZ77Compressor(LZ77Compressor.DEFAULT_MAX_CHAIN);
+        tokenBytes = lz77.serializeTokens(lz77.compress(Corpus.generate(corpus, size), null));
+        encoded = huffman.compress(tokenBytes);
+        System.out.printf("%n[ratio] Huffman %s/%d: %.3f (salida / tokens), %.3f (salida / original)%n",
+                corpus, size, encoded.length / (double) tokenBytes.length, encoded.length / (double) size);
+    }
+
+    @Benchmark
+    public byte[] compress(Throughput mb) throws IOException {
+        mb.add(tokenBytes.length);
+        return huffman.compress(tokenBytes);
+    }
+
+    @Benchmark
+    public byte[] decompress(Throughput mb) throws IOException {
+        mb.add(tokenBytes.length);
+        return huffman.decompress(encoded);
+    }
+}
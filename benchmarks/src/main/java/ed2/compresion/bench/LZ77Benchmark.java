@@ -0,0 +1,52 @@
+package ed2.compresion.bench;
+
+import ed2.compresion.AppCompresion.DeflateTokenCoder;
+import ed2.compresion.AppCompresion.LZ77Compressor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LZ77Benchmark {
+
+    @Param({"text", "binary", "compressed", "repetitive"})
+    public String corpus;
+
+    @Param({"65536", "1048576", "8388608"})
+    public int size;
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    private final DeflateTokenCoder coder = new DeflateTokenCoder();
+    private LZ77Compressor lz77;
+    private byte[] data;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lz77 = LZ77Compressor.forLevel(level);
+        data = Corpus.generate(corpus, size);
+        encoded = coder.encode(lz77.compress(data, null));
+        System.out.printf("%n[ratio] LZ77 nivel %d %s/%d: %.3f (tokens codificados / entrada)%n",
+                level, corpus, size, encoded.length / (double) size);
+    }
+
+    @Benchmark
+    public LZ77Compressor.TokenBuffer compress(Throughput mb) {
+        mb.add(size);
+        return lz77.compress(data, null);
+    }
+
+    @Benchmark
+    public byte[] decompress(Throughput mb) throws IOException {
+        mb.add(size);
+        return coder.decode(encoded, 0, size);
+    }
+}
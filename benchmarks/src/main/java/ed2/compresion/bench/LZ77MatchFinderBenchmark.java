@@ -0,0 +1,50 @@
+package ed2.compresion.bench;
+
+import ed2.compresion.AppCompresion.LZ77Compressor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Cadenas hash frente a la búsqueda exhaustiva original. Tamaños pequeños:
+// la búsqueda exhaustiva procesa del orden de 0.1 MB/s.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LZ77MatchFinderBenchmark {
+
+    @Param({"text", "binary", "compressed", "repetitive"})
+    public String corpus;
+
+    @Param({"65536"})
+    public int size;
+
+    private final LZ77Compressor hashChain = new LZ77Compressor();
+    private final LZ77Compressor fullChain = new LZ77Compressor(4096);
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data = Corpus.generate(corpus, size);
+    }
+
+    @Benchmark
+    public LZ77Compressor.TokenBuffer bruteForce(Throughput mb) {
+        mb.add(size);
+        return hashChain.compressBruteForce(data, null);
+    }
+
+    @Benchmark
+    public LZ77Compressor.TokenBuffer hashChainFull(Throughput mb) {
+        mb.add(size);
+        return fullChain.compress(data, null);
+    }
+
+    @Benchmark
+    public LZ77Compressor.TokenBuffer hashChainDefault(Throughput mb) {
+        mb.add(size);
+        return hashChain.compress(data, null);
+    }
+}
@@ -0,0 +1,75 @@
+package ed2.compresion.bench;
+
+import ed2.compresion.AppCompresion;
+import ed2.compresion.AppCompresion.FileManagerCore;
+import ed2.compresion.AppCompresion.SimpleEncryptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+// Pipeline completo de un archivo (lectura, LZ77, Huffman, cifrado, escritura)
+// a través de FileManagerCore. La clave se deriva una vez en setup, como en
+// EncryptorBenchmark: PBKDF2 (600k iteraciones) taparía al resto del pipeline.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"text", "binary", "compressed", "repetitive"})
+    public String corpus;
+
+    @Param({"1048576", "8388608"})
+    public int size;
+
+    @Param({"compress", "both"})
+    public String operation;
+
+    @Param({"1"})
+    public int threads;
+
+    private FileManagerCore core;
+    private SimpleEncryptor.Session session;
+    private Path dir;
+    private Path input;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        core = new FileManagerCore(AppCompresion.BlockCompressor.DEFAULT_BLOCK_SIZE, threads);
+        session = core.newSession("contraseña-de-prueba");
+        dir = Files.createTempDirectory("bench-pipeline");
+        input = dir.resolve("entrada.dat");
+        Files.write(input, Corpus.generate(corpus, size));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        session.close();
+        core.shutdown();
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                if (p.getFileName().toString().startsWith("entrada.") && !p.equals(input)) {
+                    System.out.printf("%n[ratio] pipeline %s/%s/%d: %.3f%n",
+                            operation, corpus, size, Files.size(p) / (double) size);
+                }
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public void processSingleFile(Throughput mb) throws IOException {
+        mb.add(size);
+        core.processWithSession(input, operation, session, core.getLevel(), false,
+                (percent, message) -> {}, entry -> {
+                    if (!entry.success) {
+                        throw new IllegalStateException("Fallo en el pipeline: " + entry.operation);
+                    }
+                });
+    }
+}
@@ -0,0 +1,20 @@
+package ed2.compresion.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+// Contador auxiliar: JMH lo reporta por segundo, es decir, en MB/s.
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+    }
+
+    public void add(long bytes) {
+        megabytes += bytes / (1024.0 * 1024.0);
+    }
+}